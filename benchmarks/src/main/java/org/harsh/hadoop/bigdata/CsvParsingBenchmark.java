@@ -0,0 +1,130 @@
+package org.harsh.hadoop.bigdata;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Reading the columns of a record the way the mappers do, per record
+ *
+ * split* benchmarks go through SalesGetCsvData, String.split and the JDK parsers, scan* benchmarks through
+ * SalesCsvParser on the bytes of the Text. The date benchmarks compare the SimpleDateFormat of the first
+ * version of the jobs with SalesOrderDate on a String and on the record bytes.
+ *
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvParsingBenchmark {
+	static final int ROWS = 4096;
+
+	Text[] rows;
+	String[] dates;
+	byte[][] dateBytes;
+	SalesGetCsvData csv = new SalesGetCsvData();
+	SalesCsvParser parser = new SalesCsvParser();
+	Text country = new Text();
+	Text itemType = new Text();
+
+	@Setup
+	public void setup() {
+		rows = GeoSalesRows.generate(ROWS, 42);
+		dates = new String[ROWS];
+		dateBytes = new byte[ROWS][];
+		for (int i = 0; i < ROWS; i++) {
+			dates[i] = csv.getCsvData(rows[i])[SalesCsvParser.ORDER_DATE];
+			dateBytes[i] = dates[i].getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/*
+	 * Columns of question 1: country, item_type, order year and unit_price
+	 * */
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void splitRecord(Blackhole blackhole) {
+		for (Text row : rows) {
+			String[] fields = csv.getCsvData(row);
+			blackhole.consume(csv.getCountry(fields));
+			blackhole.consume(csv.getItemType(fields));
+			blackhole.consume(csv.getOrderDate(fields));
+			blackhole.consume(csv.getUnitPrice(fields));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void scanRecord(Blackhole blackhole) {
+		for (Text row : rows) {
+			parser.parse(row);
+			parser.getText(SalesCsvParser.COUNTRY, country);
+			parser.getText(SalesCsvParser.ITEM_TYPE, itemType);
+			blackhole.consume(SalesOrderDate.year(parser.getDate(SalesCsvParser.ORDER_DATE)));
+			blackhole.consume(parser.getDouble(SalesCsvParser.UNIT_PRICE));
+		}
+	}
+
+	/*
+	 * Same columns with unit_price read as fixed point cents, see SalesDecimal
+	 * */
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void scanRecordFixedPoint(Blackhole blackhole) {
+		for (Text row : rows) {
+			parser.parse(row);
+			parser.getText(SalesCsvParser.COUNTRY, country);
+			parser.getText(SalesCsvParser.ITEM_TYPE, itemType);
+			blackhole.consume(SalesOrderDate.year(parser.getDate(SalesCsvParser.ORDER_DATE)));
+			blackhole.consume(parser.getUnscaled(SalesCsvParser.UNIT_PRICE, SalesDecimal.DEFAULT_SCALE));
+		}
+	}
+
+	/*
+	 * Order year with a new SimpleDateFormat per record, as the first version of SalesGetCsvData did
+	 * */
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void dateSimpleDateFormat(Blackhole blackhole) throws ParseException {
+		Calendar calendar = Calendar.getInstance(Locale.ENGLISH);
+		for (String date : dates) {
+			calendar.setTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ENGLISH).parse(date));
+			blackhole.consume(calendar.get(Calendar.YEAR));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void dateFromString(Blackhole blackhole) {
+		for (String date : dates) {
+			blackhole.consume(SalesOrderDate.year(SalesOrderDate.parse(date)));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void dateFromBytes(Blackhole blackhole) {
+		for (byte[] date : dateBytes) {
+			blackhole.consume(SalesOrderDate.year(SalesOrderDate.parse(date, 0, date.length)));
+		}
+	}
+}
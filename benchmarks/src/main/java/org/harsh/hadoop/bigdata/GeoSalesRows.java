@@ -0,0 +1,47 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+/*
+ * Geosales csv rows generated by SalesDataGenerator from a seed, the input of every benchmark
+ *
+ * */
+public final class GeoSalesRows {
+
+	private GeoSalesRows() {
+	}
+
+	/*
+	 * Generating the rows, the same seed always gives the same rows
+	 * */
+	public static Text[] generate(int rows, long seed) {
+		Configuration conf = new Configuration(false);
+		conf.setLong(SalesDataGenerator.ROWS_KEY, rows);
+		conf.setLong(SalesDataGenerator.SEED_KEY, seed);
+		SalesDataGenerator generator = new SalesDataGenerator(conf);
+		Text[] lines = new Text[rows];
+		for (int i = 0; i < rows; i++) {
+			lines[i] = new Text();
+			generator.row(i, lines[i]);
+		}
+		return lines;
+	}
+
+	/*
+	 * Writing the rows to a csv file, one per line
+	 * */
+	public static void write(Text[] rows, Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			for (Text row : rows) {
+				out.write(row.getBytes(), 0, row.getLength());
+				out.write('\n');
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Comparing (country, item_type, year) keys the ways the shuffle sort can, per comparison of neighbouring keys
+ *
+ * compareTo works on keys that are already objects, rawComparator is SalesKey.Comparator on the serialized bytes
+ * and deserializeAndCompare reads both keys back before compareTo, which is what the sort does without a raw comparator.
+ *
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyComparisonBenchmark {
+	static final int KEYS = 4096;
+
+	SalesMapReduce1.Sales[] keys = new SalesMapReduce1.Sales[KEYS];
+	byte[] serialized;
+	int[] starts = new int[KEYS + 1];
+	WritableComparator comparator;
+	DataInputBuffer in = new DataInputBuffer();
+	SalesMapReduce1.Sales first = new SalesMapReduce1.Sales();
+	SalesMapReduce1.Sales second = new SalesMapReduce1.Sales();
+
+	@Setup
+	public void setup() throws IOException {
+		SalesCsvParser parser = new SalesCsvParser();
+		DataOutputBuffer out = new DataOutputBuffer();
+		Text[] rows = GeoSalesRows.generate(KEYS, 42);
+		for (int i = 0; i < KEYS; i++) {
+			parser.parse(rows[i]);
+			keys[i] = new SalesMapReduce1.Sales();
+			keys[i].set(parser, SalesOrderDate.year(parser.getDate(SalesCsvParser.ORDER_DATE)));
+			starts[i] = out.getLength();
+			keys[i].write(out);
+		}
+		starts[KEYS] = out.getLength();
+		serialized = out.getData();
+		comparator = WritableComparator.get(SalesMapReduce1.Sales.class);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS - 1)
+	public void compareTo(Blackhole blackhole) {
+		for (int i = 1; i < KEYS; i++) {
+			blackhole.consume(keys[i - 1].compareTo(keys[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS - 1)
+	public void rawComparator(Blackhole blackhole) {
+		for (int i = 1; i < KEYS; i++) {
+			blackhole.consume(comparator.compare(serialized, starts[i - 1], starts[i] - starts[i - 1], serialized, starts[i], starts[i + 1] - starts[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS - 1)
+	public void deserializeAndCompare(Blackhole blackhole) throws IOException {
+		for (int i = 1; i < KEYS; i++) {
+			in.reset(serialized, starts[i - 1], starts[i + 1] - starts[i - 1]);
+			first.readFields(in);
+			second.readFields(in);
+			blackhole.consume(first.compareTo(second));
+		}
+	}
+}
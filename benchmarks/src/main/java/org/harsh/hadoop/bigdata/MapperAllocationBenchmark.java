@@ -0,0 +1,163 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * map() of the mappers of the four jobs, per record, meant to be run with -prof gc
+ *
+ * Every mapper gets a map context over a record writer that only keeps the last pair written, so the time and the
+ * gc.alloc.rate.norm of a benchmark are those of the mapper itself, parsing and key setting included, without the
+ * serialization and sort buffer of a real map task. The mappers run with the default settings of the jobs.
+ * SalesMapper4 only writes in cleanup, which is not measured.
+ *
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperAllocationBenchmark {
+	static final int ROWS = 16384;
+
+	Text[] rows;
+	LongWritable offset = new LongWritable();
+	SalesMapReduce1.SalesMapper1 mapper1 = new SalesMapReduce1.SalesMapper1();
+	SalesMapReduce2.SalesMapper2 mapper2 = new SalesMapReduce2.SalesMapper2();
+	SalesMapReduce3.SalesMapper3 mapper3 = new SalesMapReduce3.SalesMapper3();
+	SalesMapReduce4.SalesMapper4 mapper4 = new SalesMapReduce4.SalesMapper4();
+	Mapper<Object, Writable, WritableComparable<?>, SumCountWritable>.Context context1;
+	Mapper<Object, Writable, WritableComparable<?>, IntWritable>.Context context2;
+	Mapper<Object, Writable, WritableComparable<?>, MinMaxWritable>.Context context3;
+	Mapper<Object, Writable, Text, SalesMapReduce4.Sales>.Context context4;
+
+	/*
+	 * Record writer keeping the last pair written, so that writing it can not be left out
+	 * */
+	static class LastPairWriter<K, V> extends RecordWriter<K, V> {
+		K key;
+		V value;
+		long written;
+
+		@Override
+		public void write(K key, V value) {
+			this.key = key;
+			this.value = value;
+			written++;
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) {
+		}
+	}
+
+	/*
+	 * Reporter handing out one counter for every name, skipped records are counted without a lookup
+	 * */
+	static class OneCounterReporter extends StatusReporter {
+		final Counter counter = new GenericCounter();
+
+		@Override
+		public Counter getCounter(Enum<?> name) {
+			return counter;
+		}
+
+		@Override
+		public Counter getCounter(String group, String name) {
+			return counter;
+		}
+
+		@Override
+		public void progress() {
+		}
+
+		@Override
+		public float getProgress() {
+			return 0;
+		}
+
+		@Override
+		public void setStatus(String status) {
+		}
+	}
+
+	static <K, V> Mapper<Object, Writable, K, V>.Context context(Configuration conf) {
+		MapContextImpl<Object, Writable, K, V> mapContext = new MapContextImpl<Object, Writable, K, V>(conf, new TaskAttemptID(), null, new LastPairWriter<K, V>(), null,
+				new OneCounterReporter(), null);
+		return new WrappedMapper<Object, Writable, K, V>().getMapContext(mapContext);
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		rows = GeoSalesRows.generate(ROWS, 42);
+		Configuration conf = new Configuration(false);
+		context1 = context(conf);
+		context2 = context(conf);
+		context3 = context(conf);
+		context4 = context(conf);
+		mapper1.setup(context1);
+		mapper2.setup(context2);
+		mapper3.setup(context3);
+		mapper4.setup(context4);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void salesMapper1() throws IOException, InterruptedException {
+		for (int i = 0; i < ROWS; i++) {
+			mapper1.map(offset, rows[i], context1);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void salesMapper2() throws IOException, InterruptedException {
+		for (int i = 0; i < ROWS; i++) {
+			mapper2.map(offset, rows[i], context2);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void salesMapper3() throws IOException, InterruptedException {
+		for (int i = 0; i < ROWS; i++) {
+			mapper3.map(offset, rows[i], context3);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void salesMapper4() throws IOException, InterruptedException {
+		for (int i = 0; i < ROWS; i++) {
+			mapper4.map(offset, rows[i], context4);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Partitioning (country, item_type, year) keys, per key
+ *
+ * hashed is SalesPartitioner without a plan, sampled is SalesPartitioner with a plan built by
+ * SalesPartitioner.build from the generated rows, and hashPartitioner is Hadoop's default on SalesKey.hashCode.
+ *
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartitionerBenchmark {
+	static final int KEYS = 4096;
+
+	@Param({ "8" })
+	int partitions;
+
+	SalesMapReduce1.Sales[] keys = new SalesMapReduce1.Sales[KEYS];
+	SalesPartitioner hashed = new SalesPartitioner();
+	SalesPartitioner sampled = new SalesPartitioner();
+	HashPartitioner<WritableComparable<?>, Object> hashPartitioner = new HashPartitioner<WritableComparable<?>, Object>();
+	Path workDir;
+
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		Text[] rows = GeoSalesRows.generate(KEYS, 42);
+		SalesCsvParser parser = new SalesCsvParser();
+		for (int i = 0; i < KEYS; i++) {
+			parser.parse(rows[i]);
+			keys[i] = new SalesMapReduce1.Sales();
+			keys[i].set(parser, SalesOrderDate.year(parser.getDate(SalesCsvParser.ORDER_DATE)));
+		}
+
+		workDir = Files.createTempDirectory("sales-partitioner");
+		Path input = workDir.resolve("sales.csv");
+		GeoSalesRows.write(rows, input);
+		Configuration conf = new Configuration();
+		hashed.setConf(conf);
+		org.apache.hadoop.fs.Path plan = SalesPartitioner.build(conf, new org.apache.hadoop.fs.Path(input.toUri()),
+				new org.apache.hadoop.fs.Path(workDir.resolve("partitions").toUri()), partitions);
+		Configuration sampledConf = new Configuration();
+		sampledConf.set(SalesPartitioner.PATH_KEY, plan.toString());
+		sampled.setConf(sampledConf);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workDir.toFile());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void hashed(Blackhole blackhole) {
+		for (SalesMapReduce1.Sales key : keys) {
+			blackhole.consume(hashed.getPartition(key, null, partitions));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void sampled(Blackhole blackhole) {
+		for (SalesMapReduce1.Sales key : keys) {
+			blackhole.consume(sampled.getPartition(key, null, partitions));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void hashPartitioner(Blackhole blackhole) {
+		for (SalesMapReduce1.Sales key : keys) {
+			blackhole.consume(hashPartitioner.getPartition(key, null, partitions));
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.harsh.hadoop.bigdata;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Keeping the top N orders by total_profit of every year, per order offered
+ *
+ * treeSet is the bounded TreeSet per year of the first version of SalesMapper4, priorityQueue a bounded
+ * min heap of Sales objects and salesTopN the primitive heaps of SalesTopN that SalesMapper4 uses now.
+ * Every invocation offers the same orders to an empty structure and reads the result in rank order.
+ * Groups are looked up by their Text key, as the group keys of the mapper are Text.
+ *
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopNBenchmark {
+	static final int ORDERS = 16384;
+
+	@Param({ "10", "100" })
+	int n;
+
+	int[] orderIds = new int[ORDERS];
+	double[] profits = new double[ORDERS];
+	Text[] yearKeys = new Text[ORDERS];
+	SalesTopN topN;
+
+	@Setup
+	public void setup() {
+		Text[] rows = GeoSalesRows.generate(ORDERS, 42);
+		SalesCsvParser parser = new SalesCsvParser();
+		for (int i = 0; i < ORDERS; i++) {
+			parser.parse(rows[i]);
+			orderIds[i] = parser.getInt(SalesCsvParser.ORDER_ID);
+			profits[i] = parser.getDouble(SalesCsvParser.TOTAL_PROFIT);
+			yearKeys[i] = new Text(Integer.toString(SalesOrderDate.year(parser.getDate(SalesCsvParser.ORDER_DATE))));
+		}
+		topN = new SalesTopN(n);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public void treeSet(Blackhole blackhole) {
+		Map<Text, TreeSet<SalesMapReduce4.Sales>> byYear = new HashMap<Text, TreeSet<SalesMapReduce4.Sales>>();
+		for (int i = 0; i < ORDERS; i++) {
+			TreeSet<SalesMapReduce4.Sales> top = byYear.computeIfAbsent(yearKeys[i], year -> new TreeSet<SalesMapReduce4.Sales>());
+			top.add(new SalesMapReduce4.Sales(orderIds[i], profits[i]));
+			if (top.size() > n) {
+				top.pollFirst();
+			}
+		}
+		for (TreeSet<SalesMapReduce4.Sales> top : byYear.values()) {
+			for (SalesMapReduce4.Sales sale : top.descendingSet()) {
+				blackhole.consume(sale.orderId);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public void priorityQueue(Blackhole blackhole) {
+		Map<Text, PriorityQueue<SalesMapReduce4.Sales>> byYear = new HashMap<Text, PriorityQueue<SalesMapReduce4.Sales>>();
+		for (int i = 0; i < ORDERS; i++) {
+			PriorityQueue<SalesMapReduce4.Sales> top = byYear.computeIfAbsent(yearKeys[i], year -> new PriorityQueue<SalesMapReduce4.Sales>(n + 1));
+			if (top.size() == n && top.peek().compareTo(new SalesMapReduce4.Sales(orderIds[i], profits[i])) >= 0) {
+				continue;
+			}
+			top.add(new SalesMapReduce4.Sales(orderIds[i], profits[i]));
+			if (top.size() > n) {
+				top.poll();
+			}
+		}
+		for (PriorityQueue<SalesMapReduce4.Sales> top : byYear.values()) {
+			while (!top.isEmpty()) {
+				blackhole.consume(top.poll().orderId);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public void salesTopN(Blackhole blackhole) {
+		topN.clear();
+		for (int i = 0; i < ORDERS; i++) {
+			topN.offer(topN.group(yearKeys[i]), orderIds[i], profits[i]);
+		}
+		for (int g = 0; g < topN.groupCount(); g++) {
+			int count = topN.sort(g);
+			for (int rank = 0; rank < count; rank++) {
+				blackhole.consume(topN.getOrderId(g, rank));
+			}
+		}
+	}
+}
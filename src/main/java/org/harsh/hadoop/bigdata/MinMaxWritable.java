@@ -0,0 +1,212 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/*
+ * Minimum and maximum of a set of int values, optionally with the order id holding each of them
+ *
+ * Merging is associative and commutative (ties keep the smallest order id), so the same class is the map output,
+ * the combiner output and the reducer output whatever the number of spills.
+ * Serialized as fixed width ints: min, max, a flag byte and, when the flag is set, the order ids of min and max.
+ *
+ * */
+public class MinMaxWritable implements WritableComparable<MinMaxWritable> {
+
+	/*
+	 * Configuration key turning on tracking of the order ids of min and max
+	 * */
+	public static final String ORDER_IDS_KEY = "sales.minmax.orderids";
+
+	private int min;
+	private int max;
+	private boolean hasOrderIds;
+	private int minOrderId;
+	private int maxOrderId;
+
+	static {
+		WritableComparator.define(MinMaxWritable.class, new Comparator());
+	}
+
+	public MinMaxWritable() {
+		clear();
+	}
+
+	/*
+	 * Empty state, min is above max until a value is added
+	 * */
+	public void clear() {
+		min = Integer.MAX_VALUE;
+		max = Integer.MIN_VALUE;
+		hasOrderIds = false;
+		minOrderId = 0;
+		maxOrderId = 0;
+	}
+
+	public boolean isEmpty() {
+		return min > max;
+	}
+
+	/*
+	 * Single value
+	 * */
+	public void setValue(int value) {
+		min = value;
+		max = value;
+		hasOrderIds = false;
+	}
+
+	/*
+	 * Single value with the order it comes from
+	 * */
+	public void setValue(int value, int orderId) {
+		setValue(value);
+		hasOrderIds = true;
+		minOrderId = orderId;
+		maxOrderId = orderId;
+	}
+
+	/*
+	 * Min and max computed elsewhere, for example by the in-mapper aggregate table
+	 * */
+	public void setRange(int min, int max) {
+		this.min = min;
+		this.max = max;
+		this.hasOrderIds = false;
+	}
+
+	public void setRange(int min, int minOrderId, int max, int maxOrderId) {
+		setRange(min, max);
+		this.hasOrderIds = true;
+		this.minOrderId = minOrderId;
+		this.maxOrderId = maxOrderId;
+	}
+
+	/*
+	 * Merging another min and max into this one
+	 * */
+	public void add(MinMaxWritable other) {
+		if (other.isEmpty()) {
+			return;
+		}
+		if (isEmpty()) {
+			hasOrderIds = other.hasOrderIds;
+		}
+		else {
+			hasOrderIds &= other.hasOrderIds;
+		}
+
+		if (other.min < min || (other.min == min && other.minOrderId < minOrderId)) {
+			min = other.min;
+			minOrderId = other.minOrderId;
+		}
+		if (other.max > max || (other.max == max && other.maxOrderId < maxOrderId)) {
+			max = other.max;
+			maxOrderId = other.maxOrderId;
+		}
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public boolean hasOrderIds() {
+		return hasOrderIds;
+	}
+
+	public int getMinOrderId() {
+		return minOrderId;
+	}
+
+	public int getMaxOrderId() {
+		return maxOrderId;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(min);
+		out.writeInt(max);
+		out.writeBoolean(hasOrderIds);
+		if (hasOrderIds) {
+			out.writeInt(minOrderId);
+			out.writeInt(maxOrderId);
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		min = in.readInt();
+		max = in.readInt();
+		hasOrderIds = in.readBoolean();
+		if (hasOrderIds) {
+			minOrderId = in.readInt();
+			maxOrderId = in.readInt();
+		}
+		else {
+			minOrderId = 0;
+			maxOrderId = 0;
+		}
+	}
+
+	/*
+	 * Ordering by min and then max
+	 * */
+	public int compareTo(MinMaxWritable other) {
+		int result = Integer.compare(min, other.min);
+		if (result == 0) {
+			result = Integer.compare(max, other.max);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MinMaxWritable)) {
+			return false;
+		}
+		MinMaxWritable other = (MinMaxWritable) obj;
+		return min == other.min && max == other.max && hasOrderIds == other.hasOrderIds
+				&& minOrderId == other.minOrderId && maxOrderId == other.maxOrderId;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * min + max) + minOrderId * 17 + maxOrderId;
+	}
+
+	/*
+	 * Printing min and max, followed by their order ids when they are tracked
+	 * */
+	@Override
+	public String toString() {
+		if (hasOrderIds) {
+			return min + "\t" + max + "\t" + minOrderId + "\t" + maxOrderId;
+		}
+		return min + "\t" + max;
+	}
+
+	/*
+	 * Raw comparator reading the fixed width min and max
+	 * */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+			super(MinMaxWritable.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			int result = Integer.compare(readInt(b1, s1), readInt(b2, s2));
+			if (result == 0) {
+				result = Integer.compare(readInt(b1, s1 + 4), readInt(b2, s2 + 4));
+			}
+			return result;
+		}
+	}
+}
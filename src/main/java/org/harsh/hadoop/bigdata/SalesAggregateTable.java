@@ -0,0 +1,261 @@
+package org.harsh.hadoop.bigdata;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+/*
+ * Bounded hash table aggregating values per (country, item_type, year) inside a map task
+ *
+ * Country and item_type are interned to small codes and packed with the year into a long, which is the key of an
+ * open addressing table whose count, sum, total, min and max live in parallel primitive arrays. Adding a value does
+ * not allocate. Once the number of keys reaches the limit derived from the memory budget the mapper writes the
+ * entries out and clears the table, so memory stays bounded whatever the input.
+ *
+ * Entries are read back with a cursor:
+ *     for (int slot = table.first(); slot >= 0; slot = table.next(slot)) { ... }
+ *
+ * */
+public class SalesAggregateTable {
+
+	/*
+	 * Configuration keys turning in-mapper aggregation on and giving its memory budget
+	 * */
+	public static final String ENABLED_KEY = "sales.inmapper.enabled";
+	public static final String MEMORY_MB_KEY = "sales.inmapper.memory.mb";
+	public static final int DEFAULT_MEMORY_MB = 16;
+
+	/*
+	 * Bytes used by one key: eight 8 byte slots, with the table kept at most half full
+	 * */
+	private static final int BYTES_PER_ENTRY = 8 * 8 * 2;
+	private static final long EMPTY = -1L;
+
+	private final SalesDictionary.Dimension countries = new SalesDictionary.Dimension();
+	private final SalesDictionary.Dimension itemTypes = new SalesDictionary.Dimension();
+	private final int maxEntries;
+	private int size;
+
+	private long[] keys;
+	private long[] counts;
+	private double[] sums;
+	private long[] totals;
+	private long[] mins;
+	private long[] maxs;
+	private int[] minOrderIds;
+	private int[] maxOrderIds;
+
+	public SalesAggregateTable(int maxEntries) {
+		this.maxEntries = Math.max(1, maxEntries);
+		allocate(16);
+	}
+
+	/*
+	 * Creating the table when in-mapper aggregation is enabled in job configuration, null otherwise
+	 * */
+	public static SalesAggregateTable newInstance(Configuration conf) {
+		if (!conf.getBoolean(ENABLED_KEY, false)) {
+			return null;
+		}
+		long budget = conf.getLong(MEMORY_MB_KEY, DEFAULT_MEMORY_MB) * 1024 * 1024;
+		return new SalesAggregateTable((int) Math.min(Integer.MAX_VALUE / 4, budget / BYTES_PER_ENTRY));
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		counts = new long[capacity];
+		sums = new double[capacity];
+		totals = new long[capacity];
+		mins = new long[capacity];
+		maxs = new long[capacity];
+		minOrderIds = new int[capacity];
+		maxOrderIds = new int[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * True once the number of keys reached the memory budget, the table should be written out and cleared
+	 * */
+	public boolean isFull() {
+		return size >= maxEntries
+				|| countries.size() >= SalesDictionary.MAX_COUNTRIES - 1 || itemTypes.size() >= SalesDictionary.MAX_ITEM_TYPES - 1;
+	}
+
+	/*
+	 * Adding a double value, kept as count and sum
+	 * */
+	public void add(Text country, Text itemType, int year, double value) {
+		int slot = slot(country, itemType, year);
+		counts[slot]++;
+		sums[slot] += value;
+	}
+
+	/*
+	 * Adding an unscaled fixed point value, kept as count and exact total
+	 * */
+	public void addUnscaled(Text country, Text itemType, int year, long value) {
+		int slot = slot(country, itemType, year);
+		counts[slot]++;
+		totals[slot] = Math.addExact(totals[slot], value);
+	}
+
+	/*
+	 * Adding a whole value, kept as count, total, min and max
+	 * */
+	public void add(Text country, Text itemType, int year, long value) {
+		add(country, itemType, year, value, 0);
+	}
+
+	/*
+	 * Adding a whole value with the order it comes from, ties on min or max keep the smallest order id
+	 * */
+	public void add(Text country, Text itemType, int year, long value, int orderId) {
+		int slot = slot(country, itemType, year);
+		if (counts[slot] == 0 || value < mins[slot] || (value == mins[slot] && orderId < minOrderIds[slot])) {
+			mins[slot] = value;
+			minOrderIds[slot] = orderId;
+		}
+		if (counts[slot] == 0 || value > maxs[slot] || (value == maxs[slot] && orderId < maxOrderIds[slot])) {
+			maxs[slot] = value;
+			maxOrderIds[slot] = orderId;
+		}
+		counts[slot]++;
+		totals[slot] += value;
+	}
+
+	/*
+	 * Finding the slot of the key, claiming an empty one when the key is new
+	 * */
+	private int slot(Text country, Text itemType, int year) {
+		int countryCode = countries.add(country.getBytes(), 0, country.getLength());
+		int itemTypeCode = itemTypes.add(itemType.getBytes(), 0, itemType.getLength());
+		long key = SalesDictionary.pack(countryCode, itemTypeCode, year);
+
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+			return slot(country, itemType, year);
+		}
+		keys[slot] = key;
+		size++;
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		double[] oldSums = sums;
+		long[] oldTotals = totals;
+		long[] oldMins = mins;
+		long[] oldMaxs = maxs;
+		int[] oldMinOrderIds = minOrderIds;
+		int[] oldMaxOrderIds = maxOrderIds;
+		allocate(keys.length * 2);
+
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY) {
+				continue;
+			}
+			int slot = hash(oldKeys[i]) & mask;
+			while (keys[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			counts[slot] = oldCounts[i];
+			sums[slot] = oldSums[i];
+			totals[slot] = oldTotals[i];
+			mins[slot] = oldMins[i];
+			maxs[slot] = oldMaxs[i];
+			minOrderIds[slot] = oldMinOrderIds[i];
+			maxOrderIds[slot] = oldMaxOrderIds[i];
+		}
+	}
+
+	private static int hash(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+
+	/*
+	 * Removing every entry, the arrays are kept for the next round
+	 * */
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(counts, 0);
+		Arrays.fill(sums, 0);
+		Arrays.fill(totals, 0);
+		size = 0;
+		countries.clear();
+		itemTypes.clear();
+	}
+
+	/*
+	 * Cursor over the used slots, -1 when there are none left
+	 * */
+	public int first() {
+		return next(-1);
+	}
+
+	public int next(int slot) {
+		for (int i = slot + 1; i < keys.length; i++) {
+			if (keys[i] != EMPTY) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public void getCountry(int slot, Text out) {
+		countries.name(SalesDictionary.country(keys[slot]), out);
+	}
+
+	public void getItemType(int slot, Text out) {
+		itemTypes.name(SalesDictionary.itemType(keys[slot]), out);
+	}
+
+	public int getYear(int slot) {
+		return SalesDictionary.year(keys[slot]);
+	}
+
+	public long getCount(int slot) {
+		return counts[slot];
+	}
+
+	public double getSum(int slot) {
+		return sums[slot];
+	}
+
+	public long getTotal(int slot) {
+		return totals[slot];
+	}
+
+	public long getMin(int slot) {
+		return mins[slot];
+	}
+
+	public long getMax(int slot) {
+		return maxs[slot];
+	}
+
+	public int getMinOrderId(int slot) {
+		return minOrderIds[slot];
+	}
+
+	public int getMaxOrderId(int slot) {
+		return maxOrderIds[slot];
+	}
+}
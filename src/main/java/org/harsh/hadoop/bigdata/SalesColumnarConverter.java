@@ -0,0 +1,40 @@
+package org.harsh.hadoop.bigdata;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * One time conversion of the geosales csv into columnar files under <output>-columnar
+ * The sales jobs then read them with -D sales.input.columnar=true and decode only the columns they use.
+ *
+ * Usage: SalesColumnarConverter <input> <output>
+ *
+ * */
+public class SalesColumnarConverter {
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.columnar.block.rows=65536 are applied to the job config
+		Job job = Job.getInstance(conf, "SalesColumnarConverter");
+		job.setJarByClass(SalesColumnarConverter.class);
+		job.setMapperClass(Mapper.class); //Lines are passed as they are, the output format parses and encodes them
+		job.setNumReduceTasks(0); //One columnar file per input split, rows keep the order of the csv
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setOutputKeyClass(LongWritable.class);
+		job.setOutputValueClass(Text.class);
+		job.setOutputFormatClass(SalesColumnarOutputFormat.class);
+		FileOutputFormat.setCompressOutput(job, conf.getBoolean(SalesColumnarOutputFormat.COMPRESS_KEY, true)); //Every column of a block is compressed, with DefaultCodec unless another codec is set
+		FileInputFormat.addInputPath(job, new Path(args[0]));
+		FileOutputFormat.setOutputPath(job, new Path(args[1] + "-columnar")); //Second argument, the columnar files are written under -columnar
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+	}
+}
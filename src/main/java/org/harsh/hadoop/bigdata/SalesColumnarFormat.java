@@ -0,0 +1,74 @@
+package org.harsh.hadoop.bigdata;
+
+/*
+ * Layout of the binary columnar sales files written by SalesColumnarOutputFormat and read by SalesColumnarInputFormat
+ *
+ *     file:   MAGIC, VERSION, codec class name (empty when not compressed), blocks, footer, footer offset (long), MAGIC
+ *     block:  row count, then for every csv column its encoding, raw length, stored length and stored bytes
+ *     footer: block count, then the offset and row count of every block
+ *
+ * Numbers are Hadoop variable length longs (WritableUtils.writeVLong). The columns of a block are stored one after
+ * the other and compressed separately, so a reader only inflates and decodes the columns a job reads and seeks over
+ * the others. The footer lets every split pick the blocks that start inside it.
+ *
+ * */
+public final class SalesColumnarFormat {
+
+	static final byte[] MAGIC = { 'S', 'C', 'O', 'L' };
+	static final byte VERSION = 1;
+
+	/*
+	 * Length of the trailer: footer offset and MAGIC
+	 * */
+	static final int TRAILER_LENGTH = 8 + 4;
+
+	/*
+	 * Column encodings
+	 * DICTIONARY: entry count, every entry as length and bytes, then the entry code of every row
+	 * DATE:       base year, then (year - base) << 9 | month << 5 | day of every row, 0 for a field that is not a date
+	 * LONG:       the value of every row
+	 * DECIMAL:    scale, then value * 10^scale of every row, exact for the plain decimals of the csv
+	 * DOUBLE:     8 bytes per row, used by a decimal column when one of its values in the block is not a plain decimal
+	 * A LONG, DECIMAL or DOUBLE column with fields that are not numbers has NULLS added to its encoding and starts with
+	 * the count of those rows and the gaps between them; they hold 0 and read back as empty fields, so that only a job
+	 * reading that column of the row fails on it, as it does on the csv.
+	 * */
+	static final int DICTIONARY = 0;
+	static final int DATE = 1;
+	static final int LONG = 2;
+	static final int DECIMAL = 3;
+	static final int DOUBLE = 4;
+	static final int NULLS = 8;
+
+	/*
+	 * Encoding of every csv column, by SalesCsvParser column position
+	 * */
+	static final int[] SCHEMA = {
+		LONG, DICTIONARY, DICTIONARY, DICTIONARY, DICTIONARY, DICTIONARY, DATE, LONG, DATE,
+		LONG, DECIMAL, DECIMAL, DECIMAL, DECIMAL, DECIMAL
+	};
+
+	private SalesColumnarFormat() {
+	}
+
+	/*
+	 * Packed yyyyMMdd order date from a stored DATE value, SalesOrderDate.INVALID for 0
+	 * */
+	static int decodeDate(int baseYear, long stored) {
+		if (stored == 0) {
+			return SalesOrderDate.INVALID;
+		}
+		int year = baseYear + (int) (stored >>> 9);
+		return year * 10000 + (int) ((stored >>> 5) & 0xF) * 100 + (int) (stored & 0x1F);
+	}
+
+	/*
+	 * Stored DATE value of a packed yyyyMMdd order date
+	 * */
+	static long encodeDate(int baseYear, int date) {
+		if (date == SalesOrderDate.INVALID) {
+			return 0;
+		}
+		return (long) (SalesOrderDate.year(date) - baseYear) << 9 | SalesOrderDate.month(date) << 5 | SalesOrderDate.day(date);
+	}
+}
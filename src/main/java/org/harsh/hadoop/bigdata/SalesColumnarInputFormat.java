@@ -0,0 +1,255 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/*
+ * Input format of the columnar files written by SalesColumnarConverter
+ *
+ * Keys are the row numbers in the file and values are SalesColumnarRow, which the mappers read through
+ * SalesCsvParser.parse like a csv line. Only the columns listed in sales.columnar.columns are inflated and
+ * decoded, the stored bytes of the others are skipped. A split reads the blocks that start inside it.
+ *
+ * */
+public class SalesColumnarInputFormat extends FileInputFormat<LongWritable, SalesColumnarRow> {
+
+	/*
+	 * Configuration key switching the jobs to columnar input, and the key of the columns they read
+	 * */
+	public static final String COLUMNAR_KEY = "sales.input.columnar";
+	public static final String COLUMNS_KEY = "sales.columnar.columns";
+
+	/*
+	 * Reading the job input as columnar files, adding the given columns and those the filters of the job compare
+	 * to the columns that are decoded. Negative columns, such as the year pseudo column of SalesTopN, are ignored
+	 * */
+	public static void configure(Job job, int... columns) {
+		Configuration conf = job.getConfiguration();
+		boolean[] projected = new boolean[SalesCsvParser.FIELD_COUNT];
+		for (int column : conf.getInts(COLUMNS_KEY)) {
+			projected[column] = true;
+		}
+		for (int column : columns) {
+			if (column >= 0) {
+				projected[column] = true;
+			}
+		}
+		projected[SalesCsvParser.ITEM_TYPE] |= conf.get(SalesFilter.ITEM_TYPE_KEY) != null;
+		projected[SalesCsvParser.COUNTRY] |= conf.get(SalesFilter.COUNTRY_KEY) != null;
+		projected[SalesCsvParser.ORDER_DATE] |= conf.get(SalesFilter.YEAR_RANGE_KEY) != null;
+
+		StringBuilder names = new StringBuilder();
+		for (int column = 0; column < projected.length; column++) {
+			if (projected[column]) {
+				names.append(names.length() == 0 ? "" : ",").append(column);
+			}
+		}
+		conf.set(COLUMNS_KEY, names.toString());
+		job.setInputFormatClass(SalesColumnarInputFormat.class);
+	}
+
+	/*
+	 * Columns read by the job, every column when none were set
+	 * */
+	static boolean[] getColumns(Configuration conf) {
+		boolean[] projected = new boolean[SalesCsvParser.FIELD_COUNT];
+		int[] columns = conf.getInts(COLUMNS_KEY);
+		if (columns.length == 0) {
+			Arrays.fill(projected, true);
+		}
+		for (int column : columns) {
+			projected[column] = true;
+		}
+		return projected;
+	}
+
+	@Override
+	public RecordReader<LongWritable, SalesColumnarRow> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new SalesColumnarRecordReader();
+	}
+
+	/*
+	 * Reader of the blocks of one split, decoding a block at a time into the row
+	 * */
+	public static class SalesColumnarRecordReader extends RecordReader<LongWritable, SalesColumnarRow> {
+		private FSDataInputStream in;
+		private CompressionCodec codec;
+		private Decompressor decompressor;
+		private boolean[] projected;
+		private long[] blockOffsets;
+		private int[] blockRows;
+		private long[] blockFirstRows;
+		private int firstBlock;
+		private int endBlock;
+		private int block;
+		private long rowNumber;
+		private byte[] stored = new byte[4096];
+		private byte[] raw = new byte[4096];
+		private final LongWritable key = new LongWritable();
+		private final SalesColumnarRow row = new SalesColumnarRow();
+
+		@Override
+		public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+			FileSplit split = (FileSplit) genericSplit;
+			Configuration conf = context.getConfiguration();
+			Path path = split.getPath();
+			long fileLength = path.getFileSystem(conf).getFileStatus(path).getLen();
+			in = path.getFileSystem(conf).open(path);
+			projected = getColumns(conf);
+
+			/*
+			 * Header: magic, version and codec
+			 * */
+			checkMagic(path);
+			int version = in.readByte();
+			if (version != SalesColumnarFormat.VERSION) {
+				throw new IOException("Unsupported columnar version " + version + " of " + path);
+			}
+			String codecName = Text.readString(in);
+			if (!codecName.isEmpty()) {
+				try {
+					codec = (CompressionCodec) ReflectionUtils.newInstance(conf.getClassByName(codecName), conf);
+				}
+				catch (ClassNotFoundException e) {
+					throw new IOException("Unknown codec " + codecName + " of " + path, e);
+				}
+				decompressor = CodecPool.getDecompressor(codec);
+			}
+
+			/*
+			 * Footer: the blocks starting inside the split are read
+			 * */
+			in.seek(fileLength - SalesColumnarFormat.TRAILER_LENGTH);
+			long footerOffset = in.readLong();
+			checkMagic(path);
+			in.seek(footerOffset);
+			int blocks = (int) WritableUtils.readVLong(in);
+			blockOffsets = new long[blocks];
+			blockRows = new int[blocks];
+			blockFirstRows = new long[blocks];
+			long rows = 0;
+			firstBlock = blocks;
+			endBlock = blocks;
+			for (int i = 0; i < blocks; i++) {
+				blockOffsets[i] = WritableUtils.readVLong(in);
+				blockRows[i] = (int) WritableUtils.readVLong(in);
+				blockFirstRows[i] = rows;
+				rows += blockRows[i];
+				if (blockOffsets[i] >= split.getStart() && firstBlock == blocks) {
+					firstBlock = i;
+				}
+				if (blockOffsets[i] >= split.getStart() + split.getLength() && endBlock == blocks) {
+					endBlock = i;
+				}
+			}
+			firstBlock = Math.min(firstBlock, endBlock);
+			block = firstBlock - 1;
+		}
+
+		private void checkMagic(Path path) throws IOException {
+			byte[] magic = new byte[SalesColumnarFormat.MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, SalesColumnarFormat.MAGIC)) {
+				throw new IOException(path + " is not a columnar sales file");
+			}
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			while (!row.next()) {
+				if (block + 1 >= endBlock) {
+					return false;
+				}
+				readBlock(++block);
+				rowNumber = blockFirstRows[block] - 1;
+			}
+			key.set(++rowNumber);
+			return true;
+		}
+
+		/*
+		 * Decoding the projected columns of the block and skipping the others
+		 * */
+		private void readBlock(int index) throws IOException {
+			in.seek(blockOffsets[index]);
+			int rows = (int) WritableUtils.readVLong(in);
+			if (rows != blockRows[index]) {
+				throw new IOException("Block " + index + " holds " + rows + " rows, the footer says " + blockRows[index]);
+			}
+			row.startBlock(rows);
+
+			for (int column = 0; column < SalesCsvParser.FIELD_COUNT; column++) {
+				int encoding = (int) WritableUtils.readVLong(in);
+				int rawLength = (int) WritableUtils.readVLong(in);
+				int storedLength = (int) WritableUtils.readVLong(in);
+				if (!projected[column]) {
+					in.seek(in.getPos() + storedLength);
+					continue;
+				}
+
+				if (stored.length < storedLength) {
+					stored = new byte[storedLength];
+				}
+				in.readFully(stored, 0, storedLength);
+				byte[] bytes = stored;
+				if (codec != null) {
+					if (raw.length < rawLength) {
+						raw = new byte[rawLength];
+					}
+					decompressor.reset();
+					IOUtils.readFully(codec.createInputStream(new ByteArrayInputStream(stored, 0, storedLength), decompressor), raw, 0, rawLength);
+					bytes = raw;
+				}
+				row.decode(column, encoding, bytes, rawLength);
+			}
+		}
+
+		@Override
+		public LongWritable getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public SalesColumnarRow getCurrentValue() {
+			return row;
+		}
+
+		@Override
+		public float getProgress() {
+			if (endBlock == firstBlock) {
+				return 1.0f;
+			}
+			return Math.min(1.0f, (block - firstBlock + 1) / (float) (endBlock - firstBlock));
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (decompressor != null) {
+				CodecPool.returnDecompressor(decompressor);
+				decompressor = null;
+			}
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/*
+ * Output format turning csv lines into a columnar sales file, see SalesColumnarFormat for the layout
+ *
+ * Lines are parsed with SalesCsvParser and buffered column by column until a block is full. Text columns are
+ * dictionary encoded per block, dates are stored as small year offsets, integers as variable length longs and
+ * prices as exact fixed point decimals. Every column of a block is compressed on its own with the output codec.
+ * Lines that are not complete records are counted and left out. A number field that does not parse is stored as a
+ * null of its column, so the row stays for the jobs that do not read that column.
+ *
+ * */
+public class SalesColumnarOutputFormat extends FileOutputFormat<Object, Text> {
+
+	/*
+	 * Configuration keys of the number of rows per block and of block compression, on by default
+	 * The codec is the output codec of the job, DefaultCodec unless mapreduce.output.fileoutputformat.compress.codec is set
+	 * */
+	public static final String BLOCK_ROWS_KEY = "sales.columnar.block.rows";
+	public static final int DEFAULT_BLOCK_ROWS = 64 * 1024;
+	public static final String COMPRESS_KEY = "sales.columnar.compress";
+
+	@Override
+	public RecordWriter<Object, Text> getRecordWriter(TaskAttemptContext context) throws IOException {
+		Configuration conf = context.getConfiguration();
+		CompressionCodec codec = null;
+		if (getCompressOutput(context)) {
+			codec = ReflectionUtils.newInstance(getOutputCompressorClass(context, DefaultCodec.class), conf);
+		}
+		Path path = getDefaultWorkFile(context, "");
+		return new SalesColumnarWriter(path.getFileSystem(conf).create(path, false), codec, context);
+	}
+
+	/*
+	 * Writer buffering one block of rows column by column
+	 * */
+	public static class SalesColumnarWriter extends RecordWriter<Object, Text> {
+		private static final int[] SCHEMA = SalesColumnarFormat.SCHEMA;
+		private static final int COLUMNS = SCHEMA.length;
+		private static final long NOT_DECIMAL = Long.MIN_VALUE;
+
+		private final FSDataOutputStream out;
+		private final CompressionCodec codec;
+		private final Compressor compressor;
+		private final TaskAttemptContext context;
+		private final SalesCsvParser parser;
+		private final int blockRows;
+
+		/*
+		 * Block buffers: codes, packed dates, integers or unscaled decimals per column, with the parsed double
+		 * and the scale of every decimal so that the block can pick its scale, or fall back to doubles
+		 * */
+		private final long[][] values = new long[COLUMNS][];
+		private final double[][] doubles = new double[COLUMNS][];
+		private final byte[][] scales = new byte[COLUMNS][];
+		private final SalesDictionary.Dimension[] dictionaries = new SalesDictionary.Dimension[COLUMNS];
+		private final int[][] nullRows = new int[COLUMNS][]; //Rows of the block whose number field did not parse
+		private final int[] nullCounts = new int[COLUMNS];
+		private int rows;
+		private int decimalScale;
+		private final Text field = new Text();
+
+		private final DataOutputBuffer column = new DataOutputBuffer();
+		private final DataOutputBuffer compressed = new DataOutputBuffer();
+		private final DataOutputBuffer footer = new DataOutputBuffer();
+		private int blocks;
+
+		public SalesColumnarWriter(FSDataOutputStream out, CompressionCodec codec, TaskAttemptContext context) throws IOException {
+			this.out = out;
+			this.codec = codec;
+			this.compressor = codec == null ? null : CodecPool.getCompressor(codec);
+			this.context = context;
+			this.parser = SalesCsvParser.newInstance(context.getConfiguration());
+			this.blockRows = context.getConfiguration().getInt(BLOCK_ROWS_KEY, DEFAULT_BLOCK_ROWS);
+			for (int i = 0; i < COLUMNS; i++) {
+				values[i] = new long[blockRows];
+				if (SCHEMA[i] == SalesColumnarFormat.DECIMAL) {
+					doubles[i] = new double[blockRows];
+					scales[i] = new byte[blockRows];
+				}
+				if (SCHEMA[i] == SalesColumnarFormat.DICTIONARY) {
+					dictionaries[i] = new SalesDictionary.Dimension();
+				}
+			}
+
+			out.write(SalesColumnarFormat.MAGIC);
+			out.writeByte(SalesColumnarFormat.VERSION);
+			Text.writeString(out, codec == null ? "" : codec.getClass().getName());
+		}
+
+		@Override
+		public void write(Object key, Text value) throws IOException {
+			if (parser.parse(value) < SalesCsvParser.FIELD_COUNT) {
+				context.getCounter(SalesCounters.MALFORMED_RECORDS).increment(1);
+				return;
+			}
+
+			/*
+			 * A number field that does not parse is stored as a null of its column, the rest of the row is kept
+			 * */
+			for (int i = 0; i < COLUMNS; i++) {
+				try {
+					if (SCHEMA[i] == SalesColumnarFormat.LONG) {
+						values[i][rows] = parser.getLong(i);
+					}
+					else if (SCHEMA[i] == SalesColumnarFormat.DECIMAL) {
+						doubles[i][rows] = parser.getDouble(i);
+						values[i][rows] = decimal(i);
+						scales[i][rows] = (byte) decimalScale;
+					}
+				}
+				catch (NumberFormatException e) {
+					setNull(i);
+				}
+			}
+
+			for (int i = 0; i < COLUMNS; i++) {
+				if (SCHEMA[i] == SalesColumnarFormat.DICTIONARY) {
+					parser.getText(i, field);
+					values[i][rows] = dictionaries[i].add(field.getBytes(), 0, field.getLength());
+				}
+				else if (SCHEMA[i] == SalesColumnarFormat.DATE) {
+					values[i][rows] = parser.getDate(i);
+				}
+			}
+
+			if (++rows == blockRows) {
+				writeBlock();
+			}
+		}
+
+		/*
+		 * Marking the number field of the current row as null, it is stored as 0
+		 * */
+		private void setNull(int i) {
+			values[i][rows] = 0;
+			if (doubles[i] != null) {
+				doubles[i][rows] = 0;
+				scales[i][rows] = 0;
+			}
+			if (nullRows[i] == null) {
+				nullRows[i] = new int[16];
+			}
+			else if (nullCounts[i] == nullRows[i].length) {
+				nullRows[i] = Arrays.copyOf(nullRows[i], nullCounts[i] * 2);
+			}
+			nullRows[i][nullCounts[i]++] = rows;
+		}
+
+		/*
+		 * Digits of a plain decimal field as a long, with the number of fraction digits left in decimalScale
+		 * NOT_DECIMAL for anything SalesCsvParser.getDouble does not compute as digits / 10^fraction digits,
+		 * including negative zero, so that the stored decimal always gives back the same double
+		 * */
+		private long decimal(int i) {
+			byte[] bytes = parser.getBytes();
+			int pos = parser.getStart(i);
+			int end = pos + parser.getLength(i);
+			boolean negative = false;
+
+			if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+				negative = bytes[pos] == '-';
+				pos++;
+			}
+			long mantissa = 0;
+			int digits = 0;
+			int fractionDigits = -1;
+			for (; pos < end; pos++) {
+				if (bytes[pos] == '.' && fractionDigits < 0) {
+					fractionDigits = 0;
+					continue;
+				}
+				int digit = bytes[pos] - '0';
+				if (digit < 0 || digit > 9 || mantissa >= SalesCsvParser.MAX_EXACT_MANTISSA / 10) {
+					return NOT_DECIMAL;
+				}
+				mantissa = mantissa * 10 + digit;
+				digits++;
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			}
+			if (digits == 0 || fractionDigits > SalesCsvParser.MAX_SCALE || (negative && mantissa == 0)) {
+				return NOT_DECIMAL;
+			}
+			decimalScale = Math.max(fractionDigits, 0);
+			return negative ? -mantissa : mantissa;
+		}
+
+		/*
+		 * Writing the buffered rows as one block and adding it to the footer
+		 * */
+		private void writeBlock() throws IOException {
+			if (rows == 0) {
+				return;
+			}
+			WritableUtils.writeVLong(footer, out.getPos());
+			WritableUtils.writeVLong(footer, rows);
+			blocks++;
+
+			WritableUtils.writeVLong(out, rows);
+			for (int i = 0; i < COLUMNS; i++) {
+				column.reset();
+				int encoding = encode(i);
+				DataOutputBuffer stored = column;
+				if (codec != null) {
+					compressed.reset();
+					compressor.reset();
+					CompressionOutputStream stream = codec.createOutputStream(compressed, compressor);
+					stream.write(column.getData(), 0, column.getLength());
+					stream.finish();
+					stored = compressed;
+				}
+				WritableUtils.writeVLong(out, encoding);
+				WritableUtils.writeVLong(out, column.getLength());
+				WritableUtils.writeVLong(out, stored.getLength());
+				out.write(stored.getData(), 0, stored.getLength());
+			}
+
+			rows = 0;
+			Arrays.fill(nullCounts, 0);
+			for (SalesDictionary.Dimension dictionary : dictionaries) {
+				if (dictionary != null) {
+					dictionary.clear();
+				}
+			}
+		}
+
+		/*
+		 * Encoding the buffered rows of the column into the column buffer, returning the encoding used
+		 * The rows holding nulls come first, when there are any
+		 * */
+		private int encode(int i) throws IOException {
+			if (nullCounts[i] == 0) {
+				return encodeValues(i);
+			}
+			WritableUtils.writeVLong(column, nullCounts[i]);
+			int previous = -1;
+			for (int n = 0; n < nullCounts[i]; n++) {
+				WritableUtils.writeVLong(column, nullRows[i][n] - previous);
+				previous = nullRows[i][n];
+			}
+			return encodeValues(i) | SalesColumnarFormat.NULLS;
+		}
+
+		private int encodeValues(int i) throws IOException {
+			long[] columnValues = values[i];
+			switch (SCHEMA[i]) {
+			case SalesColumnarFormat.DICTIONARY:
+				WritableUtils.writeVLong(column, dictionaries[i].size());
+				for (int code = 0; code < dictionaries[i].size(); code++) {
+					dictionaries[i].name(code, field);
+					WritableUtils.writeVLong(column, field.getLength());
+					column.write(field.getBytes(), 0, field.getLength());
+				}
+				writeValues(columnValues);
+				return SalesColumnarFormat.DICTIONARY;
+			case SalesColumnarFormat.DATE:
+				int baseYear = Integer.MAX_VALUE;
+				for (int row = 0; row < rows; row++) {
+					if (columnValues[row] != SalesOrderDate.INVALID) {
+						baseYear = Math.min(baseYear, SalesOrderDate.year((int) columnValues[row]));
+					}
+				}
+				baseYear = baseYear == Integer.MAX_VALUE ? 0 : baseYear;
+				WritableUtils.writeVLong(column, baseYear);
+				for (int row = 0; row < rows; row++) {
+					WritableUtils.writeVLong(column, SalesColumnarFormat.encodeDate(baseYear, (int) columnValues[row]));
+				}
+				return SalesColumnarFormat.DATE;
+			case SalesColumnarFormat.DECIMAL:
+				int scale = blockScale(i);
+				if (scale < 0) {
+					for (int row = 0; row < rows; row++) {
+						column.writeDouble(doubles[i][row]);
+					}
+					return SalesColumnarFormat.DOUBLE;
+				}
+				WritableUtils.writeVLong(column, scale);
+				for (int row = 0; row < rows; row++) {
+					WritableUtils.writeVLong(column, columnValues[row] * pow10(scale - scales[i][row]));
+				}
+				return SalesColumnarFormat.DECIMAL;
+			default:
+				writeValues(columnValues);
+				return SCHEMA[i];
+			}
+		}
+
+		private void writeValues(long[] columnValues) throws IOException {
+			for (int row = 0; row < rows; row++) {
+				WritableUtils.writeVLong(column, columnValues[row]);
+			}
+		}
+
+		/*
+		 * Largest scale of the decimals of the block, -1 when a value is not a plain decimal
+		 * or does not stay exact once scaled, then the column is written as doubles
+		 * */
+		private int blockScale(int i) {
+			int scale = 0;
+			for (int row = 0; row < rows; row++) {
+				if (values[i][row] == NOT_DECIMAL) {
+					return -1;
+				}
+				scale = Math.max(scale, scales[i][row]);
+			}
+			for (int row = 0; row < rows; row++) {
+				int shift = scale - scales[i][row];
+				if (shift >= 18 || Math.abs(values[i][row]) >= SalesCsvParser.MAX_EXACT_MANTISSA / pow10(shift)) {
+					return -1;
+				}
+			}
+			return scale;
+		}
+
+		private static long pow10(int exponent) {
+			long value = 1;
+			for (int i = 0; i < exponent; i++) {
+				value *= 10;
+			}
+			return value;
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) throws IOException {
+			try {
+				writeBlock();
+				long footerOffset = out.getPos();
+				WritableUtils.writeVLong(out, blocks);
+				out.write(footer.getData(), 0, footer.getLength());
+				out.writeLong(footerOffset);
+				out.write(SalesColumnarFormat.MAGIC);
+			}
+			finally {
+				if (compressor != null) {
+					CodecPool.returnCompressor(compressor);
+				}
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Row of a columnar sales file, the value SalesColumnarInputFormat hands to the mappers
+ *
+ * The reader decodes the projected columns of a whole block into arrays and the row only moves an index over them.
+ * SalesCsvParser.parse(row) points the text columns at the dictionary bytes of the block and sets numbers and dates
+ * as typed values, so a mapper reads a row like a csv line without any text being scanned or parsed.
+ * Columns that were not projected read as empty fields. A row is serialized as the decoded fields of its current row.
+ *
+ * */
+public class SalesColumnarRow implements Writable {
+	private static final int NOT_PROJECTED = -1;
+
+	private final int[] encodings = new int[SalesCsvParser.FIELD_COUNT];
+	private final int[] decoded = new int[SalesCsvParser.FIELD_COUNT]; //Columns decoded in the block, in column order
+	private int decodedCount;
+	private final int[] scales = new int[SalesCsvParser.FIELD_COUNT];
+	private final long[][] values = new long[SalesCsvParser.FIELD_COUNT][];
+	private final int[][] entryStarts = new int[SalesCsvParser.FIELD_COUNT][];
+	private final int[][] entryEnds = new int[SalesCsvParser.FIELD_COUNT][];
+	private final boolean[] hasNulls = new boolean[SalesCsvParser.FIELD_COUNT];
+	private final boolean[][] nulls = new boolean[SalesCsvParser.FIELD_COUNT][];
+	private byte[] text = new byte[1024]; //Dictionary entries of every text column of the block
+	private int textLength;
+	private int rows;
+	private int row;
+	private int pos; //Decoding position in the column being decoded
+	private Object source = new Object(); //Changed when the decoded columns change, see copyTo
+
+	public SalesColumnarRow() {
+		Arrays.fill(encodings, NOT_PROJECTED);
+	}
+
+	/*
+	 * Starting a block of the given number of rows, columns are not projected until they are decoded
+	 * */
+	void startBlock(int rows) {
+		this.rows = rows;
+		this.row = -1;
+		this.textLength = 0;
+		this.decodedCount = 0;
+		Arrays.fill(encodings, NOT_PROJECTED);
+	}
+
+	/*
+	 * Moving to the next row of the block, false when the block is done
+	 * */
+	boolean next() {
+		if (row + 1 >= rows) {
+			return false;
+		}
+		row++;
+		return true;
+	}
+
+	/*
+	 * Decoding the raw bytes of one column of the block
+	 * */
+	void decode(int column, int encoding, byte[] bytes, int length) throws IOException {
+		if (values[column] == null || values[column].length < rows) {
+			values[column] = new long[rows];
+		}
+		long[] columnValues = values[column];
+		pos = 0;
+
+		/*
+		 * Rows whose number field did not parse, they read back as empty fields
+		 * */
+		hasNulls[column] = (encoding & SalesColumnarFormat.NULLS) != 0;
+		if (hasNulls[column]) {
+			encoding &= ~SalesColumnarFormat.NULLS;
+			if (nulls[column] == null || nulls[column].length < rows) {
+				nulls[column] = new boolean[rows];
+			}
+			else {
+				Arrays.fill(nulls[column], 0, rows, false);
+			}
+			int count = (int) readVLong(bytes);
+			int nullRow = -1;
+			for (int i = 0; i < count; i++) {
+				nullRow += (int) readVLong(bytes);
+				if (nullRow < 0 || nullRow >= rows) {
+					throw new IOException("Null row " + nullRow + " of column " + column + " is outside the block");
+				}
+				nulls[column][nullRow] = true;
+			}
+		}
+
+		switch (encoding) {
+		case SalesColumnarFormat.DICTIONARY:
+			int entries = (int) readVLong(bytes);
+			if (entryStarts[column] == null || entryStarts[column].length < entries) {
+				entryStarts[column] = new int[entries];
+				entryEnds[column] = new int[entries];
+			}
+			for (int entry = 0; entry < entries; entry++) {
+				int entryLength = (int) readVLong(bytes);
+				if (text.length < textLength + entryLength) {
+					text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + entryLength));
+				}
+				System.arraycopy(bytes, pos, text, textLength, entryLength);
+				entryStarts[column][entry] = textLength;
+				textLength += entryLength;
+				entryEnds[column][entry] = textLength;
+				pos += entryLength;
+			}
+			for (int i = 0; i < rows; i++) {
+				columnValues[i] = readVLong(bytes);
+			}
+			break;
+		case SalesColumnarFormat.DATE:
+			int baseYear = (int) readVLong(bytes);
+			for (int i = 0; i < rows; i++) {
+				columnValues[i] = SalesColumnarFormat.decodeDate(baseYear, readVLong(bytes));
+			}
+			break;
+		case SalesColumnarFormat.LONG:
+			for (int i = 0; i < rows; i++) {
+				columnValues[i] = readVLong(bytes);
+			}
+			break;
+		case SalesColumnarFormat.DECIMAL:
+			scales[column] = (int) readVLong(bytes);
+			if (scales[column] < 0 || scales[column] > SalesCsvParser.MAX_SCALE) {
+				throw new IOException("Unsupported scale " + scales[column] + " of column " + column);
+			}
+			for (int i = 0; i < rows; i++) {
+				columnValues[i] = readVLong(bytes);
+			}
+			break;
+		case SalesColumnarFormat.DOUBLE:
+			for (int i = 0; i < rows; i++) {
+				columnValues[i] = WritableComparator.readLong(bytes, pos);
+				pos += 8;
+			}
+			break;
+		default:
+			throw new IOException("Unknown encoding " + encoding + " of column " + column);
+		}
+
+		if (pos != length) {
+			throw new IOException("Column " + column + " holds " + length + " bytes, " + pos + " were decoded");
+		}
+		encodings[column] = encoding;
+		decoded[decodedCount++] = column;
+	}
+
+	private long readVLong(byte[] bytes) throws IOException {
+		byte first = bytes[pos];
+		if (first >= -112) {
+			pos++;
+			return first; //Values from -112 to 127 are stored in their single byte
+		}
+		long value = WritableComparator.readVLong(bytes, pos);
+		pos += WritableUtils.decodeVIntSize(bytes[pos]);
+		return value;
+	}
+
+	/*
+	 * Setting the fields of the current row on the parser, returning the number of fields
+	 * Columns that are not decoded are emptied only when the parser held something else before,
+	 * as the reader decodes the same columns in every block and a read row changes the source when its columns differ
+	 * */
+	int copyTo(SalesCsvParser parser) {
+		if (!parser.setRow(text, SalesCsvParser.FIELD_COUNT, source)) {
+			for (int column = 0; column < SalesCsvParser.FIELD_COUNT; column++) {
+				parser.setText(column, 0, 0);
+			}
+		}
+		for (int i = 0; i < decodedCount; i++) {
+			int column = decoded[i];
+			if (hasNulls[column] && nulls[column][row]) {
+				parser.setText(column, 0, 0);
+				continue;
+			}
+			switch (encodings[column]) {
+			case SalesColumnarFormat.DICTIONARY:
+				int entry = (int) values[column][row];
+				parser.setText(column, entryStarts[column][entry], entryEnds[column][entry]);
+				break;
+			case SalesColumnarFormat.DATE:
+				parser.setDate(column, (int) values[column][row]);
+				break;
+			case SalesColumnarFormat.LONG:
+				parser.setLong(column, values[column][row]);
+				break;
+			case SalesColumnarFormat.DECIMAL:
+				parser.setDecimal(column, values[column][row], scales[column]);
+				break;
+			case SalesColumnarFormat.DOUBLE:
+				parser.setDouble(column, Double.longBitsToDouble(values[column][row]));
+				break;
+			}
+		}
+		return SalesCsvParser.FIELD_COUNT;
+	}
+
+	/*
+	 * Writing the decoded fields of the current row: column, encoding with NULLS for a null, then its value,
+	 * the bytes for a text column and the scale before the value of a decimal
+	 * */
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, decodedCount);
+		for (int i = 0; i < decodedCount; i++) {
+			int column = decoded[i];
+			boolean isNull = hasNulls[column] && nulls[column][row];
+			WritableUtils.writeVInt(out, column);
+			WritableUtils.writeVInt(out, isNull ? encodings[column] | SalesColumnarFormat.NULLS : encodings[column]);
+			if (isNull) {
+				continue;
+			}
+			long value = values[column][row];
+			switch (encodings[column]) {
+			case SalesColumnarFormat.DICTIONARY:
+				int start = entryStarts[column][(int) value];
+				int end = entryEnds[column][(int) value];
+				WritableUtils.writeVInt(out, end - start);
+				out.write(text, start, end - start);
+				break;
+			case SalesColumnarFormat.DECIMAL:
+				WritableUtils.writeVInt(out, scales[column]);
+				WritableUtils.writeVLong(out, value);
+				break;
+			case SalesColumnarFormat.DOUBLE:
+				out.writeLong(value);
+				break;
+			default:
+				WritableUtils.writeVLong(out, value);
+			}
+		}
+	}
+
+	/*
+	 * Reading a row written by write as a block of one row
+	 * */
+	public void readFields(DataInput in) throws IOException {
+		int[] previous = Arrays.copyOf(decoded, decodedCount);
+		startBlock(1);
+		row = 0;
+		int count = WritableUtils.readVInt(in);
+		for (int i = 0; i < count; i++) {
+			int column = WritableUtils.readVInt(in);
+			int encoding = WritableUtils.readVInt(in);
+			if (column < 0 || column >= SalesCsvParser.FIELD_COUNT) {
+				throw new IOException("Unknown column " + column);
+			}
+			if (values[column] == null) {
+				values[column] = new long[1];
+			}
+			hasNulls[column] = (encoding & SalesColumnarFormat.NULLS) != 0;
+			encoding &= ~SalesColumnarFormat.NULLS;
+			if (hasNulls[column]) {
+				if (nulls[column] == null) {
+					nulls[column] = new boolean[1];
+				}
+				nulls[column][0] = true;
+			}
+			else {
+				switch (encoding) {
+				case SalesColumnarFormat.DICTIONARY:
+					int length = WritableUtils.readVInt(in);
+					if (text.length < textLength + length) {
+						text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+					}
+					in.readFully(text, textLength, length);
+					if (entryStarts[column] == null) {
+						entryStarts[column] = new int[1];
+						entryEnds[column] = new int[1];
+					}
+					entryStarts[column][0] = textLength;
+					textLength += length;
+					entryEnds[column][0] = textLength;
+					values[column][0] = 0;
+					break;
+				case SalesColumnarFormat.DECIMAL:
+					scales[column] = WritableUtils.readVInt(in);
+					values[column][0] = WritableUtils.readVLong(in);
+					break;
+				case SalesColumnarFormat.DOUBLE:
+					values[column][0] = in.readLong();
+					break;
+				case SalesColumnarFormat.DATE:
+				case SalesColumnarFormat.LONG:
+					values[column][0] = WritableUtils.readVLong(in);
+					break;
+				default:
+					throw new IOException("Unknown encoding " + encoding + " of column " + column);
+				}
+			}
+			encodings[column] = encoding;
+			decoded[decodedCount++] = column;
+		}
+		if (!Arrays.equals(previous, Arrays.copyOf(decoded, decodedCount))) {
+			source = new Object(); //Other columns than the last row, the parser empties every field again
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package org.harsh.hadoop.bigdata;
+
+/*
+ * Hadoop counters shared by the sales jobs for records that are skipped instead of failing the task
+ * */
+public enum SalesCounters {
+	MALFORMED_RECORDS, //Records with fewer fields than the geosales layout
+	BAD_ORDER_DATES, //Records whose order_date could not be parsed
+	UNKNOWN_DICTIONARY_ENTRIES, //Records whose country or item_type is missing from the dictionary of the encoded mode
+	FILTERED_RECORDS //Records dropped by the --item-type, --country and --year-range filters
+}
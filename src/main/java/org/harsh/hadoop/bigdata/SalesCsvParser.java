@@ -0,0 +1,530 @@
+package org.harsh.hadoop.bigdata;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/*
+ * Byte level CSV parser for the geosales records
+ *
+ * A record is scanned once and the start/end offset of every field is kept in reusable int arrays.
+ * Only the columns a job asks for are decoded and they are decoded straight from the bytes of the Text,
+ * so no String is created per record on the normal path.
+ *
+ * Binary rows of SalesColumnarInputFormat are read through the same parser: their text columns point into the
+ * dictionary bytes of the block and their numeric and date columns carry typed values that are returned as is.
+ *
+ * */
+public class SalesCsvParser {
+
+	/*
+	 * Column positions of the geosales csv
+	 * */
+	public static final int REGION = 1;
+	public static final int COUNTRY = 2;
+	public static final int ITEM_TYPE = 3;
+	public static final int SALES_CHANNEL = 4;
+	public static final int ORDER_PRIORITY = 5;
+	public static final int ORDER_DATE = 6;
+	public static final int ORDER_ID = 7;
+	public static final int SHIP_DATE = 8;
+	public static final int UNITS_SOLD = 9;
+	public static final int UNIT_PRICE = 10;
+	public static final int UNIT_COST = 11;
+	public static final int TOTAL_REVENUE = 12;
+	public static final int TOTAL_COST = 13;
+	public static final int TOTAL_PROFIT = 14;
+
+	/*
+	 * Number of columns a complete record has
+	 * */
+	public static final int FIELD_COUNT = 15;
+
+	/*
+	 * Configuration key turning on handling of double quoted fields
+	 * */
+	public static final String QUOTED_KEY = "sales.csv.quoted";
+
+	private static final byte COMMA = ',';
+	private static final byte QUOTE = '"';
+
+	/*
+	 * Powers of ten that are exact in a double, used by the fast double parsing path
+	 * */
+	static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	static final long MAX_EXACT_MANTISSA = 1L << 53;
+	static final int MAX_SCALE = POWERS_OF_TEN.length - 1;
+
+	/*
+	 * Kinds of field values, only binary rows set anything but TEXT
+	 * DECIMAL holds value / 10^scale, DOUBLE the bits of the double and DATE the packed order date
+	 * */
+	private static final byte TEXT = 0;
+	private static final byte LONG = 1;
+	private static final byte DECIMAL = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte DATE = 4;
+
+	private final boolean quoted;
+	private byte[] bytes;
+	private int[] starts = new int[FIELD_COUNT + 1];
+	private int[] ends = new int[FIELD_COUNT + 1];
+	private boolean[] escaped = new boolean[FIELD_COUNT + 1];
+	private byte[] kinds = new byte[FIELD_COUNT + 1];
+	private long[] values = new long[FIELD_COUNT + 1];
+	private byte[] scales = new byte[FIELD_COUNT + 1];
+	private int fields;
+	private Object rowSource; //Binary row whose fields were last set, null after a csv record was scanned
+	private byte[] scratch = new byte[64];
+
+	/*
+	 * Parser splitting on every comma, same as the String.split path of SalesGetCsvData
+	 * */
+	public SalesCsvParser() {
+		this(false);
+	}
+
+	/*
+	 * Parser that, when quoted is set, treats commas inside double quotes as data and "" as an escaped quote
+	 * */
+	public SalesCsvParser(boolean quoted) {
+		this.quoted = quoted;
+	}
+
+	/*
+	 * Creating the parser in the mode set in job configuration
+	 * */
+	public static SalesCsvParser newInstance(Configuration conf) {
+		return new SalesCsvParser(conf.getBoolean(QUOTED_KEY, false));
+	}
+
+	/*
+	 * Scanning the record held by the Text and returning the number of fields found
+	 * */
+	public int parse(Text value) {
+		return parse(value.getBytes(), 0, value.getLength());
+	}
+
+	/*
+	 * Reading a mapper input value, a csv line of TextInputFormat or a binary row of SalesColumnarInputFormat
+	 * */
+	public int parse(Writable value) {
+		if (value instanceof SalesColumnarRow) {
+			return ((SalesColumnarRow) value).copyTo(this);
+		}
+		return parse((Text) value);
+	}
+
+	/*
+	 * Scanning the record between offset and offset + length and returning the number of fields found
+	 * */
+	public int parse(byte[] bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.fields = 0;
+		this.rowSource = null;
+		int end = offset + length;
+		int pos = offset;
+
+		while (true) {
+			if (quoted && pos < end && bytes[pos] == QUOTE) {
+				pos = scanQuoted(pos, end);
+			}
+			else {
+				int start = pos;
+				while (pos < end && bytes[pos] != COMMA) {
+					pos++;
+				}
+				addField(start, pos, false);
+			}
+
+			if (pos >= end) {
+				break;
+			}
+			pos++; //Skipping the comma
+		}
+		return fields;
+	}
+
+	/*
+	 * Scanning a field that starts with a double quote, returning the position of the comma (or end) after it
+	 * */
+	private int scanQuoted(int pos, int end) {
+		int start = pos + 1;
+		int fieldEnd = end;
+		boolean hasEscapes = false;
+		pos = start;
+
+		while (pos < end) {
+			if (bytes[pos] == QUOTE) {
+				if (pos + 1 < end && bytes[pos + 1] == QUOTE) {
+					hasEscapes = true;
+					pos += 2;
+					continue;
+				}
+				fieldEnd = pos;
+				pos++;
+				break;
+			}
+			pos++;
+		}
+
+		/*
+		 * Anything between the closing quote and the next comma is ignored
+		 * */
+		while (pos < end && bytes[pos] != COMMA) {
+			pos++;
+		}
+		addField(start, Math.min(fieldEnd, pos), hasEscapes);
+		return pos;
+	}
+
+	private void addField(int start, int end, boolean hasEscapes) {
+		if (fields == starts.length) {
+			int size = fields * 2;
+			starts = Arrays.copyOf(starts, size);
+			ends = Arrays.copyOf(ends, size);
+			escaped = Arrays.copyOf(escaped, size);
+			kinds = Arrays.copyOf(kinds, size);
+			values = Arrays.copyOf(values, size);
+			scales = Arrays.copyOf(scales, size);
+		}
+		starts[fields] = start;
+		ends[fields] = end;
+		escaped[fields] = hasEscapes;
+		kinds[fields] = TEXT;
+		fields++;
+	}
+
+	/*
+	 * Starting a binary row of the given number of fields, text fields are slices of the given bytes
+	 * Returning whether the fields were last set by the same source, which then only has to set the fields it changes
+	 * */
+	boolean setRow(byte[] bytes, int fields, Object source) {
+		this.bytes = bytes;
+		this.fields = fields;
+		boolean same = rowSource == source;
+		rowSource = source;
+		return same;
+	}
+
+	void setText(int field, int start, int end) {
+		starts[field] = start;
+		ends[field] = end;
+		escaped[field] = false;
+		kinds[field] = TEXT;
+	}
+
+	void setLong(int field, long value) {
+		setValue(field, LONG, value);
+	}
+
+	void setDecimal(int field, long unscaled, int scale) {
+		setValue(field, DECIMAL, unscaled);
+		scales[field] = (byte) scale;
+	}
+
+	void setDouble(int field, double value) {
+		setValue(field, DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	void setDate(int field, int date) {
+		setValue(field, DATE, date);
+	}
+
+	/*
+	 * Typed fields have no text, so getText and fieldEquals see them as empty
+	 * */
+	private void setValue(int field, byte kind, long value) {
+		starts[field] = 0;
+		ends[field] = 0;
+		escaped[field] = false;
+		kinds[field] = kind;
+		values[field] = value;
+	}
+
+	public int getFieldCount() {
+		return fields;
+	}
+
+	/*
+	 * Backing array of the last parsed record, valid until the next call to parse
+	 * */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getStart(int field) {
+		checkField(field);
+		return starts[field];
+	}
+
+	public int getLength(int field) {
+		checkField(field);
+		return ends[field] - starts[field];
+	}
+
+	private void checkField(int field) {
+		if (field < 0 || field >= fields) {
+			throw new ArrayIndexOutOfBoundsException(field);
+		}
+	}
+
+	/*
+	 * Copying the field into the given Text, unescaping doubled quotes of quoted fields
+	 * */
+	public void getText(int field, Text out) {
+		checkField(field);
+		if (escaped[field]) {
+			out.set(scratch, 0, unescape(field));
+		}
+		else {
+			out.set(bytes, starts[field], ends[field] - starts[field]);
+		}
+	}
+
+	/*
+	 * Writing the field with doubled quotes collapsed into the scratch buffer and returning its length
+	 * */
+	private int unescape(int field) {
+		int start = starts[field];
+		int end = ends[field];
+		if (scratch.length < end - start) {
+			scratch = new byte[end - start];
+		}
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			scratch[n++] = bytes[i];
+			if (bytes[i] == QUOTE) {
+				i++;
+			}
+		}
+		return n;
+	}
+
+	/*
+	 * Decoding the field as a String, only meant for the slow and error paths
+	 * */
+	public String getString(int field) {
+		Text text = new Text();
+		getText(field, text);
+		return text.toString();
+	}
+
+	/*
+	 * Checking whether the field holds exactly the given bytes, without decoding it
+	 * */
+	public boolean fieldEquals(int field, byte[] value, int offset, int length) {
+		checkField(field);
+		byte[] source = bytes;
+		int start = starts[field];
+		int fieldLength = ends[field] - start;
+		if (escaped[field]) {
+			source = scratch;
+			start = 0;
+			fieldLength = unescape(field);
+		}
+
+		if (fieldLength != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (source[start + i] != value[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Parsing the field as an order date packed as yyyyMMdd, SalesOrderDate.INVALID when it is not a date
+	 * */
+	public int getDate(int field) {
+		checkField(field);
+		if (kinds[field] == DATE) {
+			return (int) values[field];
+		}
+		return SalesOrderDate.parse(bytes, starts[field], ends[field] - starts[field]);
+	}
+
+	/*
+	 * Parsing the field as an int with the same result as Integer.parseInt
+	 * */
+	public int getInt(int field) {
+		long value = getLong(field);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+		}
+		return (int) value;
+	}
+
+	/*
+	 * Parsing the field as a long with the same result as Long.parseLong
+	 * Anything other than an optional sign followed by at most 18 digits goes through Long.parseLong
+	 * */
+	public long getLong(int field) {
+		checkField(field);
+		if (kinds[field] != TEXT) {
+			if (kinds[field] == LONG || (kinds[field] == DECIMAL && scales[field] == 0)) {
+				return values[field];
+			}
+			throw new NumberFormatException("Field " + field + " does not hold an integer");
+		}
+		int pos = starts[field];
+		int end = ends[field];
+		boolean negative = false;
+
+		if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+			negative = bytes[pos] == '-';
+			pos++;
+		}
+		if (pos == end || end - pos > 18) {
+			return Long.parseLong(getString(field));
+		}
+
+		long value = 0;
+		for (; pos < end; pos++) {
+			int digit = bytes[pos] - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.parseLong(getString(field));
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/*
+	 * Parsing the field as a double with the same result as Double.parseDouble
+	 *
+	 * Plain decimals whose digits fit in 53 bits with at most 22 fraction digits are computed as mantissa / 10^n,
+	 * which is exact because both operands are exact doubles and the division is correctly rounded.
+	 * Everything else (exponents, long mantissas, spaces, NaN...) goes through Double.parseDouble.
+	 * */
+	public double getDouble(int field) {
+		checkField(field);
+		switch (kinds[field]) {
+		case LONG:
+			return values[field];
+		case DECIMAL:
+			return scales[field] == 0 ? values[field] : values[field] / POWERS_OF_TEN[scales[field]];
+		case DOUBLE:
+			return Double.longBitsToDouble(values[field]);
+		case DATE:
+			throw new NumberFormatException("Field " + field + " holds a date");
+		default:
+			break;
+		}
+		int pos = starts[field];
+		int end = ends[field];
+		boolean negative = false;
+
+		if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+			negative = bytes[pos] == '-';
+			pos++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; pos < end; pos++) {
+			byte b = bytes[pos];
+			if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+				continue;
+			}
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || mantissa >= MAX_EXACT_MANTISSA / 10) {
+				return Double.parseDouble(getString(field));
+			}
+			mantissa = mantissa * 10 + digit;
+			digits++;
+			if (fractionDigits >= 0) {
+				fractionDigits++;
+			}
+		}
+
+		if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(getString(field));
+		}
+
+		double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/*
+	 * Parsing the field as a fixed point decimal, the value times 10^scale as a long
+	 *
+	 * Only an optional sign, digits and an optional point are accepted, with no more significant fraction digits
+	 * than the scale, so that a value is never rounded. Anything else, or a value that does not fit in a long,
+	 * throws NumberFormatException.
+	 * */
+	public long getUnscaled(int field, int scale) {
+		checkField(field);
+		switch (kinds[field]) {
+		case LONG:
+			return rescale(field, values[field], 0, scale);
+		case DECIMAL:
+			return rescale(field, values[field], scales[field], scale);
+		case TEXT:
+			break;
+		default:
+			throw new NumberFormatException("Field " + field + " does not hold a fixed point decimal");
+		}
+		int pos = starts[field];
+		int end = ends[field];
+		boolean negative = false;
+
+		if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+			negative = bytes[pos] == '-';
+			pos++;
+		}
+
+		long value = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; pos < end; pos++) {
+			byte b = bytes[pos];
+			if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+				continue;
+			}
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+				throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+			}
+			value = value * 10 + digit;
+			digits++;
+			if (fractionDigits >= 0) {
+				fractionDigits++;
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+		}
+		return rescale(field, negative ? -value : value, Math.max(fractionDigits, 0), scale);
+	}
+
+	/*
+	 * Moving an unscaled value from one scale to another, only dropping fraction digits that are zero
+	 * */
+	private long rescale(int field, long value, int fromScale, int toScale) {
+		for (; fromScale > toScale; fromScale--) {
+			if (value % 10 != 0) {
+				throw new NumberFormatException("Field " + field + " has more than " + toScale + " fraction digits, "
+						+ SalesDecimal.SCALE_KEY + " has to be raised to read it");
+			}
+			value /= 10;
+		}
+		for (; fromScale < toScale; fromScale++) {
+			if (Math.abs(value) > Long.MAX_VALUE / 10) {
+				throw new NumberFormatException("Field " + field + " does not fit in a long at scale " + toScale);
+			}
+			value *= 10;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,283 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ * In memory sales cube written by SalesCubeBuilder, answering aggregate questions without running a job
+ *
+ * Cells are held in parallel arrays, their names interned to codes. A query resolves its names to codes once
+ * and then scans the cells, so questions over a cube of a few MB take milliseconds:
+ *
+ *     SalesCube cube = SalesCube.read(conf, new Path("output-cube"));
+ *     // Question 1: average unit_price by country for Cereal in 2012
+ *     for (Map.Entry<String, SalesCubeCell> entry : cube.aggregate(new SalesCube.Query().itemType("Cereal").years(2012, 2012), SalesCube.COUNTRY).entrySet()) {
+ *         System.out.println(entry.getKey() + "\t" + entry.getValue().getAverage(SalesCubeCell.UNIT_PRICE));
+ *     }
+ *
+ * Usage: SalesCube [--item-type T] [--country C] [--year-range yyyy-yyyy] [--region R] [--sales-channel S]
+ *                  [--group-by country,year] [--measure unit_price] <cube directory>
+ *
+ * */
+public class SalesCube {
+
+	/*
+	 * Dimensions a query can group by
+	 * */
+	public static final int REGION = 0;
+	public static final int COUNTRY = 1;
+	public static final int ITEM_TYPE = 2;
+	public static final int SALES_CHANNEL = 3;
+	public static final int YEAR = 4;
+	private static final int NAMED_DIMENSIONS = 4;
+
+	private static final String[] DIMENSION_NAMES = { "region", "country", "item_type", "sales_channel", "year" };
+	private static final String[] MEASURE_NAMES = { "units_sold", "unit_price", "total_revenue", "total_cost", "total_profit" };
+
+	private final SalesDictionary.Dimension[] names = new SalesDictionary.Dimension[NAMED_DIMENSIONS];
+	private int[][] codes = new int[NAMED_DIMENSIONS][16];
+	private int[] years = new int[16];
+	private SalesCubeCell[] cells = new SalesCubeCell[16];
+	private int size;
+
+	public SalesCube() {
+		for (int dimension = 0; dimension < NAMED_DIMENSIONS; dimension++) {
+			names[dimension] = new SalesDictionary.Dimension();
+		}
+	}
+
+	/*
+	 * Reading every part file of the cube directory
+	 * */
+	public static SalesCube read(Configuration conf, Path dir) throws IOException {
+		SalesCube cube = new SalesCube();
+		FileSystem fs = dir.getFileSystem(conf);
+		FileStatus[] parts = fs.globStatus(new Path(dir, "part-*"));
+		if (parts == null || parts.length == 0) {
+			throw new IOException("No cube part files under " + dir);
+		}
+		Arrays.sort(parts);
+		for (FileStatus part : parts) {
+			try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(part.getPath()))) {
+				SalesCubeKey key = new SalesCubeKey();
+				SalesCubeCell cell = new SalesCubeCell();
+				while (reader.next(key, cell)) {
+					cube.add(key, cell);
+					cell = new SalesCubeCell();
+				}
+			}
+		}
+		return cube;
+	}
+
+	/*
+	 * Adding a cell, keeping the given cell object
+	 * */
+	public void add(SalesCubeKey key, SalesCubeCell cell) {
+		if (size == cells.length) {
+			for (int dimension = 0; dimension < NAMED_DIMENSIONS; dimension++) {
+				codes[dimension] = Arrays.copyOf(codes[dimension], size * 2);
+			}
+			years = Arrays.copyOf(years, size * 2);
+			cells = Arrays.copyOf(cells, size * 2);
+		}
+		codes[REGION][size] = intern(REGION, key.region);
+		codes[COUNTRY][size] = intern(COUNTRY, key.country);
+		codes[ITEM_TYPE][size] = intern(ITEM_TYPE, key.item_type);
+		codes[SALES_CHANNEL][size] = intern(SALES_CHANNEL, key.sales_channel);
+		years[size] = key.year.get();
+		cells[size] = cell;
+		size++;
+	}
+
+	private int intern(int dimension, Text name) {
+		return names[dimension].add(name.getBytes(), 0, name.getLength());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Merging every cell matching the query into one
+	 */
+	public SalesCubeCell aggregate(Query query) {
+		return aggregate(query, new int[0]).getOrDefault("", new SalesCubeCell());
+	}
+
+	/*
+	 * Merging the cells matching the query per group of the given dimensions
+	 * Group names are the tab separated values of the dimensions, in sorted order
+	 * */
+	public SortedMap<String, SalesCubeCell> aggregate(Query query, int... groupBy) {
+		SortedMap<String, SalesCubeCell> groups = new TreeMap<String, SalesCubeCell>();
+		int[] wanted = new int[NAMED_DIMENSIONS];
+		for (int dimension = 0; dimension < NAMED_DIMENSIONS; dimension++) {
+			wanted[dimension] = -1;
+			if (query.values[dimension] != null) {
+				byte[] value = query.values[dimension].getBytes(StandardCharsets.UTF_8);
+				wanted[dimension] = names[dimension].code(value, 0, value.length);
+				if (wanted[dimension] < 0) {
+					return groups; //The name is not in the cube
+				}
+			}
+		}
+
+		Text name = new Text();
+		StringBuilder group = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (years[i] < query.minYear || years[i] > query.maxYear) {
+				continue;
+			}
+			boolean matches = true;
+			for (int dimension = 0; dimension < NAMED_DIMENSIONS && matches; dimension++) {
+				matches = wanted[dimension] < 0 || codes[dimension][i] == wanted[dimension];
+			}
+			if (!matches) {
+				continue;
+			}
+
+			group.setLength(0);
+			for (int g = 0; g < groupBy.length; g++) {
+				if (g > 0) {
+					group.append('\t');
+				}
+				if (groupBy[g] == YEAR) {
+					group.append(years[i]);
+				}
+				else {
+					names[groupBy[g]].name(codes[groupBy[g]][i], name);
+					group.append(name.toString());
+				}
+			}
+			groups.computeIfAbsent(group.toString(), k -> new SalesCubeCell()).add(cells[i]);
+		}
+		return groups;
+	}
+
+	/*
+	 * Selection of cells by name and year range, every dimension left unset matches all cells
+	 * */
+	public static class Query {
+		private final String[] values = new String[NAMED_DIMENSIONS];
+		private int minYear = Integer.MIN_VALUE;
+		private int maxYear = Integer.MAX_VALUE;
+
+		public Query region(String region) {
+			values[REGION] = region;
+			return this;
+		}
+
+		public Query country(String country) {
+			values[COUNTRY] = country;
+			return this;
+		}
+
+		public Query itemType(String itemType) {
+			values[ITEM_TYPE] = itemType;
+			return this;
+		}
+
+		public Query salesChannel(String salesChannel) {
+			values[SALES_CHANNEL] = salesChannel;
+			return this;
+		}
+
+		public Query years(int minYear, int maxYear) {
+			this.minYear = minYear;
+			this.maxYear = maxYear;
+			return this;
+		}
+	}
+
+	/*
+	 * Dimension of a --group-by name
+	 * */
+	static int dimension(String name) {
+		int index = Arrays.asList(DIMENSION_NAMES).indexOf(name.trim().toLowerCase());
+		if (index < 0) {
+			throw new IllegalArgumentException("Unknown cube dimension " + name + ", expected one of " + Arrays.toString(DIMENSION_NAMES));
+		}
+		return index;
+	}
+
+	/*
+	 * Measure of a --measure name
+	 * */
+	static int measure(String name) {
+		int index = Arrays.asList(MEASURE_NAMES).indexOf(name.trim().toLowerCase());
+		if (index < 0) {
+			throw new IllegalArgumentException("Unknown cube measure " + name + ", expected one of " + Arrays.toString(MEASURE_NAMES));
+		}
+		return index;
+	}
+
+	/*
+	 * Printing group, count, average, sum, min and max of the measure for every group matching the arguments
+	 * */
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs();
+		args = SalesFilter.parseArguments(conf, args); //--item-type, --country and --year-range, same as the jobs
+
+		Query query = new Query();
+		List<Integer> groupBy = new ArrayList<Integer>();
+		int measure = SalesCubeCell.UNIT_PRICE;
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("--region".equals(args[i]) && i + 1 < args.length) {
+				query.region(args[++i]);
+			}
+			else if ("--sales-channel".equals(args[i]) && i + 1 < args.length) {
+				query.salesChannel(args[++i]);
+			}
+			else if ("--group-by".equals(args[i]) && i + 1 < args.length) {
+				for (String name : args[++i].split(",")) {
+					groupBy.add(dimension(name));
+				}
+			}
+			else if ("--measure".equals(args[i]) && i + 1 < args.length) {
+				measure = measure(args[++i]);
+			}
+			else {
+				paths.add(args[i]);
+			}
+		}
+		if (paths.size() != 1) {
+			System.err.println("Usage: SalesCube [--item-type T] [--country C] [--year-range yyyy-yyyy] [--region R] [--sales-channel S] "
+					+ "[--group-by country,year] [--measure unit_price] <cube directory>");
+			System.exit(2);
+		}
+		query.itemType(conf.get(SalesFilter.ITEM_TYPE_KEY));
+		query.country(conf.get(SalesFilter.COUNTRY_KEY));
+		SalesFilter filter = SalesFilter.newInstance(conf);
+		if (filter != null) {
+			query.years(filter.getMinYear(), filter.getMaxYear());
+		}
+
+		SalesCube cube = read(conf, new Path(paths.get(0)));
+		int[] dimensions = new int[groupBy.size()];
+		for (int i = 0; i < dimensions.length; i++) {
+			dimensions[i] = groupBy.get(i);
+		}
+		for (Map.Entry<String, SalesCubeCell> entry : cube.aggregate(query, dimensions).entrySet()) {
+			SalesCubeCell cell = entry.getValue();
+			System.out.println((entry.getKey().isEmpty() ? "all" : entry.getKey()) + "\t" + cell.getCount() + "\t" + cell.getAverage(measure)
+					+ "\t" + cell.getSum(measure) + "\t" + cell.getMin(measure) + "\t" + cell.getMax(measure));
+		}
+	}
+}
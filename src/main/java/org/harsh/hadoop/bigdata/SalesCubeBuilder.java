@@ -0,0 +1,95 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Builds the sales cube: every measure of SalesCubeCell for every (country, item_type, year, sales_channel) cell
+ * The cube is written as block compressed, sorted SequenceFiles under <output>-cube and queried with SalesCube.
+ *
+ * Usage: SalesCubeBuilder [--item-type T] [--country C] [--year-range yyyy-yyyy] <input> <output>
+ *
+ * */
+public class SalesCubeBuilder {
+
+	/*
+	 * Mapper emitting the single record cell of every row under its cube key
+	 * */
+	public static class SalesCubeMapper extends Mapper<Object, Writable, SalesCubeKey, SalesCubeCell> {
+		SalesCsvParser parser;
+		SalesFilter filter;
+		SalesCubeKey cubeKey = new SalesCubeKey();
+		SalesCubeCell cell = new SalesCubeCell();
+
+		public void setup(Context context) {
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+		}
+
+		public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+
+			cubeKey.set(parser, SalesOrderDate.year(orderDate));
+			parser.getText(SalesCsvParser.SALES_CHANNEL, cubeKey.sales_channel);
+			parser.getText(SalesCsvParser.REGION, cubeKey.region);
+			cell.set(parser);
+			context.write(cubeKey, cell);
+		}
+	}
+
+	/*
+	 * Merging the cells of a key, also used as the combiner
+	 * */
+	public static class SalesCubeReducer extends Reducer<SalesCubeKey, SalesCubeCell, SalesCubeKey, SalesCubeCell> {
+		SalesCubeCell result = new SalesCubeCell();
+
+		public void reduce(SalesCubeKey key, Iterable<SalesCubeCell> values, Context context) throws IOException, InterruptedException {
+			result.clear();
+			for (SalesCubeCell value : values) {
+				result.add(value);
+			}
+			context.write(key, result);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs();
+		args = SalesFilter.parseArguments(conf, args); //Optional --item-type, --country and --year-range filters, the cube then only holds those rows
+		Job job = Job.getInstance(conf, "SalesCubeBuilder");
+		job.setJarByClass(SalesCubeBuilder.class);
+		job.setMapperClass(SalesCubeMapper.class);
+		job.setCombinerClass(SalesCubeReducer.class); //Cells with same keys are merged here and passed to the reducer
+		job.setReducerClass(SalesCubeReducer.class);
+		job.setOutputKeyClass(SalesCubeKey.class);
+		job.setOutputValueClass(SalesCubeCell.class);
+		job.setPartitionerClass(SalesPartitioner.class); //All cells of a (country, item_type) pair are written by the same reducer
+		job.setOutputFormatClass(SequenceFileOutputFormat.class); //Binary cells, sorted by key in every part file
+		SequenceFileOutputFormat.setCompressOutput(job, true);
+		SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.REGION, SalesCsvParser.COUNTRY, SalesCsvParser.ITEM_TYPE, SalesCsvParser.SALES_CHANNEL, SalesCsvParser.ORDER_DATE);
+			SalesColumnarInputFormat.configure(job, SalesCubeCell.COLUMNS);
+		}
+		SalesPartitioner.configureSampling(job, new Path(args[0]), new Path(args[1] + "-partitions"));
+		FileInputFormat.addInputPath(job, new Path(args[0]));
+		FileOutputFormat.setOutputPath(job, new Path(args[1] + "-cube")); //Second argument, the cube is written under -cube
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+	}
+}
@@ -0,0 +1,132 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Measures of one cell of the sales cube: the record count and the sum, min and max of every numeric column
+ * Merging cells is associative and commutative, so the same class is the map output, the combiner output and the cube
+ *
+ * */
+public class SalesCubeCell implements Writable {
+
+	/*
+	 * Measures kept for every cell
+	 * */
+	public static final int UNITS_SOLD = 0;
+	public static final int UNIT_PRICE = 1;
+	public static final int TOTAL_REVENUE = 2;
+	public static final int TOTAL_COST = 3;
+	public static final int TOTAL_PROFIT = 4;
+	public static final int MEASURES = 5;
+
+	/*
+	 * Csv column of every measure
+	 * */
+	static final int[] COLUMNS = {
+		SalesCsvParser.UNITS_SOLD, SalesCsvParser.UNIT_PRICE, SalesCsvParser.TOTAL_REVENUE,
+		SalesCsvParser.TOTAL_COST, SalesCsvParser.TOTAL_PROFIT
+	};
+
+	private long count;
+	private final double[] sums = new double[MEASURES];
+	private final double[] mins = new double[MEASURES];
+	private final double[] maxs = new double[MEASURES];
+
+	public SalesCubeCell() {
+		clear();
+	}
+
+	/*
+	 * Empty cell, min is above max until a record is added
+	 * */
+	public void clear() {
+		count = 0;
+		Arrays.fill(sums, 0);
+		Arrays.fill(mins, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+	}
+
+	/*
+	 * Cell of the single parsed record
+	 * */
+	public void set(SalesCsvParser parser) {
+		count = 1;
+		for (int measure = 0; measure < MEASURES; measure++) {
+			double value = parser.getDouble(COLUMNS[measure]);
+			sums[measure] = value;
+			mins[measure] = value;
+			maxs[measure] = value;
+		}
+	}
+
+	/*
+	 * Merging another cell into this one
+	 * */
+	public void add(SalesCubeCell other) {
+		count += other.count;
+		for (int measure = 0; measure < MEASURES; measure++) {
+			sums[measure] += other.sums[measure];
+			mins[measure] = Math.min(mins[measure], other.mins[measure]);
+			maxs[measure] = Math.max(maxs[measure], other.maxs[measure]);
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getSum(int measure) {
+		return sums[measure];
+	}
+
+	public double getMin(int measure) {
+		return mins[measure];
+	}
+
+	public double getMax(int measure) {
+		return maxs[measure];
+	}
+
+	/*
+	 * Average of the measure over the records of the cell, NaN for an empty cell
+	 * */
+	public double getAverage(int measure) {
+		return count == 0 ? Double.NaN : sums[measure] / count;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVLong(out, count);
+		for (int measure = 0; measure < MEASURES; measure++) {
+			out.writeDouble(sums[measure]);
+			out.writeDouble(mins[measure]);
+			out.writeDouble(maxs[measure]);
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		count = WritableUtils.readVLong(in);
+		for (int measure = 0; measure < MEASURES; measure++) {
+			sums[measure] = in.readDouble();
+			mins[measure] = in.readDouble();
+			maxs[measure] = in.readDouble();
+		}
+	}
+
+	/*
+	 * Printing the count and then sum, min and max of every measure
+	 * */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder().append(count);
+		for (int measure = 0; measure < MEASURES; measure++) {
+			builder.append('\t').append(sums[measure]).append('\t').append(mins[measure]).append('\t').append(maxs[measure]);
+		}
+		return builder.toString();
+	}
+}
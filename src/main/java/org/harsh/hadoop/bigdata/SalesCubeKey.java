@@ -0,0 +1,122 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Cell coordinates of the sales cube: country, item_type, year, sales_channel and the region of the country
+ * Keys sort like SalesKey first, so the cells of a (country, item_type) pair are stored together
+ *
+ * */
+public class SalesCubeKey extends SalesKey {
+	Text sales_channel = new Text();
+	Text region = new Text();
+
+	/*
+	 * Registering the raw comparator so that sort and merge compare the serialized keys
+	 * */
+	static {
+		WritableComparator.define(SalesCubeKey.class, new Comparator());
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + Objects.hash(sales_channel, region);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return super.equals(obj) && sales_channel.equals(((SalesCubeKey) obj).sales_channel)
+				&& region.equals(((SalesCubeKey) obj).region);
+	}
+
+	/*
+	 * Writing sales_channel and region after the Sales key fields
+	 * */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		sales_channel.write(out);
+		region.write(out);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		super.readFields(in);
+		sales_channel.readFields(in);
+		region.readFields(in);
+	}
+
+	@Override
+	public int compareTo(SalesKey other) {
+		int result = super.compareTo(other);
+		if (result != 0 || !(other instanceof SalesCubeKey)) {
+			return result;
+		}
+		result = sales_channel.compareTo(((SalesCubeKey) other).sales_channel);
+		if (result != 0) {
+			return result;
+		}
+		return region.compareTo(((SalesCubeKey) other).region);
+	}
+
+	@Override
+	public String toString() {
+		return region + "\t" + country + "\t" + item_type + "\t" + sales_channel + "\t" + year;
+	}
+
+	/*
+	 * Raw comparator comparing the serialized Sales key fields and then sales_channel and region
+	 * */
+	public static class Comparator extends SalesKey.Comparator {
+
+		public Comparator() {
+			super(SalesCubeKey.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			int result = super.compare(b1, s1, l1, b2, s2, l2);
+			if (result != 0) {
+				return result;
+			}
+			try {
+				/*
+				 * The Sales key fields are equal, so they have the same length in both keys
+				 * */
+				int skip = textLength(b1, s1);
+				skip += textLength(b1, s1 + skip);
+				skip += 4;
+				s1 += skip;
+				s2 += skip;
+
+				for (int field = 0; field < 2; field++) {
+					int prefix1 = WritableUtils.decodeVIntSize(b1[s1]);
+					int prefix2 = WritableUtils.decodeVIntSize(b2[s2]);
+					int length1 = readVInt(b1, s1);
+					int length2 = readVInt(b2, s2);
+					result = compareBytes(b1, s1 + prefix1, length1, b2, s2 + prefix2, length2);
+					if (result != 0) {
+						return result;
+					}
+					s1 += prefix1 + length1;
+					s2 += prefix2 + length2;
+				}
+				return 0;
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+
+		private static int textLength(byte[] bytes, int start) throws IOException {
+			return WritableUtils.decodeVIntSize(bytes[start]) + readVInt(bytes, start);
+		}
+	}
+}
@@ -0,0 +1,557 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Synthetic geosales csv for scale testing, seeded and deterministic
+ *
+ * Rows have the 15 column layout of the geosales csv. Rows are generated in blocks of 4096 from a random seeded
+ * with the seed and the block number, so row i is the same whatever the number of tasks and the same files come
+ * out of the map-only job and of the local mode. Settings, all optional:
+ *     -D sales.generator.rows=1000000          number of rows
+ *     -D sales.generator.seed=0                seed of every random choice
+ *     -D sales.generator.tasks=N               map tasks and part files, one per 10 million rows by default
+ *     -D sales.generator.country.skew=0        Zipf exponent of the country ranks, uniform by default, for example 1.1
+ *     -D sales.generator.item.skew=0           Zipf exponent of the item_type ranks, uniform by default, for example 1.1
+ *     -D sales.generator.years=2010-2017       range of the order years
+ *     -D sales.generator.duplicate.rate=0      share of rows reusing a recent order id of their block, for example 0.01
+ *     -D sales.generator.malformed.rate=0      share of rows with missing columns or an order_date that is not a date, for example 0.001
+ *     -D sales.generator.local=true            writing the part files in this process instead of running a job
+ * Malformed rows are the kinds the jobs count and skip, as MALFORMED_RECORDS and BAD_ORDER_DATES.
+ *
+ * Usage: SalesDataGenerator <output>
+ *
+ * */
+public class SalesDataGenerator {
+
+	/*
+	 * Configuration keys of the generator
+	 * */
+	public static final String ROWS_KEY = "sales.generator.rows";
+	public static final String SEED_KEY = "sales.generator.seed";
+	public static final String TASKS_KEY = "sales.generator.tasks";
+	public static final String COUNTRY_SKEW_KEY = "sales.generator.country.skew";
+	public static final String ITEM_SKEW_KEY = "sales.generator.item.skew";
+	public static final String YEARS_KEY = "sales.generator.years";
+	public static final String DUPLICATE_RATE_KEY = "sales.generator.duplicate.rate";
+	public static final String MALFORMED_RATE_KEY = "sales.generator.malformed.rate";
+	public static final String LOCAL_KEY = "sales.generator.local";
+	public static final long DEFAULT_ROWS = 1000000;
+	public static final long ROWS_PER_TASK = 10000000;
+	public static final String DEFAULT_YEARS = "2010-2017";
+
+	static final int BLOCK_ROWS = 4096;
+	private static final int RECENT_ORDER_IDS = 64;
+
+	/*
+	 * Regions with their countries, ranks for the country skew follow this order
+	 * */
+	private static final String[][] REGIONS = {
+		{ "Sub-Saharan Africa", "Chad", "Angola", "Nigeria", "Kenya", "Ghana", "Senegal", "Mali", "Rwanda", "Zambia", "Benin",
+			"Ethiopia", "Uganda", "Niger", "Cameroon", "Madagascar", "Mozambique", "Botswana", "Namibia", "Malawi", "Togo" },
+		{ "Europe", "Germany", "France", "United Kingdom", "Italy", "Spain", "Poland", "Albania", "Austria", "Norway", "Portugal",
+			"Ukraine", "Iceland", "Sweden", "Finland", "Greece", "Czech Republic", "Hungary", "Ireland", "Belgium", "Denmark" },
+		{ "Asia", "China", "India", "Japan", "Bangladesh", "Vietnam", "Mongolia", "Nepal", "Afghanistan", "Indonesia", "Thailand",
+			"Malaysia", "Philippines", "Sri Lanka", "Cambodia", "Laos", "Singapore", "South Korea", "Kazakhstan", "Myanmar", "Bhutan" },
+		{ "Middle East and North Africa", "Egypt", "Iran", "Morocco", "Algeria", "Tunisia", "Jordan", "Oman", "Qatar", "Lebanon",
+			"Kuwait", "Bahrain", "Libya", "Iraq", "Syria", "Yemen", "Turkey", "Israel", "Saudi Arabia", "United Arab Emirates", "Azerbaijan" },
+		{ "Central America and the Caribbean", "Mexico", "Cuba", "Haiti", "Honduras", "Jamaica", "Panama", "Belize", "Guatemala",
+			"Nicaragua", "Costa Rica", "El Salvador", "Barbados", "Grenada", "Dominica", "Saint Lucia", "Dominican Republic" },
+		{ "Australia and Oceania", "Australia", "New Zealand", "Fiji", "Samoa", "Tonga", "Kiribati", "Tuvalu", "Vanuatu", "Palau",
+			"Nauru", "Papua New Guinea", "Solomon Islands", "Marshall Islands", "East Timor", "Federated States of Micronesia" },
+		{ "North America", "United States of America", "Canada", "Greenland" },
+	};
+
+	/*
+	 * Item types with the unit price and unit cost in cents around which the rows of the item are drawn
+	 * */
+	private static final String[] ITEM_TYPES = {
+		"Office Supplies", "Cosmetics", "Household", "Baby Food", "Meat", "Cereal",
+		"Clothes", "Snacks", "Vegetables", "Personal Care", "Beverages", "Fruits"
+	};
+	private static final long[] UNIT_PRICES = { 65121, 43720, 66827, 25528, 42189, 20570, 10928, 15258, 15406, 8173, 4745, 933 };
+	private static final long[] UNIT_COSTS = { 52496, 26333, 50254, 15942, 36469, 11711, 3584, 9744, 9093, 5667, 3179, 692 };
+	private static final String[] SALES_CHANNELS = { "Online", "Offline" };
+	private static final String[] ORDER_PRIORITIES = { "C", "H", "L", "M" };
+	private static final int[] DAYS_IN_MONTH = { 0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	private static final byte[][] REGION_BYTES;
+	private static final byte[][] COUNTRY_BYTES;
+	private static final int[] COUNTRY_REGIONS;
+	private static final byte[][] ITEM_TYPE_BYTES = bytes(ITEM_TYPES);
+	private static final byte[][] SALES_CHANNEL_BYTES = bytes(SALES_CHANNELS);
+	private static final byte[][] ORDER_PRIORITY_BYTES = bytes(ORDER_PRIORITIES);
+	private static final byte[] NOT_A_DATE = "not a date".getBytes(StandardCharsets.UTF_8);
+
+	static {
+		List<String> regions = new ArrayList<String>();
+		List<String> countries = new ArrayList<String>();
+		List<Integer> countryRegions = new ArrayList<Integer>();
+		for (int region = 0; region < REGIONS.length; region++) {
+			regions.add(REGIONS[region][0]);
+			for (int i = 1; i < REGIONS[region].length; i++) {
+				countries.add(REGIONS[region][i]);
+				countryRegions.add(region);
+			}
+		}
+
+		/*
+		 * Interleaving the regions so that the top country ranks are spread over every region
+		 * */
+		int[] order = new int[countries.size()];
+		int[] next = new int[REGIONS.length];
+		int[] firsts = new int[REGIONS.length];
+		for (int region = 1; region < REGIONS.length; region++) {
+			firsts[region] = firsts[region - 1] + REGIONS[region - 1].length - 1;
+		}
+		for (int rank = 0; rank < order.length;) {
+			for (int region = 0; region < REGIONS.length && rank < order.length; region++) {
+				if (next[region] < REGIONS[region].length - 1) {
+					order[rank++] = firsts[region] + next[region]++;
+				}
+			}
+		}
+
+		REGION_BYTES = bytes(regions.toArray(new String[regions.size()]));
+		COUNTRY_BYTES = new byte[order.length][];
+		COUNTRY_REGIONS = new int[order.length];
+		for (int rank = 0; rank < order.length; rank++) {
+			COUNTRY_BYTES[rank] = countries.get(order[rank]).getBytes(StandardCharsets.UTF_8);
+			COUNTRY_REGIONS[rank] = countryRegions.get(order[rank]);
+		}
+	}
+
+	private final long rows;
+	private final long seed;
+	private final double[] countryRanks;
+	private final double[] itemTypeRanks;
+	private final int minYear;
+	private final int years;
+	private final double duplicateRate;
+	private final double malformedRate;
+
+	private SplittableRandom random;
+	private long nextRow = -1; //Row the random is positioned at, -1 before the first row
+	private final int[] recentOrderIds = new int[RECENT_ORDER_IDS];
+	private int recentCount;
+	private byte[] line = new byte[256];
+	private int length;
+
+	public SalesDataGenerator(Configuration conf) {
+		this.rows = conf.getLong(ROWS_KEY, DEFAULT_ROWS);
+		this.seed = conf.getLong(SEED_KEY, 0);
+		this.countryRanks = zipf(COUNTRY_BYTES.length, conf.getDouble(COUNTRY_SKEW_KEY, 0));
+		this.itemTypeRanks = zipf(ITEM_TYPES.length, conf.getDouble(ITEM_SKEW_KEY, 0));
+		this.duplicateRate = conf.getDouble(DUPLICATE_RATE_KEY, 0);
+		this.malformedRate = conf.getDouble(MALFORMED_RATE_KEY, 0);
+
+		String yearRange = conf.get(YEARS_KEY, DEFAULT_YEARS);
+		String[] bounds = yearRange.trim().split("-", -1);
+		try {
+			this.minYear = Integer.parseInt(bounds[0].trim());
+			int maxYear = bounds.length == 1 ? minYear : Integer.parseInt(bounds[1].trim());
+			if (bounds.length > 2 || minYear < 1000 || maxYear > 9999 || maxYear < minYear) {
+				throw new NumberFormatException();
+			}
+			this.years = maxYear - minYear + 1;
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Year range has to be yyyy or yyyy-yyyy, got " + yearRange);
+		}
+		if (rows < 0 || duplicateRate < 0 || duplicateRate > 1 || malformedRate < 0 || malformedRate > 1) {
+			throw new IllegalArgumentException("Rows have to be positive and rates between 0 and 1");
+		}
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	/*
+	 * Cumulative distribution of ranks 1..n with weights 1 / rank^exponent
+	 * */
+	private static double[] zipf(int n, double exponent) {
+		double[] cumulative = new double[n];
+		double total = 0;
+		for (int rank = 0; rank < n; rank++) {
+			total += 1 / Math.pow(rank + 1, exponent);
+			cumulative[rank] = total;
+		}
+		for (int rank = 0; rank < n; rank++) {
+			cumulative[rank] /= total;
+		}
+		return cumulative;
+	}
+
+	private int rank(double[] cumulative) {
+		int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(rank < 0 ? -rank - 1 : rank, cumulative.length - 1);
+	}
+
+	/*
+	 * Generating row index into the Text, without the line break
+	 * Rows are cheapest in order, any other row replays its block from the start
+	 * */
+	public void row(long index, Text out) {
+		if (index != nextRow) {
+			long block = index / BLOCK_ROWS;
+			startBlock(block);
+			for (long skipped = block * BLOCK_ROWS; skipped < index; skipped++) {
+				generate(skipped);
+			}
+		}
+		else if (index % BLOCK_ROWS == 0) {
+			startBlock(index / BLOCK_ROWS);
+		}
+		generate(index);
+		out.set(line, 0, length);
+	}
+
+	private void startBlock(long block) {
+		random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + block);
+		recentCount = 0;
+	}
+
+	/*
+	 * Drawing every column of the row in a fixed order, so that a malformed row uses the random the same way
+	 * */
+	private void generate(long index) {
+		nextRow = index + 1;
+		int country = rank(countryRanks);
+		int itemType = rank(itemTypeRanks);
+		int channel = random.nextInt(SALES_CHANNELS.length);
+		int priority = random.nextInt(ORDER_PRIORITIES.length);
+		int year = minYear + random.nextInt(years);
+		int month = 1 + random.nextInt(12);
+		int day = 1 + random.nextInt(DAYS_IN_MONTH[month]);
+		int shipDays = random.nextInt(50);
+		int orderId = 100000000 + random.nextInt(900000000);
+		boolean duplicate = random.nextDouble() < duplicateRate;
+		int recent = random.nextInt(RECENT_ORDER_IDS);
+		long units = 1 + random.nextInt(10000);
+		long unitPrice = UNIT_PRICES[itemType] / 2 + random.nextLong(UNIT_PRICES[itemType]);
+		long unitCost = unitPrice * (60 + random.nextInt(30)) / 100;
+		boolean malformed = random.nextDouble() < malformedRate;
+		int malformedKind = random.nextInt(2);
+
+		if (duplicate && recentCount > 0) {
+			orderId = recentOrderIds[recent % recentCount];
+		}
+		else {
+			recentOrderIds[recentCount < RECENT_ORDER_IDS ? recentCount++ : recent] = orderId;
+		}
+		long revenue = units * unitPrice;
+		long cost = units * unitCost;
+
+		length = 0;
+		appendLong(index).append(',');
+		append(REGION_BYTES[COUNTRY_REGIONS[country]]).append(',');
+		append(COUNTRY_BYTES[country]).append(',');
+		append(ITEM_TYPE_BYTES[itemType]).append(',');
+		append(SALES_CHANNEL_BYTES[channel]).append(',');
+		append(ORDER_PRIORITY_BYTES[priority]).append(',');
+		if (malformed && malformedKind == 0) {
+			append(NOT_A_DATE);
+		}
+		else {
+			appendDate(year, month, day);
+		}
+		append(',').appendLong(orderId).append(',');
+		int shipDay = day + shipDays;
+		int shipMonth = month;
+		int shipYear = year;
+		while (shipDay > DAYS_IN_MONTH[shipMonth]) {
+			shipDay -= DAYS_IN_MONTH[shipMonth];
+			if (++shipMonth > 12) {
+				shipMonth = 1;
+				shipYear++;
+			}
+		}
+		appendDate(shipYear, shipMonth, shipDay).append(',');
+		if (malformed && malformedKind == 1) {
+			length--; //Row cut after ship_date, the number columns are missing
+			return;
+		}
+		appendLong(units).append(',');
+		appendCents(unitPrice).append(',');
+		appendCents(unitCost).append(',');
+		appendCents(revenue).append(',');
+		appendCents(cost).append(',');
+		appendCents(revenue - cost);
+	}
+
+	private SalesDataGenerator append(char c) {
+		ensure(1);
+		line[length++] = (byte) c;
+		return this;
+	}
+
+	private SalesDataGenerator append(byte[] bytes) {
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, line, length, bytes.length);
+		length += bytes.length;
+		return this;
+	}
+
+	private SalesDataGenerator appendLong(long value) {
+		ensure(20);
+		if (value < 0) {
+			line[length++] = '-';
+			value = -value;
+		}
+		int end = length + digits(value);
+		for (int i = end - 1; i >= length; i--) {
+			line[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		length = end;
+		return this;
+	}
+
+	private static int digits(long value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	/*
+	 * Writing cents the way the geosales csv prints its doubles: 438.4, 203856.0 or 351.35
+	 * */
+	private SalesDataGenerator appendCents(long cents) {
+		if (cents < 0) {
+			append('-');
+			cents = -cents;
+		}
+		appendLong(cents / 100).append('.');
+		long fraction = cents % 100;
+		if (fraction % 10 == 0) {
+			return appendLong(fraction / 10);
+		}
+		return append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+	}
+
+	/*
+	 * Writing "yyyy-MM-dd 00:00:00"
+	 * */
+	private SalesDataGenerator appendDate(int year, int month, int day) {
+		appendLong(year).append('-');
+		append((char) ('0' + month / 10)).append((char) ('0' + month % 10)).append('-');
+		append((char) ('0' + day / 10)).append((char) ('0' + day % 10));
+		append(' ').append('0').append('0').append(':').append('0').append('0').append(':').append('0').append('0');
+		return this;
+	}
+
+	private void ensure(int extra) {
+		if (length + extra > line.length) {
+			line = Arrays.copyOf(line, Math.max(line.length * 2, length + extra));
+		}
+	}
+
+	private static byte[][] bytes(String[] values) {
+		byte[][] bytes = new byte[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+		}
+		return bytes;
+	}
+
+	/*
+	 * Number of part files: the configured number of tasks, or one per ROWS_PER_TASK rows
+	 * Every part file holds whole blocks, so its rows do not depend on the number of files
+	 * */
+	static List<RowRange> ranges(Configuration conf) {
+		long rows = conf.getLong(ROWS_KEY, DEFAULT_ROWS);
+		long blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+		int tasks = (int) Math.max(1, Math.min(blocks, conf.getInt(TASKS_KEY, (int) Math.min(Integer.MAX_VALUE, rows / ROWS_PER_TASK + 1))));
+		List<RowRange> ranges = new ArrayList<RowRange>();
+		for (int task = 0; task < tasks; task++) {
+			long first = blocks * task / tasks * BLOCK_ROWS;
+			long end = Math.min(rows, blocks * (task + 1) / tasks * BLOCK_ROWS);
+			ranges.add(new RowRange(first, end - first));
+		}
+		return ranges;
+	}
+
+	/*
+	 * Split of the generator job, a range of row indexes
+	 * */
+	public static class RowRange extends InputSplit implements Writable {
+		long first;
+		long rows;
+
+		public RowRange() {
+		}
+
+		RowRange(long first, long rows) {
+			this.first = first;
+			this.rows = rows;
+		}
+
+		/*
+		 * Splits are sorted by length before tasks are numbered, equal lengths keep part files in row order
+		 * */
+		@Override
+		public long getLength() {
+			return 0;
+		}
+
+		@Override
+		public String[] getLocations() {
+			return new String[0];
+		}
+
+		public void write(DataOutput out) throws IOException {
+			out.writeLong(first);
+			out.writeLong(rows);
+		}
+
+		public void readFields(DataInput in) throws IOException {
+			first = in.readLong();
+			rows = in.readLong();
+		}
+	}
+
+	/*
+	 * Input format handing every map task its range of row indexes
+	 * */
+	public static class RowRangeInputFormat extends InputFormat<LongWritable, NullWritable> {
+
+		@Override
+		public List<InputSplit> getSplits(JobContext context) {
+			return new ArrayList<InputSplit>(ranges(context.getConfiguration()));
+		}
+
+		@Override
+		public RecordReader<LongWritable, NullWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+			return new RecordReader<LongWritable, NullWritable>() {
+				private RowRange range;
+				private final LongWritable index = new LongWritable();
+				private long read;
+
+				@Override
+				public void initialize(InputSplit split, TaskAttemptContext context) {
+					range = (RowRange) split;
+				}
+
+				@Override
+				public boolean nextKeyValue() {
+					if (read == range.rows) {
+						return false;
+					}
+					index.set(range.first + read++);
+					return true;
+				}
+
+				@Override
+				public LongWritable getCurrentKey() {
+					return index;
+				}
+
+				@Override
+				public NullWritable getCurrentValue() {
+					return NullWritable.get();
+				}
+
+				@Override
+				public float getProgress() {
+					return range.rows == 0 ? 1.0f : read / (float) range.rows;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+	}
+
+	/*
+	 * Mapper writing the row of every index it is given
+	 * */
+	public static class GeneratorMapper extends Mapper<LongWritable, NullWritable, NullWritable, Text> {
+		SalesDataGenerator generator;
+		Text row = new Text();
+
+		public void setup(Context context) {
+			generator = new SalesDataGenerator(context.getConfiguration());
+		}
+
+		public void map(LongWritable index, NullWritable value, Context context) throws IOException, InterruptedException {
+			generator.row(index.get(), row);
+			context.write(NullWritable.get(), row);
+		}
+	}
+
+	/*
+	 * Local mode, writing the part files of the job one after the other in this process
+	 * */
+	static void generateLocally(Configuration conf, Path output) throws IOException {
+		FileSystem fs = output.getFileSystem(conf);
+		if (fs.exists(output)) {
+			throw new IOException("Output directory " + output + " already exists");
+		}
+		SalesDataGenerator generator = new SalesDataGenerator(conf);
+		Text row = new Text();
+		List<RowRange> ranges = ranges(conf);
+		for (int task = 0; task < ranges.size(); task++) {
+			RowRange range = ranges.get(task);
+			try (OutputStream out = fs.create(new Path(output, String.format("part-m-%05d", task)), false)) {
+				for (long index = range.first; index < range.first + range.rows; index++) {
+					generator.row(index, row);
+					out.write(row.getBytes(), 0, row.getLength());
+					out.write('\n');
+				}
+			}
+		}
+		fs.create(new Path(output, "_SUCCESS")).close();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generator settings such as -D sales.generator.rows=100000000 -D sales.generator.country.skew=1.2
+		new SalesDataGenerator(conf); //Failing here on bad settings rather than in every task
+		if (conf.getBoolean(LOCAL_KEY, false)) {
+			generateLocally(conf, new Path(args[0])); //Same part files as the job, written by this process
+			return;
+		}
+		Job job = Job.getInstance(conf, "SalesDataGenerator");
+		job.setJarByClass(SalesDataGenerator.class);
+		job.setInputFormatClass(RowRangeInputFormat.class); //One split per part file, each a range of whole blocks of rows
+		job.setMapperClass(GeneratorMapper.class);
+		job.setNumReduceTasks(0); //Map-only, part files keep the rows in index order
+		job.setOutputKeyClass(NullWritable.class); //TextOutputFormat writes only the row for a NullWritable key
+		job.setOutputValueClass(Text.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+		FileOutputFormat.setOutputPath(job, new Path(args[0])); //Only argument, the directory of the generated csv files
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+	}
+}
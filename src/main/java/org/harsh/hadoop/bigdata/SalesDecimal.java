@@ -0,0 +1,73 @@
+package org.harsh.hadoop.bigdata;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.apache.hadoop.conf.Configuration;
+
+/*
+ * Fixed point mode of the money columns, unit_price and total_profit
+ *
+ * With sales.decimal=true the jobs parse money straight from the record bytes into a long of minor units
+ * (cents at the default scale of 2), add them up with long arithmetic and only turn them into a double when
+ * the result is written. Sums and averages are then exact and do not change with the number of splits,
+ * with the combiner or with the number of reducers, where double sums move in their last digits with the
+ * order of the additions. A value with more fraction digits than the scale fails the task instead of being rounded.
+ *
+ * */
+public final class SalesDecimal {
+
+	/*
+	 * Configuration keys turning on the fixed point mode and giving the number of fraction digits kept
+	 * */
+	public static final String DECIMAL_KEY = "sales.decimal";
+	public static final String SCALE_KEY = "sales.decimal.scale";
+	public static final int DEFAULT_SCALE = 2;
+
+	private SalesDecimal() {
+	}
+
+	/*
+	 * Scale of the fixed point mode set in job configuration, -1 when the jobs work on doubles
+	 * */
+	public static int getScale(Configuration conf) {
+		if (!conf.getBoolean(DECIMAL_KEY, false)) {
+			return -1;
+		}
+		int scale = conf.getInt(SCALE_KEY, DEFAULT_SCALE);
+		if (scale < 0 || scale > SalesCsvParser.MAX_SCALE) {
+			throw new IllegalArgumentException(SCALE_KEY + " has to be between 0 and " + SalesCsvParser.MAX_SCALE + ", got " + scale);
+		}
+		return scale;
+	}
+
+	/*
+	 * Reading a money column as a double, through the fixed point parser when a scale is given
+	 * Both paths give the same double for the same text, the fixed point one only accepts exact decimals
+	 * */
+	public static double getAmount(SalesCsvParser parser, int field, int scale) {
+		if (scale < 0) {
+			return parser.getDouble(field);
+		}
+		return toDouble(parser.getUnscaled(field, scale), scale);
+	}
+
+	/*
+	 * The double closest to unscaled / 10^scale
+	 * Below 2^53 both operands are exact doubles and the division is correctly rounded, so this is the double
+	 * Double.parseDouble gives for the decimal text
+	 * */
+	public static double toDouble(long unscaled, int scale) {
+		if (Math.abs(unscaled) < SalesCsvParser.MAX_EXACT_MANTISSA) {
+			return unscaled / SalesCsvParser.POWERS_OF_TEN[scale];
+		}
+		return BigDecimal.valueOf(unscaled, scale).doubleValue();
+	}
+
+	/*
+	 * Average of count values summing to unscaled / 10^scale, rounded to a double only once at the end
+	 * */
+	public static double average(long unscaledSum, int scale, long count) {
+		return BigDecimal.valueOf(unscaledSum, scale).divide(BigDecimal.valueOf(count), MathContext.DECIMAL128).doubleValue();
+	}
+}
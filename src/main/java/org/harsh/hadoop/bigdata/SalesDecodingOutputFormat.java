@@ -0,0 +1,40 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/*
+ * Text output for jobs running with dictionary encoded keys
+ * Packed LongWritable keys are decoded into the job's output key class (a SalesKey) before being written,
+ * so the output is the same as the one of the job running on plain Sales keys
+ *
+ * */
+public class SalesDecodingOutputFormat<V> extends TextOutputFormat<LongWritable, V> {
+
+	@Override
+	public RecordWriter<LongWritable, V> getRecordWriter(TaskAttemptContext job) throws IOException, InterruptedException {
+		@SuppressWarnings("unchecked")
+		final RecordWriter<SalesKey, V> writer = (RecordWriter<SalesKey, V>) (RecordWriter<?, ?>) super.getRecordWriter(job);
+		final SalesDictionary dictionary = SalesDictionary.load(job.getConfiguration());
+		final SalesKey sales = (SalesKey) ReflectionUtils.newInstance(job.getOutputKeyClass(), job.getConfiguration());
+
+		return new RecordWriter<LongWritable, V>() {
+
+			@Override
+			public void write(LongWritable key, V value) throws IOException, InterruptedException {
+				dictionary.decode(key.get(), sales);
+				writer.write(sales, value);
+			}
+
+			@Override
+			public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+				writer.close(context);
+			}
+		};
+	}
+}
@@ -0,0 +1,347 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+
+/*
+ * Dictionary of the countries and item types found in the geosales csv
+ *
+ * In encoded mode the mappers of SalesMapReduce1, 2 and 3 replace country and item_type by their codes and emit
+ * the key packed into a LongWritable. Codes follow the byte order of the names, so the packed keys sort exactly
+ * like SalesKey and SalesDecodingOutputFormat turns them back into names when the result is written.
+ *
+ * The dictionary file has one line per entry, "C<tab>country" or "I<tab>item_type", sorted by name.
+ * It is built by a pre-pass job over the input unless one is given with sales.dictionary.path.
+ *
+ * */
+public class SalesDictionary {
+
+	/*
+	 * Configuration keys of the encoded mode
+	 * */
+	public static final String ENCODED_KEY = "sales.keys.encoded";
+	public static final String PATH_KEY = "sales.dictionary.path";
+
+	/*
+	 * Name of the dictionary in the working directory of the tasks, linked there by the distributed cache
+	 * */
+	public static final String CACHE_NAME = "sales.dict";
+
+	private static final String COUNTRY_TAG = "C\t";
+	private static final String ITEM_TYPE_TAG = "I\t";
+
+	/*
+	 * Bit layout of the packed key: country code, item_type code and year
+	 * The sign bit is never set, so packed keys compare like the (country, item_type, year) triple
+	 * */
+	private static final int COUNTRY_SHIFT = 48;
+	private static final int ITEM_TYPE_SHIFT = 32;
+	public static final int MAX_COUNTRIES = 1 << 15;
+	public static final int MAX_ITEM_TYPES = 1 << 16;
+
+	private final Dimension countries = new Dimension();
+	private final Dimension itemTypes = new Dimension();
+
+	public Dimension countries() {
+		return countries;
+	}
+
+	public Dimension itemTypes() {
+		return itemTypes;
+	}
+
+	/*
+	 * Packing the codes and year into one long, years have to be positive
+	 * */
+	public static long pack(int country, int itemType, int year) {
+		return ((long) country << COUNTRY_SHIFT) | ((long) itemType << ITEM_TYPE_SHIFT) | (year & 0xFFFFFFFFL);
+	}
+
+	public static int country(long key) {
+		return (int) (key >>> COUNTRY_SHIFT);
+	}
+
+	public static int itemType(long key) {
+		return (int) (key >>> ITEM_TYPE_SHIFT) & 0xFFFF;
+	}
+
+	public static int year(long key) {
+		return (int) key;
+	}
+
+	/*
+	 * Encoding the key, -1 when the country or item_type is not in the dictionary
+	 * */
+	public long encode(Text country, Text itemType, int year) {
+		int countryCode = countries.code(country.getBytes(), 0, country.getLength());
+		int itemTypeCode = itemTypes.code(itemType.getBytes(), 0, itemType.getLength());
+		if (countryCode < 0 || itemTypeCode < 0) {
+			return -1;
+		}
+		return pack(countryCode, itemTypeCode, year);
+	}
+
+	/*
+	 * Setting the names and year of the packed key on the given Sales key
+	 * */
+	public void decode(long key, SalesKey out) {
+		countries.name(country(key), out.country);
+		itemTypes.name(itemType(key), out.item_type);
+		out.year.set(year(key));
+	}
+
+	/*
+	 * Reading a dictionary file, codes are given in the order of the lines
+	 * */
+	public static SalesDictionary read(InputStream in) throws IOException {
+		SalesDictionary dictionary = new SalesDictionary();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) {
+				continue;
+			}
+			Dimension dimension;
+			if (line.startsWith(COUNTRY_TAG)) {
+				dimension = dictionary.countries;
+			}
+			else if (line.startsWith(ITEM_TYPE_TAG)) {
+				dimension = dictionary.itemTypes;
+			}
+			else {
+				throw new IOException("Unexpected dictionary line: " + line);
+			}
+			byte[] name = line.substring(2).getBytes(StandardCharsets.UTF_8);
+			dimension.add(name, 0, name.length);
+		}
+
+		if (dictionary.countries.size() > MAX_COUNTRIES || dictionary.itemTypes.size() > MAX_ITEM_TYPES) {
+			throw new IOException("Dictionary too large for the packed key: " + dictionary.countries.size()
+					+ " countries, " + dictionary.itemTypes.size() + " item types");
+		}
+		return dictionary;
+	}
+
+	/*
+	 * Loading the dictionary inside a task, from the distributed cache when it was shipped that way
+	 * */
+	public static SalesDictionary load(Configuration conf) throws IOException {
+		File cached = new File(CACHE_NAME);
+		if (cached.exists()) {
+			try (InputStream in = new FileInputStream(cached)) {
+				return read(in);
+			}
+		}
+
+		Path path = new Path(conf.get(PATH_KEY));
+		try (InputStream in = path.getFileSystem(conf).open(path)) {
+			return read(in);
+		}
+	}
+
+	/*
+	 * Switching the job to encoded keys
+	 * Building the dictionary under workDir first when no dictionary file was configured
+	 * */
+	public static void configure(Job job, Path input, Path workDir) throws IOException, InterruptedException, ClassNotFoundException {
+		Configuration conf = job.getConfiguration();
+		if (conf.get(PATH_KEY) == null) {
+			conf.set(PATH_KEY, build(conf, input, workDir).toString());
+		}
+
+		Path path = new Path(conf.get(PATH_KEY));
+		URI uri = path.getFileSystem(conf).makeQualified(path).toUri();
+		job.addCacheFile(URI.create(uri + "#" + CACHE_NAME));
+		job.setMapOutputKeyClass(LongWritable.class);
+		job.setOutputFormatClass(SalesDecodingOutputFormat.class);
+	}
+
+	/*
+	 * Pre-pass job collecting the distinct countries and item types of the input, returning the dictionary file
+	 * The configuration may come from the sales job, so every class the pre-pass depends on is set explicitly
+	 * */
+	public static Path build(Configuration conf, Path input, Path workDir) throws IOException, InterruptedException, ClassNotFoundException {
+		FileSystem fs = workDir.getFileSystem(conf);
+		fs.delete(workDir, true);
+
+		Job job = Job.getInstance(conf, "SalesDictionary");
+		job.setJarByClass(SalesDictionary.class);
+		job.setMapperClass(DictionaryMapper.class);
+		job.setCombinerClass(DictionaryReducer.class);
+		job.setReducerClass(DictionaryReducer.class);
+		job.setNumReduceTasks(1); //One sorted file, so that codes follow the order of the names
+		job.setPartitionerClass(HashPartitioner.class);
+		job.setMapOutputKeyClass(Text.class);
+		job.setMapOutputValueClass(NullWritable.class);
+		job.setOutputKeyClass(Text.class);
+		job.setOutputValueClass(NullWritable.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.COUNTRY, SalesCsvParser.ITEM_TYPE);
+		}
+		else {
+			job.setInputFormatClass(TextInputFormat.class);
+		}
+		FileInputFormat.addInputPath(job, input);
+		FileOutputFormat.setOutputPath(job, workDir);
+		if (!job.waitForCompletion(true)) {
+			throw new IOException("Building the sales dictionary failed");
+		}
+		return new Path(workDir, "part-r-00000");
+	}
+
+	/*
+	 * Emitting the tagged country and item_type of every record
+	 * */
+	public static class DictionaryMapper extends Mapper<Object, Writable, Text, NullWritable> {
+		private static final byte[] COUNTRY = COUNTRY_TAG.getBytes(StandardCharsets.UTF_8);
+		private static final byte[] ITEM_TYPE = ITEM_TYPE_TAG.getBytes(StandardCharsets.UTF_8);
+
+		SalesCsvParser parser;
+		Text field = new Text();
+		Text entry = new Text();
+
+		public void setup(Context context) {
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+		}
+
+		public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			if (parser.parse(value) < SalesCsvParser.FIELD_COUNT) {
+				return;
+			}
+			write(COUNTRY, SalesCsvParser.COUNTRY, context);
+			write(ITEM_TYPE, SalesCsvParser.ITEM_TYPE, context);
+		}
+
+		private void write(byte[] tag, int column, Context context) throws IOException, InterruptedException {
+			parser.getText(column, field);
+			entry.set(tag);
+			entry.append(field.getBytes(), 0, field.getLength());
+			context.write(entry, NullWritable.get());
+		}
+	}
+
+	/*
+	 * Writing every distinct entry once, also used as the combiner
+	 * */
+	public static class DictionaryReducer extends Reducer<Text, NullWritable, Text, NullWritable> {
+		public void reduce(Text key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+			context.write(key, NullWritable.get());
+		}
+	}
+
+	/*
+	 * Names of one dimension, looked up by their bytes through an open addressing hash table
+	 * Lookups do not allocate, so they can run once per record
+	 * */
+	public static class Dimension {
+		private byte[][] names = new byte[16][];
+		private int size;
+		private int[] slots = new int[32]; //Code + 1 of the name in the slot, 0 for an empty slot
+
+		public int size() {
+			return size;
+		}
+
+		/*
+		 * Code of the name, -1 when it is not in the dictionary
+		 * */
+		public int code(byte[] bytes, int offset, int length) {
+			int mask = slots.length - 1;
+			for (int i = hash(bytes, offset, length) & mask; ; i = (i + 1) & mask) {
+				int slot = slots[i];
+				if (slot == 0) {
+					return -1;
+				}
+				byte[] name = names[slot - 1];
+				if (WritableComparator.compareBytes(name, 0, name.length, bytes, offset, length) == 0) {
+					return slot - 1;
+				}
+			}
+		}
+
+		/*
+		 * Code of the name, adding it with the next free code when it is not in the dictionary yet
+		 * */
+		public int add(byte[] bytes, int offset, int length) {
+			int code = code(bytes, offset, length);
+			if (code >= 0) {
+				return code;
+			}
+
+			if (size == names.length) {
+				names = Arrays.copyOf(names, size * 2);
+			}
+			names[size] = Arrays.copyOfRange(bytes, offset, offset + length);
+			if ((size + 1) * 2 > slots.length) {
+				rehash(slots.length * 2);
+			}
+			insert(size);
+			return size++;
+		}
+
+		/*
+		 * Removing every name, codes are given from 0 again
+		 * */
+		public void clear() {
+			Arrays.fill(names, 0, size, null);
+			Arrays.fill(slots, 0);
+			size = 0;
+		}
+
+		/*
+		 * Setting the name of the code on the given Text
+		 * */
+		public void name(int code, Text out) {
+			if (code < 0 || code >= size) {
+				throw new IllegalArgumentException("Unknown dictionary code " + code);
+			}
+			out.set(names[code]);
+		}
+
+		private void rehash(int capacity) {
+			slots = new int[capacity];
+			for (int code = 0; code < size; code++) {
+				insert(code);
+			}
+		}
+
+		private void insert(int code) {
+			int mask = slots.length - 1;
+			int i = hash(names[code], 0, names[code].length) & mask;
+			while (slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			slots[i] = code + 1;
+		}
+
+		private static int hash(byte[] bytes, int offset, int length) {
+			int h = WritableComparator.hashBytes(bytes, offset, length);
+			return h ^ (h >>> 16);
+		}
+	}
+}
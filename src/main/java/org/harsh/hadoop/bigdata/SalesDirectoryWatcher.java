@@ -0,0 +1,229 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Long running mode keeping the four questions up to date for a local directory that gets new csv files
+ *
+ * Every file already in the directory, then every file that appears in it, is scanned once by SalesLocalEngine into
+ * its own partial and merged into the running totals, so an answer follows a new file within the time of its scan.
+ * Every few seconds, when something changed, a copy of the totals is written to the -que-N directories in the layout
+ * of the single question jobs. Only the copy is taken under the lock, the files are written by another thread while
+ * the next file is scanned. Settings, all optional:
+ *     -D sales.watch.snapshot.seconds=10   time between snapshots
+ * and those of SalesLocalEngine. Files are read as soon as they appear, so they have to be written under a hidden
+ * name, starting with _ or ., and renamed when complete. A file that fails to parse is reported and left out whole.
+ *
+ * Usage: SalesDirectoryWatcher [--queries 1,2,3,4] [--item-type T] [--country C] [--year-range yyyy-yyyy] <input directory> <output>
+ *
+ * */
+public class SalesDirectoryWatcher {
+
+	/*
+	 * Configuration key of the time between snapshots
+	 * */
+	public static final String SNAPSHOT_SECONDS_KEY = "sales.watch.snapshot.seconds";
+	public static final int DEFAULT_SNAPSHOT_SECONDS = 10;
+
+	private final Configuration conf;
+	private final boolean[] enabled;
+	private final String output;
+	private final Set<String> seen = new HashSet<>();
+
+	/*
+	 * Running totals and their version, guarded by this watcher
+	 * */
+	private final SalesLocalEngine.Partial totals;
+	private long version;
+	private long snapshotVersion;
+
+	public SalesDirectoryWatcher(Configuration conf, String output) {
+		this.conf = conf;
+		this.enabled = SalesLocalEngine.enabledQueries(conf);
+		this.output = output;
+		this.totals = new SalesLocalEngine.Partial(conf);
+	}
+
+	/*
+	 * Scanning a file outside the lock and merging it into the totals, only once per file name
+	 * */
+	void ingest(File file) {
+		String name = file.getName();
+		if (!file.isFile() || name.startsWith("_") || name.startsWith(".") || !seen.add(name)) {
+			return;
+		}
+		long start = System.nanoTime();
+		SalesLocalEngine.Partial partial;
+		try {
+			partial = SalesLocalEngine.run(conf, file);
+		}
+		catch (IOException | RuntimeException e) {
+			System.err.println("Skipping " + file + ": " + e);
+			return;
+		}
+		synchronized (this) {
+			totals.add(partial);
+			version++;
+		}
+		System.err.println(String.format("%s: %d records, %d malformed, %d bad order dates, %d filtered in %d ms", name, partial.getRecords(),
+				partial.getMalformedRecords(), partial.getBadOrderDates(), partial.getFilteredRecords(), (System.nanoTime() - start) / 1000000));
+	}
+
+	/*
+	 * Writing a copy of the totals when they changed since the last snapshot
+	 * The copy goes to <output>-snapshot-que-N first, then each directory replaces its -que-N directory through replace
+	 * */
+	void snapshot() throws IOException {
+		SalesLocalEngine.Partial copy;
+		long copyVersion;
+		synchronized (this) {
+			if (version == snapshotVersion) {
+				return;
+			}
+			copy = totals.copy();
+			copyVersion = version;
+		}
+		String staging = output + "-snapshot";
+		FileSystem fs = new Path(output).getFileSystem(conf);
+		for (int query = 1; query <= 4; query++) {
+			fs.delete(new Path(staging + "-" + SalesMultiQuery.queryDirectory(query)), true);
+		}
+		SalesLocalEngine.write(conf, copy, enabled, staging);
+		for (int query = 1; query <= 4; query++) {
+			if (enabled[query]) {
+				replace(fs, new Path(staging + "-" + SalesMultiQuery.queryDirectory(query)), new Path(output + "-" + SalesMultiQuery.queryDirectory(query)),
+						new Path(output + "-previous-" + SalesMultiQuery.queryDirectory(query)));
+			}
+		}
+		synchronized (this) {
+			snapshotVersion = copyVersion;
+		}
+	}
+
+	/*
+	 * Replacing target by written, keeping the old target in previous until written is in place
+	 * Nothing is deleted before the new directory is in place, so a complete snapshot is always in target or, for the
+	 * time between the two renames, in previous. A previous left by a run stopped between them is put back first.
+	 * An IOException keeps the version, so the next snapshot tries again.
+	 * */
+	private static void replace(FileSystem fs, Path written, Path target, Path previous) throws IOException {
+		if (fs.exists(previous)) {
+			if (fs.exists(target)) {
+				fs.delete(previous, true);
+			}
+			else if (!fs.rename(previous, target)) {
+				throw new IOException("Could not move " + previous + " back to " + target);
+			}
+		}
+		if (fs.exists(target) && !fs.rename(target, previous)) {
+			throw new IOException("Could not move " + target + " to " + previous + ", the snapshot is left in " + written);
+		}
+		if (!fs.rename(written, target)) {
+			String kept = fs.rename(previous, target) ? target.toString() : previous.toString();
+			throw new IOException("Could not move " + written + " to " + target + ", the snapshot is left in " + written + " and the one before in " + kept);
+		}
+		fs.delete(previous, true);
+	}
+
+	/*
+	 * Reading the files already in the directory, then every file created in it or moved into it, until interrupted
+	 * */
+	public void watch(File directory) throws IOException, InterruptedException {
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			java.nio.file.Path dir = directory.toPath();
+			dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE); //A rename into the directory is a creation too
+			File[] existing = directory.listFiles();
+			if (existing != null) {
+				Arrays.sort(existing);
+				for (File file : existing) {
+					ingest(file);
+				}
+			}
+			while (true) {
+				WatchKey key = watcher.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						File[] files = directory.listFiles(); //Events were lost, the names not seen yet are read
+						if (files != null) {
+							Arrays.sort(files);
+							for (File file : files) {
+								ingest(file);
+							}
+						}
+					}
+					else {
+						ingest(dir.resolve((java.nio.file.Path) event.context()).toFile());
+					}
+				}
+				if (!key.reset()) {
+					throw new IOException("Input directory " + directory + " is no longer accessible");
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration(); //Hadoop config, only read for the settings
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.watch.snapshot.seconds=5
+		args = SalesFilter.parseArguments(conf, args);
+		SalesDecimal.getScale(conf);
+
+		args = SalesMultiQuery.parseQueries(conf, args);
+		if (args.length != 2) {
+			System.err.println("Usage: SalesDirectoryWatcher [--queries 1,2,3,4] [--item-type T] [--country C] [--year-range yyyy-yyyy] <input directory> <output>");
+			System.exit(2);
+		}
+		File directory = new File(new Path(args[0]).toUri().getPath());
+		if (!directory.isDirectory()) {
+			throw new IOException("Input directory " + directory + " does not exist");
+		}
+		SalesDirectoryWatcher watcher = new SalesDirectoryWatcher(conf, args[1]);
+
+		/*
+		 * Snapshots on their own thread, and a last one when the process is stopped
+		 * */
+		int seconds = conf.getInt(SNAPSHOT_SECONDS_KEY, DEFAULT_SNAPSHOT_SECONDS);
+		ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "snapshots");
+			thread.setDaemon(true);
+			return thread;
+		});
+		snapshots.scheduleWithFixedDelay(() -> {
+			try {
+				watcher.snapshot();
+			}
+			catch (IOException | RuntimeException e) { //An exception leaving this task would cancel every later snapshot
+				System.err.println("Snapshot failed: " + e);
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			snapshots.shutdown();
+			try {
+				snapshots.awaitTermination(1, TimeUnit.MINUTES);
+				watcher.snapshot();
+			}
+			catch (IOException | InterruptedException | RuntimeException e) {
+				System.err.println("Last snapshot failed: " + e);
+			}
+		}));
+		watcher.watch(directory);
+	}
+}
@@ -0,0 +1,250 @@
+package org.harsh.hadoop.bigdata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/*
+ * Row filter of the sales jobs for a given item type, a given country and a range of order years
+ *
+ * Predicates run on the raw bytes of the record before any column is decoded:
+ * mightMatch looks for the item type (or country) anywhere in the line before the record is split,
+ * matches then compares the exact column bytes and reads the year from the first digits of order_date.
+ * Rows that fail are dropped by the mapper, so they are neither aggregated nor shuffled.
+ *
+ * */
+public class SalesFilter {
+
+	/*
+	 * Configuration keys of the filters, set from the --item-type, --country and --year-range arguments
+	 * */
+	public static final String ITEM_TYPE_KEY = "sales.filter.item.type";
+	public static final String COUNTRY_KEY = "sales.filter.country";
+	public static final String YEAR_RANGE_KEY = "sales.filter.year.range";
+
+	private static final byte QUOTE = '"';
+
+	private final byte[] itemType;
+	private final byte[] country;
+	private final int minYear;
+	private final int maxYear;
+	private final byte[] needle; //Bytes every matching line contains, null when there are none to look for
+
+	public SalesFilter(String itemType, String country, int minYear, int maxYear) {
+		this.itemType = itemType == null ? null : itemType.getBytes(StandardCharsets.UTF_8);
+		this.country = country == null ? null : country.getBytes(StandardCharsets.UTF_8);
+		this.minYear = minYear;
+		this.maxYear = maxYear;
+
+		byte[] literal = this.itemType != null ? this.itemType : this.country;
+		this.needle = literal != null && literal.length > 0 && indexOf(literal, literal.length, new byte[] { QUOTE }) < 0 ? literal : null;
+	}
+
+	/*
+	 * Creating the filter set in job configuration, null when no filter is set
+	 * */
+	public static SalesFilter newInstance(Configuration conf) {
+		String itemType = conf.get(ITEM_TYPE_KEY);
+		String country = conf.get(COUNTRY_KEY);
+		String yearRange = conf.get(YEAR_RANGE_KEY);
+		if (itemType == null && country == null && yearRange == null) {
+			return null;
+		}
+
+		int minYear = Integer.MIN_VALUE;
+		int maxYear = Integer.MAX_VALUE;
+		if (yearRange != null) {
+			String[] years = yearRange.trim().split("-", -1);
+			try {
+				if (years.length == 1) {
+					minYear = maxYear = Integer.parseInt(years[0].trim());
+				}
+				else if (years.length == 2) {
+					minYear = years[0].trim().isEmpty() ? Integer.MIN_VALUE : Integer.parseInt(years[0].trim());
+					maxYear = years[1].trim().isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(years[1].trim());
+				}
+				else {
+					throw new NumberFormatException();
+				}
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Year range has to be yyyy or yyyy-yyyy, got " + yearRange);
+			}
+		}
+		return new SalesFilter(itemType, country, minYear, maxYear);
+	}
+
+	/*
+	 * Status of a record skipped by check, each counted under its own SalesCounters entry
+	 * Order dates are never negative, so a status can not be taken for one
+	 * */
+	public static final int BAD_ORDER_DATE = SalesOrderDate.INVALID;
+	public static final int MALFORMED = -2;
+	public static final int FILTERED = -3;
+
+	/*
+	 * Parsing a record and checking it against the filter, which is null when no filter is set
+	 * Returning the packed order_date of the record, or the negative status of a skipped record: FILTERED for rows
+	 * outside the filters, dropped before the line is split when it cannot match, MALFORMED for records with missing
+	 * columns and BAD_ORDER_DATE for records whose order_date is not a date
+	 * */
+	public static int check(SalesFilter filter, SalesCsvParser parser, Writable value) {
+		if (filter != null && !filter.mightMatch(value)) {
+			return FILTERED;
+		}
+		if (parser.parse(value) < SalesCsvParser.FIELD_COUNT) {
+			return MALFORMED;
+		}
+		if (filter != null && !filter.matches(parser)) {
+			return FILTERED;
+		}
+		int orderDate = parser.getDate(SalesCsvParser.ORDER_DATE);
+		return orderDate == SalesOrderDate.INVALID ? BAD_ORDER_DATE : orderDate;
+	}
+
+	/*
+	 * Counter of a negative status of check
+	 * */
+	public static SalesCounters counter(int status) {
+		switch (status) {
+		case FILTERED:
+			return SalesCounters.FILTERED_RECORDS;
+		case MALFORMED:
+			return SalesCounters.MALFORMED_RECORDS;
+		case BAD_ORDER_DATE:
+			return SalesCounters.BAD_ORDER_DATES;
+		default:
+			throw new IllegalArgumentException("No skipped record status " + status);
+		}
+	}
+
+	/*
+	 * Checking the record of a mapper, a skipped record is counted in the task counters
+	 * Returning the packed order_date of the record, or SalesOrderDate.INVALID when the record is skipped
+	 * */
+	public static int accept(SalesFilter filter, SalesCsvParser parser, Writable value, TaskAttemptContext context) {
+		int orderDate = check(filter, parser, value);
+		if (orderDate < 0) {
+			context.getCounter(counter(orderDate)).increment(1);
+			return SalesOrderDate.INVALID;
+		}
+		return orderDate;
+	}
+
+	/*
+	 * Moving the --item-type, --country and --year-range arguments to job configuration
+	 * Returning the other arguments in their order
+	 * */
+	public static String[] parseArguments(Configuration conf, String[] args) {
+		List<String> remaining = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("--item-type".equals(args[i]) && i + 1 < args.length) {
+				conf.set(ITEM_TYPE_KEY, args[++i]);
+			}
+			else if ("--country".equals(args[i]) && i + 1 < args.length) {
+				conf.set(COUNTRY_KEY, args[++i]);
+			}
+			else if ("--year-range".equals(args[i]) && i + 1 < args.length) {
+				conf.set(YEAR_RANGE_KEY, args[++i]);
+			}
+			else {
+				remaining.add(args[i]);
+			}
+		}
+		SalesFilter.newInstance(conf); //Failing in the driver on a bad year range rather than in every task
+		return remaining.toArray(new String[remaining.size()]);
+	}
+
+	/*
+	 * Bounds of the year range, Integer.MIN_VALUE and Integer.MAX_VALUE when the range is open
+	 * */
+	public int getMinYear() {
+		return minYear;
+	}
+
+	public int getMaxYear() {
+		return maxYear;
+	}
+
+	/*
+	 * Cheap check on the line before it is split, false only when the record cannot match
+	 * Binary rows have no line to look into, they are only checked by matches
+	 * */
+	public boolean mightMatch(Writable value) {
+		if (needle == null || !(value instanceof Text)) {
+			return true;
+		}
+		Text line = (Text) value;
+		return indexOf(line.getBytes(), line.getLength(), needle) >= 0;
+	}
+
+	/*
+	 * Exact check on the parsed record, comparing column bytes without decoding them
+	 * Records whose order_date is not a date are kept, so that the mapper counts them
+	 * */
+	public boolean matches(SalesCsvParser parser) {
+		if (itemType != null && !parser.fieldEquals(SalesCsvParser.ITEM_TYPE, itemType, 0, itemType.length)) {
+			return false;
+		}
+		if (country != null && !parser.fieldEquals(SalesCsvParser.COUNTRY, country, 0, country.length)) {
+			return false;
+		}
+		if (minYear == Integer.MIN_VALUE && maxYear == Integer.MAX_VALUE) {
+			return true;
+		}
+
+		int year = leadingYear(parser.getBytes(), parser.getStart(SalesCsvParser.ORDER_DATE), parser.getLength(SalesCsvParser.ORDER_DATE));
+		if (year < 0) {
+			int orderDate = parser.getDate(SalesCsvParser.ORDER_DATE);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return true;
+			}
+			year = SalesOrderDate.year(orderDate);
+		}
+		return year >= minYear && year <= maxYear;
+	}
+
+	/*
+	 * Year of a field starting with four digits and a dash, -1 for any other layout
+	 * */
+	private static int leadingYear(byte[] bytes, int start, int length) {
+		if (length < 5 || bytes[start + 4] != '-') {
+			return -1;
+		}
+		int year = 0;
+		for (int i = start; i < start + 4; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			year = year * 10 + digit;
+		}
+		return year;
+	}
+
+	/*
+	 * Position of the needle in the first length bytes, -1 when it is not there
+	 * */
+	private static int indexOf(byte[] bytes, int length, byte[] needle) {
+		byte first = needle[0];
+		int last = length - needle.length;
+		for (int i = 0; i <= last; i++) {
+			if (bytes[i] != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < needle.length && bytes[i + j] == needle[j]) {
+				j++;
+			}
+			if (j == needle.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -1,13 +1,12 @@
 package org.harsh.hadoop.bigdata;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 import org.apache.hadoop.io.Text;
 
 
+/*
+ * String based access to the csv fields
+ * The map tasks use SalesCsvParser, which reads the fields straight from the bytes of the record
+ * */
 public class SalesGetCsvData {
 	
 	public String[] getCsvData(Text value) {
@@ -34,23 +33,19 @@ public class SalesGetCsvData {
 		return new String(csvData[3]);
 	}
 
-	@SuppressWarnings("deprecation")
 	public int getOrderDate(String[] csvData) {
 		/*
 		 * Getting year field from csv
-		 * Converting the date to standard format and extracting year out of it
-		 * 
 		 * */
-		Integer year = null;
-		try {
-			DateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ENGLISH);
-			Date date = format.parse(csvData[6]);
-			year = 1900 + date.getYear();
-		}
-		catch (ParseException e) {
-			e.printStackTrace();
-		}
-		return year;
+		return getOrderDate(csvData[6]);
+	}
+
+	public int getOrderDate(String orderDate) {
+		/*
+		 * Extracting year out of the date, SalesOrderDate.INVALID when it is not a date
+		 * */
+		int date = SalesOrderDate.parse(orderDate);
+		return date == SalesOrderDate.INVALID ? SalesOrderDate.INVALID : SalesOrderDate.year(date);
 	}
 
 	public double getUnitPrice(String[] csvData) {
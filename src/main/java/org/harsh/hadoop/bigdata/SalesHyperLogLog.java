@@ -0,0 +1,157 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Approximate count of distinct values in 2^precision one byte registers, a HyperLogLog
+ *
+ * A value is hashed to 64 bits, the first precision bits pick a register which keeps the longest run of leading zeros
+ * seen in the other bits. Counters merge by taking the larger register, so they go through a combiner, and the same
+ * values give the same registers in any order. The standard error is 1.04 / sqrt(2^precision), 3.3% at the default
+ * precision of 10; small counts are estimated by linear counting of the empty registers.
+ *
+ * Registers are written as they are once a third of them are set, before that as the gaps between the set ones
+ * with their values, so the counter of a key seen a few times takes a few bytes in the shuffle.
+ *
+ * */
+public class SalesHyperLogLog implements Writable {
+	public static final int DEFAULT_PRECISION = 10;
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 18;
+
+	private int precision;
+	private byte[] registers;
+
+	public SalesHyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	public SalesHyperLogLog(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("HyperLogLog precision has to be between " + MIN_PRECISION + " and " + MAX_PRECISION + ", got " + precision);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	public void clear() {
+		Arrays.fill(registers, (byte) 0);
+	}
+
+	public void add(long value) {
+		long hash = mix(value);
+		int register = (int) (hash >>> (64 - precision));
+		long rest = hash << precision | 1L << (precision - 1); //The guard bit stops the run at 64 - precision + 1
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[register]) {
+			registers[register] = rank;
+		}
+	}
+
+	/*
+	 * Merging another counter of the same precision into this one
+	 * */
+	public void add(SalesHyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot add a HyperLogLog of precision " + other.precision + " to one of precision " + precision);
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	public long getEstimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += Math.scalb(1.0, -register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		double estimate = alpha(m) * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	private static double alpha(int m) {
+		switch (m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+	/*
+	 * Finalizer of SplitMix64, spreading consecutive order ids over all 64 bits
+	 * */
+	static long mix(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/*
+	 * Writing the precision and the number of set registers, then the registers as they are or as gaps and values
+	 * */
+	public void write(DataOutput out) throws IOException {
+		int set = 0;
+		for (byte register : registers) {
+			if (register != 0) {
+				set++;
+			}
+		}
+		out.writeByte(precision);
+		WritableUtils.writeVInt(out, set);
+		if (set * 3 >= registers.length) {
+			out.write(registers);
+			return;
+		}
+		int previous = -1;
+		for (int i = 0; i < registers.length; i++) {
+			if (registers[i] != 0) {
+				WritableUtils.writeVInt(out, i - previous);
+				out.writeByte(registers[i]);
+				previous = i;
+			}
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		int readPrecision = in.readByte();
+		if (readPrecision != precision) {
+			precision = readPrecision;
+			registers = new byte[1 << precision];
+		}
+		else {
+			clear();
+		}
+		int set = WritableUtils.readVInt(in);
+		if (set * 3 >= registers.length) {
+			in.readFully(registers);
+			return;
+		}
+		int index = -1;
+		for (int i = 0; i < set; i++) {
+			index += WritableUtils.readVInt(in);
+			registers[index] = in.readByte();
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Incremental mode of the four questions for an input directory that gets new csv files every day
+ *
+ * The partial aggregates of SalesMultiQuery, the sum and count of unit_price, the units sold, their min and max
+ * and the top N orders of every group, are kept as SequenceFiles under <output>-state with a watermark listing every
+ * input file already read with its length and modification time. Every run reads only the files not listed yet:
+ *     1. the merge job maps the new files with SalesQueryMapper and the previous state with the identity mapper,
+ *        and merges them with SalesQueryCombiner into <output>-state-new; these partials merge to the same result in any order
+ *     2. the answer job reads the new state and writes the -que-N directories with SalesQueryReducer
+ *     3. the new state with its watermark replaces the previous one
+ * so the work of a run follows the size of the new files, not of the whole history. A run that fails before its new
+ * state is complete leaves the previous state in place and the next run reads the same files again; a complete new
+ * state that was not moved into place is taken up by the next run. A listed file whose length or modification time
+ * changed, for example rows appended to it, stops the run, as its rows are already in the state: new rows go in new
+ * files. The filters, sales.decimal and the sales.topn settings are part of the state, a run with other ones stops.
+ *
+ * Usage: SalesIncremental [--item-type T] [--country C] [--year-range yyyy-yyyy] <input directory> <output>
+ *
+ * */
+public class SalesIncremental {
+
+	/*
+	 * Watermark file of the state, hidden from SequenceFileInputFormat by its leading _
+	 * */
+	static final String WATERMARK_NAME = "_WATERMARK";
+
+	/*
+	 * Settings and files a state was built from, one tab separated line each:
+	 *     setting  key  value
+	 *     file     length  modification time  name
+	 * */
+	static class Watermark {
+		static final String SETTING = "setting";
+		static final String FILE = "file";
+
+		Map<String, String> settings = new TreeMap<>();
+		Map<String, long[]> files = new TreeMap<>(); //Length and modification time by file name
+
+		/*
+		 * Settings of the run that change the partials of the state
+		 * */
+		static Map<String, String> settings(Configuration conf) {
+			Map<String, String> settings = new TreeMap<>();
+			settings.put(SalesFilter.ITEM_TYPE_KEY, conf.get(SalesFilter.ITEM_TYPE_KEY, ""));
+			settings.put(SalesFilter.COUNTRY_KEY, conf.get(SalesFilter.COUNTRY_KEY, ""));
+			settings.put(SalesFilter.YEAR_RANGE_KEY, conf.get(SalesFilter.YEAR_RANGE_KEY, "").trim());
+			settings.put(SalesDecimal.SCALE_KEY, Integer.toString(SalesDecimal.getScale(conf))); //-1 when money is read as doubles
+			settings.put(SalesTopN.N_KEY, Integer.toString(conf.getInt(SalesTopN.N_KEY, SalesTopN.DEFAULT_N)));
+			SalesTopN.groupColumns(conf); //Checking the group by names
+			settings.put(SalesTopN.GROUP_BY_KEY, String.join(",", conf.getTrimmedStrings(SalesTopN.GROUP_BY_KEY, SalesTopN.DEFAULT_GROUP_BY)).toLowerCase());
+			return settings;
+		}
+
+		/*
+		 * False for a file that is listed, throwing when a listed file changed since it was read
+		 * */
+		boolean isNew(FileStatus file) throws IOException {
+			long[] read = files.get(file.getPath().getName());
+			if (read == null) {
+				return true;
+			}
+			if (read[0] != file.getLen() || read[1] != file.getModificationTime()) {
+				throw new IOException("Input file " + file.getPath() + " changed since it was read, it had " + read[0] + " bytes modified at " + read[1]
+						+ " and has " + file.getLen() + " bytes modified at " + file.getModificationTime() + "; new rows have to go in new files");
+			}
+			return false;
+		}
+
+		void add(FileStatus file) {
+			files.put(file.getPath().getName(), new long[] { file.getLen(), file.getModificationTime() });
+		}
+
+		static Watermark read(FileSystem fs, Path state) throws IOException {
+			Watermark watermark = new Watermark();
+			Path file = new Path(state, WATERMARK_NAME);
+			if (!fs.exists(file)) {
+				return watermark;
+			}
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(file), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t", -1);
+					if (fields.length == 3 && SETTING.equals(fields[0])) {
+						watermark.settings.put(fields[1], fields[2]);
+					}
+					else if (fields.length == 4 && FILE.equals(fields[0])) {
+						watermark.files.put(fields[3], new long[] { Long.parseLong(fields[1]), Long.parseLong(fields[2]) });
+					}
+					else {
+						throw new IOException("Unreadable line \"" + line + "\" in " + file + ", delete " + state + " to build the state again");
+					}
+				}
+			}
+			return watermark;
+		}
+
+		void write(FileSystem fs, Path state) throws IOException {
+			StringBuilder text = new StringBuilder();
+			for (Map.Entry<String, String> setting : settings.entrySet()) {
+				text.append(SETTING).append('\t').append(setting.getKey()).append('\t').append(setting.getValue()).append('\n');
+			}
+			for (Map.Entry<String, long[]> file : files.entrySet()) {
+				text.append(FILE).append('\t').append(file.getValue()[0]).append('\t').append(file.getValue()[1]).append('\t').append(file.getKey()).append('\n');
+			}
+			try (OutputStream out = fs.create(new Path(state, WATERMARK_NAME), true)) {
+				out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	/*
+	 * Files of the input directory not read yet, in name order, without the hidden ones starting with _ or .
+	 * */
+	static List<FileStatus> newFiles(FileSystem fs, Path input, Watermark watermark) throws IOException {
+		List<FileStatus> files = new ArrayList<>();
+		for (FileStatus file : fs.listStatus(input)) {
+			String name = file.getPath().getName();
+			if (file.isFile() && !name.startsWith("_") && !name.startsWith(".") && watermark.isNew(file)) {
+				files.add(file);
+			}
+		}
+		FileStatus[] sorted = files.toArray(new FileStatus[0]);
+		Arrays.sort(sorted);
+		return Arrays.asList(sorted);
+	}
+
+	/*
+	 * Replacing the state by the new one, which has its watermark written
+	 * */
+	static void replaceState(FileSystem fs, Path state, Path newState) throws IOException {
+		fs.delete(state, true);
+		if (!fs.rename(newState, state)) {
+			throw new IOException("Could not move " + newState + " to " + state + ", the next run takes it up from " + newState);
+		}
+	}
+
+	/*
+	 * Answer job, the -que-N directories from the partials of the state
+	 * */
+	static void answer(Configuration conf, FileSystem fs, Path state, String output, boolean[] enabled) throws Exception {
+		Path workDir = new Path(output + "-que-all");
+		fs.delete(workDir, true);
+		Job answer = Job.getInstance(conf, "SalesIncremental answers");
+		answer.setJarByClass(SalesIncremental.class);
+		answer.setInputFormatClass(SequenceFileInputFormat.class);
+		answer.setMapperClass(Mapper.class);
+		answer.setReducerClass(SalesMultiQuery.SalesQueryReducer.class);
+		answer.setMapOutputKeyClass(SalesQueryKey.class);
+		answer.setMapOutputValueClass(SalesQueryValue.class);
+		SalesMultiQuery.configureOutputs(answer); //One named output per question
+		FileInputFormat.addInputPath(answer, state);
+		FileOutputFormat.setOutputPath(answer, workDir);
+		if (!answer.waitForCompletion(true)) {
+			System.exit(1);
+		}
+		for (int query = 1; query <= 4; query++) {
+			fs.delete(new Path(output + "-" + SalesMultiQuery.queryDirectory(query)), true); //Answers of the previous run
+		}
+		SalesMultiQuery.moveOutputs(fs, workDir, output, enabled);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs();
+		args = SalesFilter.parseArguments(conf, args); //Optional --item-type, --country and --year-range filters, the same for every run
+		SalesDecimal.getScale(conf); //Optional -D sales.decimal=true reads money as exact fixed point, the same for every run
+		if (args.length != 2) {
+			System.err.println("Usage: SalesIncremental [--item-type T] [--country C] [--year-range yyyy-yyyy] <input directory> <output>");
+			System.exit(2);
+		}
+		conf.set(SalesMultiQuery.QUERIES_KEY, "1,2,3,4"); //The state keeps every question
+		boolean[] enabled = SalesMultiQuery.enabledQueries(conf);
+		Path input = new Path(args[0]);
+		String output = args[1];
+		Path state = new Path(output + "-state");
+		Path newState = new Path(output + "-state-new");
+		FileSystem fs = state.getFileSystem(conf);
+		/*
+		 * A new state with its watermark is complete, it was left by a run stopped before it replaced the state
+		 * Anything else under -state-new is left by a failed merge and dropped
+		 * */
+		boolean recovered = false;
+		if (fs.exists(new Path(newState, WATERMARK_NAME))) {
+			System.err.println("Taking up the complete state left in " + newState);
+			replaceState(fs, state, newState);
+			recovered = true;
+		}
+		else {
+			fs.delete(newState, true);
+		}
+
+		/*
+		 * Only the files not in the watermark are read, nothing runs when there are none
+		 * */
+		Watermark watermark = Watermark.read(fs, state);
+		Map<String, String> settings = Watermark.settings(conf);
+		if (!watermark.files.isEmpty() && !watermark.settings.equals(settings)) {
+			throw new IllegalArgumentException("The state in " + state + " was built with " + watermark.settings + ", this run has " + settings
+					+ "; run with the same filters, sales.decimal and sales.topn settings or delete " + state);
+		}
+		watermark.settings = settings;
+		List<FileStatus> files = newFiles(input.getFileSystem(conf), input, watermark);
+		if (files.isEmpty()) {
+			System.err.println("No new files in " + input);
+			if (recovered) {
+				answer(conf, fs, state, output, enabled); //The answers may not have been written from the state taken up
+			}
+			return;
+		}
+
+		/*
+		 * Merge job, new files and previous state into the new state
+		 * */
+		Job merge = Job.getInstance(conf, "SalesIncremental merge");
+		merge.setJarByClass(SalesIncremental.class);
+		for (FileStatus file : files) {
+			MultipleInputs.addInputPath(merge, file.getPath(), TextInputFormat.class, SalesMultiQuery.SalesQueryMapper.class); //Rows of the new files, as partials
+			watermark.add(file);
+		}
+		if (fs.exists(state)) {
+			MultipleInputs.addInputPath(merge, state, SequenceFileInputFormat.class, Mapper.class); //Partials of every earlier run, as they were written
+		}
+		merge.setCombinerClass(SalesMultiQuery.SalesQueryCombiner.class);
+		merge.setReducerClass(SalesMultiQuery.SalesQueryCombiner.class); //Merged partials are the new state
+		merge.setMapOutputKeyClass(SalesQueryKey.class);
+		merge.setMapOutputValueClass(SalesQueryValue.class);
+		merge.setOutputKeyClass(SalesQueryKey.class);
+		merge.setOutputValueClass(SalesQueryValue.class);
+		merge.setOutputFormatClass(SequenceFileOutputFormat.class);
+		FileOutputFormat.setOutputPath(merge, newState);
+		if (!merge.waitForCompletion(true)) {
+			System.exit(1);
+		}
+		watermark.write(fs, newState); //Written last, it marks the new state as complete
+
+		/*
+		 * The new state replaces the previous one only once the answers are written
+		 * */
+		answer(conf, fs, newState, output, enabled);
+		replaceState(fs, state, newState);
+	}
+}
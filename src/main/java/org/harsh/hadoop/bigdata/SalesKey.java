@@ -0,0 +1,164 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Composite key of country, item_type and year shared by SalesMapReduce1, 2 and 3
+ * Every job extends it with its own Sales class that decides how the key is printed
+ *
+ * */
+public abstract class SalesKey implements WritableComparable<SalesKey> {
+	Text country;
+	Text item_type;
+	IntWritable year;
+
+	/*
+	 * Constructor logic
+	 * */
+	public SalesKey(Text country, Text item_type, IntWritable year) {
+		this.country = country;
+		this.item_type = item_type;
+		this.year = year;
+	}
+
+	/*
+	 * Initialization logic
+	 *  */
+	public SalesKey() {
+		this(new Text(), new Text(), new IntWritable());
+	}
+
+	/*
+	 * Setting the key in place, country and item_type are copied from their bytes in the parsed record
+	 * Mappers keep one key per task and set it for every record, the key is serialized when it is written
+	 * */
+	public void set(SalesCsvParser parser, int year) {
+		parser.getText(SalesCsvParser.COUNTRY, country);
+		parser.getText(SalesCsvParser.ITEM_TYPE, item_type);
+		this.year.set(year);
+	}
+
+	/*
+	 * Returning hashcode for country, item_type and year items
+	 * */
+	@Override
+	public int hashCode() {
+		return Objects.hash(country, item_type, year);
+	}
+
+	/*
+	 * Comparison logic with other object goes here
+	 * */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SalesKey other = (SalesKey) obj;
+		return Objects.equals(country, other.country) && Objects.equals(item_type, other.item_type)
+				&& Objects.equals(year, other.year);
+	}
+
+	/*
+	 * Writing the data to object
+	 * Layout is the vint prefixed country, the vint prefixed item_type and the year as a 4 byte int
+	 * */
+	public void write(DataOutput out) throws IOException {
+		this.country.write(out);
+		this.item_type.write(out);
+		this.year.write(out);
+	}
+
+	/*
+	 * Reading fields using DataInput
+	 *  */
+	public void readFields(DataInput in) throws IOException {
+		this.country.readFields(in);
+		this.item_type.readFields(in);
+		this.year.readFields(in);
+	}
+
+	/*
+	 * This does sorting for all the three different fields one by one in the order of mention
+	 * A field is only compared when all the fields before it are equal
+	 * */
+	public int compareTo(SalesKey other) {
+		if (other == null) {
+			return 0;
+		}
+
+		int result = country.compareTo(other.country);
+		if (result != 0) {
+			return result;
+		}
+		result = item_type.compareTo(other.item_type);
+		if (result != 0) {
+			return result;
+		}
+		return Integer.compare(year.get(), other.year.get());
+	}
+
+	/*
+	 * Raw comparator sorting serialized keys in the same order as compareTo, without deserializing them
+	 * Every job registers it for its own Sales class
+	 * */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator(Class<? extends SalesKey> keyClass) {
+			super(keyClass);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			try {
+				/*
+				 * Comparing country bytes
+				 * */
+				int prefix1 = WritableUtils.decodeVIntSize(b1[s1]);
+				int prefix2 = WritableUtils.decodeVIntSize(b2[s2]);
+				int length1 = readVInt(b1, s1);
+				int length2 = readVInt(b2, s2);
+				int result = compareBytes(b1, s1 + prefix1, length1, b2, s2 + prefix2, length2);
+				if (result != 0) {
+					return result;
+				}
+				s1 += prefix1 + length1;
+				s2 += prefix2 + length2;
+
+				/*
+				 * Comparing item_type bytes
+				 * */
+				prefix1 = WritableUtils.decodeVIntSize(b1[s1]);
+				prefix2 = WritableUtils.decodeVIntSize(b2[s2]);
+				length1 = readVInt(b1, s1);
+				length2 = readVInt(b2, s2);
+				result = compareBytes(b1, s1 + prefix1, length1, b2, s2 + prefix2, length2);
+				if (result != 0) {
+					return result;
+				}
+				s1 += prefix1 + length1;
+				s2 += prefix2 + length2;
+
+				/*
+				 * Comparing year
+				 * */
+				return Integer.compare(readInt(b1, s1), readInt(b2, s2));
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+	}
+}
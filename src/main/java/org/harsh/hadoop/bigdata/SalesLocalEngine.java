@@ -0,0 +1,542 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Answers the questions of SalesMapReduce1, 2, 3 and 4 in this process, without a job
+ *
+ * For daily files of up to a few GB the start of a job, the sort and the shuffle cost far more than the scan.
+ * The engine cuts every local csv file into byte ranges ending on line boundaries, maps each range from its
+ * FileChannel and scans the ranges in a fork/join pool. Every range is read as SalesMultiQuery reads a split,
+ * with the same parser, filters, skipped records and fixed point mode, into a Partial of the same mergeable
+ * aggregates the combiners use, and partials are merged two by two up the fork/join tree. The results are written
+ * to the -que-N directories in the layout of the single question jobs. Settings, all optional:
+ *     -D sales.local.threads=N        threads of the pool, the number of processors by default
+ *     -D sales.local.split.mb=8       size of the byte ranges
+ * The averages of question 1 are summed in another order than in a job, so with doubles they can differ from the
+ * job in their last digit; with -D sales.decimal=true the output is identical. Only csv input is read.
+ *
+ * Usage: SalesLocalEngine [--queries 1,2,3,4] [--item-type T] [--country C] [--year-range yyyy-yyyy] <input> <output>
+ *
+ * */
+public class SalesLocalEngine {
+
+	/*
+	 * Configuration keys of the engine
+	 * */
+	public static final String THREADS_KEY = "sales.local.threads";
+	public static final String SPLIT_MB_KEY = "sales.local.split.mb";
+	public static final int DEFAULT_SPLIT_MB = 8;
+
+	private static final int SCAN_BUFFER = 64 * 1024;
+
+	/*
+	 * Byte range of a file, starting at the beginning of a line and ending after a newline or at the end of the file
+	 * */
+	static class Range {
+		final File file;
+		final long start;
+		final long end;
+
+		Range(File file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/*
+	 * Aggregates of questions 1 to 3 for one (country, item_type, year) key
+	 * */
+	static class Cell {
+		final SumCountWritable unitPrice = new SumCountWritable();
+		int unitsSold;
+		final MinMaxWritable unitsRange = new MinMaxWritable();
+
+		void add(Cell other) {
+			unitPrice.add(other.unitPrice);
+			unitsSold += other.unitsSold;
+			unitsRange.add(other.unitsRange);
+		}
+	}
+
+	/*
+	 * Aggregates of a part of the input, the ordered profits of question 4 are kept in the engine of SalesMapper4
+	 * Partials of any parts merge to the same result as the combiner and reducer of every question.
+	 * */
+	public static class Partial {
+		final Map<SalesKey, Cell> cells = new HashMap<>();
+		final SalesTopN orderedProfits;
+		long records;
+		long malformedRecords;
+		long badOrderDates;
+		long filteredRecords;
+
+		public Partial(Configuration conf) {
+			orderedProfits = SalesTopN.newInstance(conf);
+		}
+
+		private Partial(int n) {
+			orderedProfits = new SalesTopN(n);
+		}
+
+		/*
+		 * Copy sharing nothing with this partial, which can go on taking records
+		 * */
+		public Partial copy() {
+			Partial copy = new Partial(orderedProfits.getN());
+			for (Map.Entry<SalesKey, Cell> entry : cells.entrySet()) {
+				SalesMapReduce1.Sales key = new SalesMapReduce1.Sales();
+				SalesLocalEngine.copy(entry.getKey(), key);
+				Cell cell = new Cell();
+				cell.add(entry.getValue());
+				copy.cells.put(key, cell);
+			}
+			copy.addProfits(this);
+			copy.records = records;
+			copy.malformedRecords = malformedRecords;
+			copy.badOrderDates = badOrderDates;
+			copy.filteredRecords = filteredRecords;
+			return copy;
+		}
+
+		/*
+		 * Merging another partial into this one, the other one can not be used afterwards
+		 * */
+		public void add(Partial other) {
+			for (Map.Entry<SalesKey, Cell> entry : other.cells.entrySet()) {
+				Cell cell = cells.get(entry.getKey());
+				if (cell == null) {
+					cells.put(entry.getKey(), entry.getValue());
+				}
+				else {
+					cell.add(entry.getValue());
+				}
+			}
+			addProfits(other);
+			records += other.records;
+			malformedRecords += other.malformedRecords;
+			badOrderDates += other.badOrderDates;
+			filteredRecords += other.filteredRecords;
+		}
+
+		/*
+		 * Offering the orders of every group of the other partial, read in heap order so that the other partial is left as it is
+		 * */
+		private void addProfits(Partial other) {
+			Text group = new Text();
+			for (int g = 0; g < other.orderedProfits.groupCount(); g++) {
+				other.orderedProfits.getGroup(g, group);
+				int target = orderedProfits.group(group);
+				for (int i = 0; i < other.orderedProfits.size(g); i++) {
+					orderedProfits.offer(target, other.orderedProfits.getOrderId(g, i), other.orderedProfits.getTotalProfit(g, i));
+				}
+			}
+		}
+
+		/*
+		 * Counting a record skipped by SalesFilter.check
+		 * */
+		void skip(SalesCounters counter) {
+			switch (counter) {
+			case FILTERED_RECORDS:
+				filteredRecords++;
+				break;
+			case MALFORMED_RECORDS:
+				malformedRecords++;
+				break;
+			case BAD_ORDER_DATES:
+				badOrderDates++;
+				break;
+			default:
+				throw new IllegalArgumentException("Partials do not count " + counter);
+			}
+		}
+
+		public long getRecords() {
+			return records;
+		}
+
+		public long getMalformedRecords() {
+			return malformedRecords;
+		}
+
+		public long getBadOrderDates() {
+			return badOrderDates;
+		}
+
+		public long getFilteredRecords() {
+			return filteredRecords;
+		}
+	}
+
+	/*
+	 * Reading records into a partial, each thread of the pool uses its own
+	 * Records are checked by SalesFilter.check like in the mappers, the steps are those of SalesQueryMapper, with counters kept in the partial
+	 * */
+	public static class Scanner {
+		final SalesCsvParser parser;
+		final SalesFilter filter;
+		final boolean[] enabled;
+		final boolean orderIds; //Set when the order ids of min and max are tracked for question 3
+		final int scale; //Number of fraction digits kept in fixed point mode, -1 when money columns are read as doubles
+		final int[] groupColumns;
+		final SalesMapReduce1.Sales sales = new SalesMapReduce1.Sales(); //Looking a key up without creating it, copied only for a new key
+		final SumCountWritable unitPrice = new SumCountWritable();
+		final MinMaxWritable unitsRange = new MinMaxWritable();
+		final Text line = new Text();
+		final Text field = new Text();
+		final Text group = new Text();
+		byte[] bytes = new byte[256];
+
+		public Scanner(Configuration conf) {
+			parser = SalesCsvParser.newInstance(conf);
+			filter = SalesFilter.newInstance(conf);
+			enabled = enabledQueries(conf);
+			orderIds = conf.getBoolean(MinMaxWritable.ORDER_IDS_KEY, false);
+			scale = SalesDecimal.getScale(conf);
+			groupColumns = SalesTopN.groupColumns(conf);
+		}
+
+		/*
+		 * Adding one line, without its line terminator, to the partial
+		 * */
+		public void add(Partial partial, byte[] record, int length) {
+			partial.records++;
+			line.set(record, 0, length);
+			int orderDate = SalesFilter.check(filter, parser, line);
+			if (orderDate < 0) {
+				partial.skip(SalesFilter.counter(orderDate));
+				return;
+			}
+			int orderYear = SalesOrderDate.year(orderDate);
+
+			if (enabled[SalesQueryValue.AVERAGE_UNIT_PRICE] || enabled[SalesQueryValue.TOTAL_UNITS_SOLD] || enabled[SalesQueryValue.MIN_MAX_UNITS_SOLD]) {
+				sales.set(parser, orderYear);
+				Cell cell = partial.cells.get(sales);
+				if (cell == null) {
+					SalesMapReduce1.Sales key = new SalesMapReduce1.Sales();
+					copy(sales, key);
+					cell = new Cell();
+					partial.cells.put(key, cell);
+				}
+				if (enabled[SalesQueryValue.AVERAGE_UNIT_PRICE]) {
+					if (scale < 0) {
+						unitPrice.set(parser.getDouble(SalesCsvParser.UNIT_PRICE), 1);
+					}
+					else {
+						unitPrice.setUnscaled(parser.getUnscaled(SalesCsvParser.UNIT_PRICE, scale), scale, 1);
+					}
+					cell.unitPrice.add(unitPrice);
+				}
+				if (enabled[SalesQueryValue.TOTAL_UNITS_SOLD] || enabled[SalesQueryValue.MIN_MAX_UNITS_SOLD]) {
+					int unitsSold = parser.getInt(SalesCsvParser.UNITS_SOLD);
+					cell.unitsSold += unitsSold;
+					if (orderIds) {
+						unitsRange.setValue(unitsSold, parser.getInt(SalesCsvParser.ORDER_ID));
+					}
+					else {
+						unitsRange.setValue(unitsSold);
+					}
+					cell.unitsRange.add(unitsRange);
+				}
+			}
+			if (enabled[SalesQueryValue.TOP_PROFITS]) {
+				SalesTopN.groupKey(parser, groupColumns, orderYear, field, group);
+				partial.orderedProfits.offer(partial.orderedProfits.group(group), parser.getInt(SalesCsvParser.ORDER_ID), SalesDecimal.getAmount(parser, SalesCsvParser.TOTAL_PROFIT, scale));
+			}
+		}
+
+		/*
+		 * Scanning the lines of a byte range of a file, mapped from its channel
+		 * A line is copied once, into a buffer that grows to the longest line; a "\r\n" ending is read as "\n" like LineRecordReader does
+		 * */
+		public void scan(Partial partial, Range range) throws IOException {
+			try (FileChannel channel = FileChannel.open(range.file.toPath(), StandardOpenOption.READ)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range.start, range.end - range.start);
+				int limit = buffer.limit();
+				int position = 0;
+				while (position < limit) {
+					int end = position;
+					while (end < limit && buffer.get(end) != '\n') {
+						end++;
+					}
+					int length = end - position;
+					if (length > bytes.length) {
+						bytes = new byte[Math.max(length, bytes.length * 2)];
+					}
+					buffer.position(position);
+					buffer.get(bytes, 0, length);
+					if (length > 0 && bytes[length - 1] == '\r') {
+						length--;
+					}
+					add(partial, bytes, length);
+					position = end + 1;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Scanning ranges from..to, halves are forked until a single range is left
+	 * */
+	static class ScanTask extends RecursiveTask<Partial> {
+		private static final long serialVersionUID = 1L;
+		private final Configuration conf;
+		private final List<Range> ranges;
+		private final int from;
+		private final int to;
+
+		ScanTask(Configuration conf, List<Range> ranges, int from, int to) {
+			this.conf = conf;
+			this.ranges = ranges;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Partial compute() {
+			if (to - from <= 1) {
+				Partial partial = new Partial(conf);
+				if (to > from) {
+					try {
+						new Scanner(conf).scan(partial, ranges.get(from));
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return partial;
+			}
+			int middle = (from + to) >>> 1;
+			ScanTask left = new ScanTask(conf, ranges, from, middle);
+			left.fork();
+			Partial right = new ScanTask(conf, ranges, middle, to).compute();
+			Partial partial = left.join();
+			partial.add(right); //Always left then right, so the result does not depend on which thread finishes first
+			return partial;
+		}
+	}
+
+	/*
+	 * Questions set in sales.queries, all four when it is not set
+	 * */
+	static boolean[] enabledQueries(Configuration conf) {
+		if (conf.get(SalesMultiQuery.QUERIES_KEY) == null) {
+			return new boolean[] { false, true, true, true, true };
+		}
+		return SalesMultiQuery.enabledQueries(conf);
+	}
+
+	/*
+	 * Files of the input, a directory gives its files without the hidden ones starting with _ or . as FileInputFormat does
+	 * */
+	static List<File> inputFiles(File input) throws IOException {
+		if (input.isFile()) {
+			return Collections.singletonList(input);
+		}
+		File[] files = input.listFiles(file -> file.isFile() && !file.getName().startsWith("_") && !file.getName().startsWith("."));
+		if (files == null) {
+			throw new IOException("Input path " + input + " does not exist");
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+
+	/*
+	 * Cutting the files into ranges of about splitBytes, each moved forward to the end of the line it falls into
+	 * */
+	static List<Range> split(List<File> files, long splitBytes) throws IOException {
+		List<Range> ranges = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+		for (File file : files) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long length = channel.size();
+				long start = 0;
+				while (start < length) {
+					long end = start + splitBytes;
+					if (end >= length) {
+						end = length;
+					}
+					else {
+						end = lineEnd(channel, buffer, end, length);
+					}
+					ranges.add(new Range(file, start, end));
+					start = end;
+				}
+			}
+		}
+		return ranges;
+	}
+
+	/*
+	 * Position after the first newline at or after position
+	 * */
+	private static long lineEnd(FileChannel channel, ByteBuffer buffer, long position, long length) throws IOException {
+		while (position < length) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return length;
+	}
+
+	/*
+	 * Reading the local csv file, or directory of csv files, into one partial
+	 * */
+	public static Partial run(Configuration conf, File input) throws IOException {
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false) || conf.getBoolean(SalesDictionary.ENCODED_KEY, false)) {
+			throw new IllegalArgumentException("SalesLocalEngine only reads csv, without dictionary encoding");
+		}
+		long splitBytes = conf.getLong(SPLIT_MB_KEY, DEFAULT_SPLIT_MB) * 1024 * 1024;
+		if (splitBytes <= 0 || splitBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(SPLIT_MB_KEY + " has to be between 1 and 2047");
+		}
+		List<Range> ranges = split(inputFiles(input), splitBytes);
+		ForkJoinPool pool = new ForkJoinPool(conf.getInt(THREADS_KEY, Runtime.getRuntime().availableProcessors()));
+		try {
+			return pool.invoke(new ScanTask(conf, ranges, 0, ranges.size()));
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Writing the enabled questions to the -que-N directories, one part file each, sorted as the single question jobs sort them
+	 * */
+	public static void write(Configuration conf, Partial result, boolean[] enabled, String output) throws IOException {
+		List<SalesKey> keys = new ArrayList<>(result.cells.keySet());
+		Collections.sort(keys);
+		SalesMapReduce2.Sales sales2 = new SalesMapReduce2.Sales();
+		SalesMapReduce3.Sales sales3 = new SalesMapReduce3.Sales();
+		for (int query = 1; query <= 4; query++) {
+			if (!enabled[query]) {
+				continue;
+			}
+			Path dir = new Path(output + "-" + SalesMultiQuery.queryDirectory(query));
+			FileSystem fs = dir.getFileSystem(conf);
+			try (OutputStream out = fs.create(new Path(dir, "part-r-00000"), false)) {
+				if (query == 4) {
+					writeProfits(result.orderedProfits, out);
+				}
+				for (int k = 0; query < 4 && k < keys.size(); k++) {
+					SalesKey key = keys.get(k);
+					Cell cell = result.cells.get(key);
+					switch (query) {
+					case 1:
+						writeLine(out, key, new DoubleWritable(cell.unitPrice.getAverage()));
+						break;
+					case 2:
+						copy(key, sales2);
+						writeLine(out, sales2, cell.unitsSold);
+						break;
+					default:
+						copy(key, sales3);
+						writeLine(out, sales3, cell.unitsRange);
+					}
+				}
+			}
+			fs.create(new Path(dir, FileOutputCommitter.SUCCEEDED_FILE_NAME)).close();
+		}
+	}
+
+	/*
+	 * Writing every group of question 4 in the order of its Text key, orders by descending total_profit
+	 * */
+	private static void writeProfits(SalesTopN orderedProfits, OutputStream out) throws IOException {
+		List<Text> groups = new ArrayList<>();
+		for (int g = 0; g < orderedProfits.groupCount(); g++) {
+			Text group = new Text();
+			orderedProfits.getGroup(g, group);
+			groups.add(group);
+		}
+		Collections.sort(groups);
+		SalesMapReduce4.Sales sales4 = new SalesMapReduce4.Sales();
+		for (Text group : groups) {
+			int g = orderedProfits.group(group);
+			int count = orderedProfits.sort(g);
+			for (int rank = 0; rank < count; rank++) {
+				sales4.orderId = orderedProfits.getOrderId(g, rank);
+				sales4.totalProfit = orderedProfits.getTotalProfit(g, rank);
+				writeLine(out, group, sales4);
+			}
+		}
+	}
+
+	/*
+	 * Key and value separated by a tab, as TextOutputFormat writes them
+	 * */
+	private static void writeLine(OutputStream out, Object key, Object value) throws IOException {
+		out.write((key + "\t" + value + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void copy(SalesKey key, SalesKey sales) {
+		sales.country.set(key.country);
+		sales.item_type.set(key.item_type);
+		sales.year.set(key.year.get());
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration(); //Hadoop config, only read for the settings
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.local.threads=8
+		args = SalesFilter.parseArguments(conf, args);
+		SalesDecimal.getScale(conf);
+
+		args = SalesMultiQuery.parseQueries(conf, args);
+		if (args.length != 2) {
+			System.err.println("Usage: SalesLocalEngine [--queries 1,2,3,4] [--item-type T] [--country C] [--year-range yyyy-yyyy] <input> <output>");
+			System.exit(2);
+		}
+		boolean[] enabled = enabledQueries(conf);
+		String output = args[1];
+		for (int query = 1; query <= 4; query++) {
+			Path target = new Path(output + "-" + SalesMultiQuery.queryDirectory(query));
+			if (enabled[query] && target.getFileSystem(conf).exists(target)) {
+				throw new IOException("Output directory " + target + " already exists");
+			}
+		}
+
+		long start = System.nanoTime();
+		Partial result = run(conf, new File(new Path(args[0]).toUri().getPath()));
+		write(conf, result, enabled, output);
+		System.err.println(String.format("%d records, %d malformed, %d bad order dates, %d filtered in %d ms", result.records,
+				result.malformedRecords, result.badOrderDates, result.filteredRecords, (System.nanoTime() - start) / 1000000));
+	}
+}
@@ -1,24 +1,22 @@
 package org.harsh.hadoop.bigdata;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.File;
 import java.io.IOException;
-import java.util.Objects;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 /*
  *
@@ -30,93 +28,27 @@ public class SalesMapReduce1 {
 	 * Logic for sorting country, item_type and year field
 	 * 
 	 * */
-	private static class Sales implements WritableComparable<Sales> {
-		Text country;
-		Text item_type;
-		IntWritable year;
+	static class Sales extends SalesKey {
 		
 		/*
-		 * Returning hashcode for country, item_type and year items
+		 * Registering the raw comparator so that sort and merge compare the serialized keys
 		 * */
-		@Override
-		public int hashCode() {
-			return Objects.hash(country, item_type, year);
-		}
-		
-		/*
-		 * Comparison logic with other object for sorting goes here
-		 * */
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			Sales other = (Sales) obj;
-			return Objects.equals(country, other.country) && Objects.equals(item_type, other.item_type)
-					&& Objects.equals(year, other.year);
+		static {
+			WritableComparator.define(Sales.class, new SalesKey.Comparator(Sales.class));
 		}
 		
 		/*
 		 * Constructor logic 
 		 * */
 		public Sales(Text country, Text item_type, IntWritable year) {
-			this.country = country;
-			this.item_type = item_type;
-			this.year = year;
+			super(country, item_type, year);
 		}
 		
 		/*
 		 * Initialization logic
 		 *  */
 		public Sales() {
-			this.country = new Text();
-			this.item_type = new Text();
-			this.year = new IntWritable();
-		}
-		
-		/*
-		 * Writing the data to object
-		 * */
-		public void write(DataOutput out) throws IOException {
-			this.country.write(out);
-			this.item_type.write(out);
-			this.year.write(out);
-		}
-		
-		/*
-		 * Reading fields using DataInput
-		 *  */
-		public void readFields(DataInput in) throws IOException {
-			this.country.readFields(in);
-			this.item_type.readFields(in);
-			this.year.readFields(in);
-		}
-		
-		/*
-		 * This does sorting for all the three different fields one by one in the order of mention
-		 * */
-		public int compareTo(Sales pop) {
-			if (pop == null) {
-				return 0;
-			}
-			
-			int countryCount = country.compareTo(pop.country);
-			int itemTypeCount = item_type.compareTo(pop.item_type);
-			int yearCount = year.compareTo(pop.year);
-			
-			if(countryCount != 0) {
-				return countryCount;
-			}
-			
-			else if (itemTypeCount != 0) {
-				return itemTypeCount;
-			}
-			else {
-				return yearCount;
-			}
+			super();
 		}
 		
 		/*
@@ -128,55 +60,137 @@ public class SalesMapReduce1 {
 		}
 	}
 	
-	/*
-	 * Custom partitioner created here and Partitioning data based on the hashkey
-	 * */
-	public class SalesPartitioner extends Partitioner<Sales, DoubleWritable> {
-		
-	    @Override
-	    public int getPartition(Sales key, DoubleWritable value, int i) {
-	        return Math.abs(key.hashCode()) % i;
-	    }
-	}
-	
 	/*
 	 * Mapper implementation done here
 	 * */
-	public static class SalesMapper1 extends Mapper<Object, Text, Sales, DoubleWritable> {
+	public static class SalesMapper1 extends Mapper<Object, Writable, WritableComparable<?>, SumCountWritable> {
 		/*
-		 * Objects of SalesGetCsvDatac, csv fields and output for mapper created here
+		 * Objects of SalesCsvParser, csv fields and output for mapper created here
 		 * */
-		SalesGetCsvData csv = new SalesGetCsvData();
-		Sales sales = new Sales();
-		Text countryText = new Text();
-		Text itemTypeText = new Text();
-		IntWritable year = new IntWritable();
-		DoubleWritable unitPrice = new DoubleWritable();
+		SalesCsvParser parser;
+		SalesFilter filter; //Only created when --item-type, --country or --year-range is given
+		SalesDictionary dictionary; //Only loaded when keys are dictionary encoded
+		SalesAggregateTable table; //Only created when in-mapper aggregation is enabled
+		int scale; //Number of fraction digits kept in fixed point mode, -1 when unit_price is read as a double
+		LongWritable encodedKey = new LongWritable();
+		Sales sales = new Sales(); //Key of every record of the task, set in place
+		SumCountWritable unitPrice = new SumCountWritable();
 		
-        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-        	/*
-			 * Getting field values using getCsvData method from SalesGetCsv class
+		public void setup(Context context) throws IOException {
+			/*
+			 * Creating the csv parser in the mode set in job configuration
+			 * */
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+			if (context.getConfiguration().getBoolean(SalesDictionary.ENCODED_KEY, false)) {
+				dictionary = SalesDictionary.load(context.getConfiguration());
+			}
+			table = SalesAggregateTable.newInstance(context.getConfiguration());
+			scale = SalesDecimal.getScale(context.getConfiguration());
+		}
+
+        public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+			int orderYear = SalesOrderDate.year(orderDate);
+			
+			/*
+			 * Setting the values for fields, country and item_type are copied straight from the record bytes
+			 * In fixed point mode unit_price is parsed into a long of minor units and summed exactly
 			 * */
-        	String[] csvData = csv.getCsvData(value);
-			String country = csv.getCountry(csvData);
-			String itemType = csv.getItemType(csvData);
-			int orderYear = csv.getOrderDate(csvData);
-			double unitPriceAmount = csv.getUnitPrice(csvData);
+			sales.set(parser, orderYear);
+			if (scale < 0) {
+				unitPrice.set(parser.getDouble(SalesCsvParser.UNIT_PRICE), 1);
+			}
+			else {
+				unitPrice.setUnscaled(parser.getUnscaled(SalesCsvParser.UNIT_PRICE, scale), scale, 1);
+			}
 			
 			/*
-			 * Setting the values for fields
+			 * In-mapper mode only adds the value to the aggregate table, which is written out when full and in cleanup
 			 * */
-			countryText.set(new Text(country));
-			itemTypeText.set(new Text(itemType));
-			year.set(orderYear);
-			unitPrice.set(unitPriceAmount);
+			if (table != null) {
+				if (scale < 0) {
+					table.add(sales.country, sales.item_type, orderYear, unitPrice.getSum());
+				}
+				else {
+					table.addUnscaled(sales.country, sales.item_type, orderYear, unitPrice.getUnscaledSum());
+				}
+				if (table.isFull()) {
+					flush(context);
+				}
+				return;
+			}
 			
 			/*
 			 * Written to context are two fields
 			 * 1. Sales object comprises of three fields: country, item_type and year. This is the key to reducer
-			 * 2. Unit price this is the value to reducer
+			 * 2. Unit price with a count of one, this is the value to reducer
 			 * */
-			context.write(new Sales(countryText, itemTypeText, year),  unitPrice);
+			write(context, unitPrice);
+		}
+		
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			if (table != null) {
+				flush(context);
+			}
+		}
+		
+		/*
+		 * Writing every key of the aggregate table and clearing it
+		 * */
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (int slot = table.first(); slot >= 0; slot = table.next(slot)) {
+				table.getCountry(slot, sales.country);
+				table.getItemType(slot, sales.item_type);
+				sales.year.set(table.getYear(slot));
+				if (scale < 0) {
+					unitPrice.set(table.getSum(slot), table.getCount(slot));
+				}
+				else {
+					unitPrice.setUnscaled(table.getTotal(slot), scale, table.getCount(slot));
+				}
+				write(context, unitPrice);
+			}
+			table.clear();
+		}
+		
+		/*
+		 * Writing the value under the Sales key, or under the packed key in encoded mode
+		 * */
+		private void write(Context context, SumCountWritable value) throws IOException, InterruptedException {
+			if (dictionary == null) {
+				context.write(sales, value);
+				return;
+			}
+			
+			/*
+			 * In encoded mode the key is shuffled as the packed codes of country and item_type with the year
+			 * */
+			long code = dictionary.encode(sales.country, sales.item_type, sales.year.get());
+			if (code < 0) {
+				context.getCounter(SalesCounters.UNKNOWN_DICTIONARY_ENTRIES).increment(1);
+				return;
+			}
+			encodedKey.set(code);
+			context.write(encodedKey, value);
+		}
+	}
+	
+	/*
+	 * Combiner merging the partial sums and counts of unit price of a key
+	 * 
+	 * */
+	public static class SalesCombiner1 extends Reducer<WritableComparable<?>, SumCountWritable, WritableComparable<?>, SumCountWritable> {
+		private SumCountWritable result = new SumCountWritable();
+		public void reduce(WritableComparable<?> key, Iterable<SumCountWritable> values, Context context)  throws IOException, InterruptedException {
+			result.set(0, 0);
+			for(SumCountWritable val : values) {
+				result.add(val);
+			}
+			context.write(key, result);
 		}
 	}
 	
@@ -184,47 +198,64 @@ public class SalesMapReduce1 {
 	 * Implementation of reducer goes here
 	 * 
 	 * */
-	public static class SalesReducer1 extends Reducer<Sales, DoubleWritable, Sales, DoubleWritable> {
-		public void reduce(Sales key, Iterable<DoubleWritable> values, Context context)  throws IOException, InterruptedException {
-		    double unitPrice = 0; 
-		    int count = 0;
+	public static class SalesReducer1 extends Reducer<WritableComparable<?>, SumCountWritable, WritableComparable<?>, DoubleWritable> {
+		private SumCountWritable total = new SumCountWritable();
+		private DoubleWritable averagePrice = new DoubleWritable();
+		public void reduce(WritableComparable<?> key, Iterable<SumCountWritable> values, Context context)  throws IOException, InterruptedException {
+		    total.set(0, 0);
 		    
 		    /*
-		     * Sales is the key and unit_price as the variable is the value where iteration is performed
+		     * Sales is the key and the partial sums and counts of unit_price are the values where iteration is performed
 		     * */
-		    for(DoubleWritable val : values) {
-		    	count++;
-		    	unitPrice += val.get();
+		    for(SumCountWritable val : values) {
+		    	total.add(val);
 		    }
 		    
 			/*
 			 * Logic for average calculation
 			 * */
-			double averagePrice = unitPrice/count;
+			averagePrice.set(total.getAverage());
 			
 			/*
 			 * Context has two fields written
 			 * 1. Sales object that comes as the output from mapper is written as the first field
 			 * 2. Value of Average unit price
 			 *  */
-			context.write(key, new DoubleWritable(averagePrice));
-			
+			context.write(key, averagePrice);
 		}
 	}
 	
-	public static void main(String[] args) throws Exception {
-		//Everytime new directory is created for output hence, deleting the existing directory
-		FileUtils.deleteDirectory(new File("/home/hadoop/eclipse/geosales_mapreduce/output-que-1"));
-		Configuration conf =  new Configuration(); //Hadoop job config
+	/*
+	 * Setting up the job from the arguments left after the generic options, so that SalesPerfHarness can run it in process
+	 * */
+	public static Job createJob(Configuration conf, String[] args) throws Exception {
+		args = SalesFilter.parseArguments(conf, args); //Optional --item-type, --country and --year-range filters, for example --item-type Cereal --year-range 2012-2014
+		SalesDecimal.getScale(conf); //Optional -D sales.decimal=true reads money as exact fixed point, failing here on a bad sales.decimal.scale rather than in every task
 		Job job = Job.getInstance(conf, "SalesMapReduce1"); //Hadoop job config instance created
 		job.setJarByClass(org.harsh.hadoop.bigdata.SalesMapReduce1.class); //Name of the main class for creating the JAR file
 		job.setMapperClass(SalesMapper1.class); //Name of the mapper class that executes the mapping logic
+		job.setCombinerClass(SalesCombiner1.class); //Partial sums and counts with same keys are merged here and passed to the reducer
 		job.setReducerClass(SalesReducer1.class); //Name of the reducer class that executes the reducer logic
 		job.setOutputKeyClass(Sales.class); //DataType of output key emitted. Here Sales class object emitted that consists of country, item, year
+		job.setMapOutputValueClass(SumCountWritable.class); //DataType of value emitted by mapper and combiner, the partial sum and count of unit price
 		job.setOutputValueClass(DoubleWritable.class); //DataType of output value emitted. Here DoubleWritable as average is of double type
-		job.setPartitionerClass(SalesPartitioner.class); //Invoking custom partitioner class
+		job.setPartitionerClass(SalesPartitioner.class); //Invoking custom partitioner class, on country and item_type
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.COUNTRY, SalesCsvParser.ITEM_TYPE, SalesCsvParser.ORDER_DATE, SalesCsvParser.UNIT_PRICE);
+		}
+		if (conf.getBoolean(SalesDictionary.ENCODED_KEY, false)) {
+			SalesDictionary.configure(job, new Path(args[0]), new Path(args[1] + "-dictionary")); //Encoded mode, builds the dictionary unless sales.dictionary.path is given
+		}
+		SalesPartitioner.configureSampling(job, new Path(args[0]), new Path(args[1] + "-partitions"));
 		FileInputFormat.addInputPath(job, new Path(args[0])); //First Argument where we pass the csv file
 		FileOutputFormat.setOutputPath(job, new Path(args[1] + "-que-1")); //Second argument where we pass absolute path of the location with folder name. Here -que-1 is output since it is answer of question 1
+		return job;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf =  new Configuration(); //Hadoop job config
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.csv.quoted=true are applied to the job config
+		Job job = createJob(conf, args); //Filters, mappers, reducers, partitioning and the input and output paths
 		System.exit(job.waitForCompletion(true) ? 0 : 1); //Completion of job tracked here
 	}
 }
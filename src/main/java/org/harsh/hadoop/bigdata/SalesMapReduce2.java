@@ -1,23 +1,21 @@
 package org.harsh.hadoop.bigdata;
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.File;
 import java.io.IOException;
-import java.util.Objects;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 
 /*
@@ -31,94 +29,27 @@ public class SalesMapReduce2 {
 	 * Logic for sorting country, item_type and year field
 	 * 
 	 * */
-	private static class Sales implements WritableComparable<Sales> {
-		Text country;
-		Text item_type;
-		IntWritable year;
+	static class Sales extends SalesKey {
 		
 		/*
-		 * Returning hashcode for country, item_type and year items
+		 * Registering the raw comparator so that sort and merge compare the serialized keys
 		 * */
-		@Override
-		public int hashCode() {
-			return Objects.hash(country, item_type, year);
+		static {
+			WritableComparator.define(Sales.class, new SalesKey.Comparator(Sales.class));
 		}
 		
-		/*
-		 * Comparison logic with other object for sorting goes here
-		 * */
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			Sales other = (Sales) obj;
-			return Objects.equals(country, other.country) && Objects.equals(item_type, other.item_type)
-					&& Objects.equals(year, other.year);
-		}
-
 		/*
 		 * Constructor logic 
 		 * */
 		public Sales(Text country, Text item_type, IntWritable year) {
-			this.country = country;
-			this.item_type = item_type;
-			this.year = year;
-			
+			super(country, item_type, year);
 		}
 		
 		/*
 		 * Initialization logic
 		 *  */
 		public Sales() {
-			this.country = new Text();
-			this.item_type = new Text();
-			this.year = new IntWritable();
-		}
-
-		/*
-		 * Writing the data to object
-		 * */
-		public void write(DataOutput out) throws IOException {
-			this.country.write(out);
-			this.item_type.write(out);
-			this.year.write(out);
-		}
-		
-		/*
-		 * Reading fields using DataInput
-		 *  */
-		public void readFields(DataInput in) throws IOException {
-			this.country.readFields(in);
-			this.item_type.readFields(in);
-			this.year.readFields(in);
-		}
-		
-		/*
-		 * This does sorting for all the three different fields one by one in the order of mention
-		 * */
-		public int compareTo(Sales pop) {
-			if (pop == null) {
-				return 0;
-			}
-			
-			int countryCount = country.compareTo(pop.country);
-			int itemTypeCount = item_type.compareTo(pop.item_type);
-			int yearCount = year.compareTo(pop.year);
-			
-			if(countryCount != 0) {
-				return countryCount;
-			}
-			
-			else if (itemTypeCount != 0) {
-				return itemTypeCount;
-			}
-			else {
-				return yearCount;
-			}
+			super();
 		}
 		
 		/*
@@ -130,55 +61,105 @@ public class SalesMapReduce2 {
 		}
 	}
 	
-	/*
-	 * Custom partitioner created here and Partitioning data based on the hashkey
-	 * 
-	 * */
-	public class SalesPartitioner extends Partitioner<Sales, DoubleWritable> {
-		
-	    @Override
-	    public int getPartition(Sales key, DoubleWritable value, int i) {
-	        return Math.abs(key.hashCode()) % i;
-	    }
-	}
-	
 	/*
 	 * Mapper implementation done here
 	 * */
-	public static class SalesMapper2 extends Mapper<Object, Text, Sales, IntWritable> {
+	public static class SalesMapper2 extends Mapper<Object, Writable, WritableComparable<?>, IntWritable> {
 		/*
-		 * Objects of SalesGetCsvDatac, csv fields and output for mapper created here
+		 * Objects of SalesCsvParser, csv fields and output for mapper created here
 		 * */
-		SalesGetCsvData csv = new SalesGetCsvData();
-		Sales sales = new Sales();
-		Text countryText = new Text();
-		Text itemTypeText = new Text();
-		IntWritable year = new IntWritable();
+		SalesCsvParser parser;
+		SalesFilter filter; //Only created when --item-type, --country or --year-range is given
+		SalesDictionary dictionary; //Only loaded when keys are dictionary encoded
+		SalesAggregateTable table; //Only created when in-mapper aggregation is enabled
+		LongWritable encodedKey = new LongWritable();
+		Sales sales = new Sales(); //Key of every record of the task, set in place
 		IntWritable unitsSold = new IntWritable();
 			
-		public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+		public void setup(Context context) throws IOException {
 			/*
-			 * Getting field values using getCsvData method from SalesGetCsv class
+			 * Creating the csv parser in the mode set in job configuration
 			 * */
-        	String[] csvData = csv.getCsvData(value);
-			String country = csv.getCountry(csvData);
-			String itemType = csv.getItemType(csvData);
-			int orderYear = csv.getOrderDate(csvData);
-			int unitSold = csv.getUnitsSold(csvData);countryText.set(new Text(country));
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+			if (context.getConfiguration().getBoolean(SalesDictionary.ENCODED_KEY, false)) {
+				dictionary = SalesDictionary.load(context.getConfiguration());
+			}
+			table = SalesAggregateTable.newInstance(context.getConfiguration());
+		}
+
+		public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+			int orderYear = SalesOrderDate.year(orderDate);
+			int unitSold = parser.getInt(SalesCsvParser.UNITS_SOLD);
 			
 			/*
-			 * Setting the values for fields
+			 * Setting the values for fields, country and item_type are copied straight from the record bytes
 			 * */
-			itemTypeText.set(new Text(itemType));
-			year.set(orderYear);
+			sales.set(parser, orderYear);
 			unitsSold.set(unitSold);
 			
+			/*
+			 * In-mapper mode only adds the value to the aggregate table, which is written out when full and in cleanup
+			 * */
+			if (table != null) {
+				table.add(sales.country, sales.item_type, orderYear, unitSold);
+				if (table.isFull()) {
+					flush(context);
+				}
+				return;
+			}
+			
 			/*
 			 * Written to context are two fields
 			 * 1. Sales object comprises of three fields: country, item_type and year. This is the key to reducer
 			 * 2. Units sold this is the value to reducer
 			 * */
-			context.write(new Sales(countryText, itemTypeText, year),  unitsSold);
+			write(context, unitsSold);
+		}
+		
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			if (table != null) {
+				flush(context);
+			}
+		}
+		
+		/*
+		 * Writing every key of the aggregate table and clearing it
+		 * */
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (int slot = table.first(); slot >= 0; slot = table.next(slot)) {
+				table.getCountry(slot, sales.country);
+				table.getItemType(slot, sales.item_type);
+				sales.year.set(table.getYear(slot));
+				unitsSold.set((int) table.getTotal(slot));
+				write(context, unitsSold);
+			}
+			table.clear();
+		}
+		
+		/*
+		 * Writing the value under the Sales key, or under the packed key in encoded mode
+		 * */
+		private void write(Context context, IntWritable value) throws IOException, InterruptedException {
+			if (dictionary == null) {
+				context.write(sales, value);
+				return;
+			}
+			
+			/*
+			 * In encoded mode the key is shuffled as the packed codes of country and item_type with the year
+			 * */
+			long code = dictionary.encode(sales.country, sales.item_type, sales.year.get());
+			if (code < 0) {
+				context.getCounter(SalesCounters.UNKNOWN_DICTIONARY_ENTRIES).increment(1);
+				return;
+			}
+			encodedKey.set(code);
+			context.write(encodedKey, value);
 		}
 	}
 	
@@ -186,9 +167,9 @@ public class SalesMapReduce2 {
 	 * Implementation of reducer goes here
 	 * 
 	 * */
-	public static class SalesReducer2 extends Reducer<Sales, IntWritable, Sales, IntWritable> {
+	public static class SalesReducer2 extends Reducer<WritableComparable<?>, IntWritable, WritableComparable<?>, IntWritable> {
 		private IntWritable result = new IntWritable();
-		public void reduce(Sales key, Iterable<IntWritable> values, Context context)  throws IOException, InterruptedException {
+		public void reduce(WritableComparable<?> key, Iterable<IntWritable> values, Context context)  throws IOException, InterruptedException {
 		    int unitSold = 0; 
 		    
 		    /*
@@ -212,10 +193,11 @@ public class SalesMapReduce2 {
 		}
 	}
 	
-	public static void main(String[] args) throws Exception {
-		//Everytime new directory is created for output hence, deleting the existing directory
-		FileUtils.deleteDirectory(new File("/home/hadoop/eclipse/geosales_mapreduce/output-que-2"));
-		Configuration conf =  new Configuration(); //Hadoop job config
+	/*
+	 * Setting up the job from the arguments left after the generic options, so that SalesPerfHarness can run it in process
+	 * */
+	public static Job createJob(Configuration conf, String[] args) throws Exception {
+		args = SalesFilter.parseArguments(conf, args); //Optional --item-type, --country and --year-range filters, for example --item-type Cereal --year-range 2012-2014
 		Job job = Job.getInstance(conf, "SalesMapReduce2"); //Hadoop job config instance created
 		job.setJarByClass(org.harsh.hadoop.bigdata.SalesMapReduce2.class); //Name of the main class for creating the JAR file
 		job.setMapperClass(SalesMapper2.class); //Name of the mapper class that executes the mapping logic
@@ -223,9 +205,23 @@ public class SalesMapReduce2 {
 		job.setReducerClass(SalesReducer2.class); //Name of the reducer class that executes the reducer logic
 		job.setOutputKeyClass(Sales.class); //DataType of output key emitted. Here Sales class object emitted that consists of country, item, year
 		job.setOutputValueClass(IntWritable.class);//DataType of output value emitted. Here IntWritable as sum of units sold is of integer type
-		job.setPartitionerClass(SalesPartitioner.class); //Invoking custom partitioner class
+		job.setPartitionerClass(SalesPartitioner.class); //Invoking custom partitioner class, on country and item_type
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.COUNTRY, SalesCsvParser.ITEM_TYPE, SalesCsvParser.ORDER_DATE, SalesCsvParser.UNITS_SOLD);
+		}
+		if (conf.getBoolean(SalesDictionary.ENCODED_KEY, false)) {
+			SalesDictionary.configure(job, new Path(args[0]), new Path(args[1] + "-dictionary")); //Encoded mode, builds the dictionary unless sales.dictionary.path is given
+		}
+		SalesPartitioner.configureSampling(job, new Path(args[0]), new Path(args[1] + "-partitions"));
 		FileInputFormat.addInputPath(job, new Path(args[0])); //First Argument where we pass the csv file
 		FileOutputFormat.setOutputPath(job, new Path(args[1] + "-que-2")); //Second argument where we pass absolute path of the location with folder name. Here -que-2 is output since it is answer of question 2
+		return job;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf =  new Configuration(); //Hadoop job config
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.csv.quoted=true are applied to the job config
+		Job job = createJob(conf, args); //Filters, mappers, reducers, partitioning and the input and output paths
 		System.exit(job.waitForCompletion(true) ? 0 : 1); //Completion of job tracked here
 	}
 }
@@ -2,41 +2,43 @@ package org.harsh.hadoop.bigdata;
 
 import java.io.DataInput;
 import java.io.DataOutput;
-import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
-import java.util.TreeSet;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
 
 /*
  *
  * Question: What are the top 10 order id for a given year by the total_profit.
+ * N and the grouping columns are set with -D sales.topn.n=10 and -D sales.topn.group.by=year,region
+ * With -D sales.topn.secondary.sort=true the ranking is left to the shuffle sort, see SalesProfitKey
  *
  * */
 
 
 public class SalesMapReduce4 {
 	
-	static final int topN = 10; //Finding the top 10 records for every year
+	/*
+	 * Configuration key turning on the secondary sort mode
+	 * */
+	public static final String SECONDARY_SORT_KEY = "sales.topn.secondary.sort";
 	
 	/*
 	 * Logic for sorting orderId and total_profit field
 	 * 
 	 * */
-	private static class Sales implements WritableComparable<Sales> { 
+	static class Sales implements WritableComparable<Sales> { 
 		int orderId;
 		double totalProfit;
 		
@@ -124,117 +126,227 @@ public class SalesMapReduce4 {
 	/*
 	 * Mapper implementation done here
 	 * */
-	public static class SalesMapper4 extends Mapper<Object, Text, IntWritable, Sales> {
+	public static class SalesMapper4 extends Mapper<Object, Writable, Text, Sales> {
 		/*
-		 * HashMap to store the ordered profits for all the years
+		 * Top N engine keeping the ordered profits of every group in bounded heaps
 		 * */
-		private HashMap<Integer, TreeSet<Sales>> orderedProfitsOfAllYears =  new HashMap<Integer, TreeSet<Sales>>();
+		SalesTopN orderedProfits;
+		int[] groupColumns;
 		/*
-		 * Object of SalesGetCsvData for mapper created here
+		 * Object of SalesCsvParser for mapper created here
 		 * */
-		SalesGetCsvData csv = new SalesGetCsvData();
+		SalesCsvParser parser;
+		SalesFilter filter; //Only created when --item-type, --country or --year-range is given
+		int scale; //Number of fraction digits kept in fixed point mode, -1 when total_profit is read as a double
+		Text field = new Text();
+		Text group = new Text();
+		Sales sale = new Sales();
 		
-		public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
-			/*
-			 * Getting field values using getCsvData method from SalesGetCsv class
-			 * */
-        	String[] csvData = csv.getCsvData(value);
-			int year = csv.getOrderDate(csvData);
-			double totalProfit = csv.getTotalProfit(csvData);
-			int orderId = csv.getOrderId(csvData);
-			
+		public void setup(Context context) {
 			/*
-			 * Adding entries to hashmap
-			 * Then creating TreeSet object to get the ordered profits as per year and since a set, it is unique
+			 * Creating the csv parser and the top N engine in the mode set in job configuration
 			 * */
-			orderedProfitsOfAllYears.putIfAbsent(year, new TreeSet<>());
-			TreeSet<Sales> orderedProfits = orderedProfitsOfAllYears.get(year);
-			
-			/*
-			 * Since we have to remove the top 10 records, when added one extra after 10, it is removed
-			 * */
-			if(orderedProfits.size() >= topN) {
-				orderedProfits.remove(orderedProfits.first());
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+			orderedProfits = SalesTopN.newInstance(context.getConfiguration());
+			groupColumns = SalesTopN.groupColumns(context.getConfiguration());
+			scale = SalesDecimal.getScale(context.getConfiguration());
+		}
+
+		public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
 			}
+			int year = SalesOrderDate.year(orderDate);
+			double totalProfit = SalesDecimal.getAmount(parser, SalesCsvParser.TOTAL_PROFIT, scale);
+			int orderId = parser.getInt(SalesCsvParser.ORDER_ID);
 			
 			/*
-			 * Adding unique ordered profits to the treemap
+			 * Offering the order to the heap of its group, it is dropped with one compare when the heap is full
+			 * and the order does not rank above the weakest one kept
 			 * */
-			orderedProfits.add(new Sales(orderId, totalProfit));
+			SalesTopN.groupKey(parser, groupColumns, year, field, group);
+			orderedProfits.offer(orderedProfits.group(group), orderId, totalProfit);
 		}
 		
 		public void cleanup(Context context) throws IOException, InterruptedException {
 			/*
-			 * Fetching entries from HashMap and adding to the context
+			 * Writing the top N of every group seen by this mapper
 			 * This output of mapper would be served as input to reducer
 			 * */
-			for (Map.Entry<Integer, TreeSet<Sales>> entry : orderedProfitsOfAllYears.entrySet()) {
-				TreeSet<Sales> sales = entry.getValue();
-				int year = entry.getKey();
-				for (Sales sale: sales) {
-					context.write(new IntWritable(year), sale); 
+			for (int g = 0; g < orderedProfits.groupCount(); g++) {
+				orderedProfits.getGroup(g, group);
+				int count = orderedProfits.sort(g);
+				for (int rank = 0; rank < count; rank++) {
+					sale.orderId = orderedProfits.getOrderId(g, rank);
+					sale.totalProfit = orderedProfits.getTotalProfit(g, rank);
+					context.write(group, sale);
 				}
-		    }
+			}
+			orderedProfits.clear();
 		}
 	}
 	
-	public static class SalesReducer4 extends Reducer<IntWritable, Sales, IntWritable, Sales> {
-		/*
-		 * HashMap where year is the key and sales object that has orderedID and total profit is provided here
-		 * */
-		private HashMap<Integer, TreeSet<Sales>> orderedProfitsOfAllYears = new HashMap<Integer, TreeSet<Sales>>();
+	/*
+	 * Merging the partial top N of a group and writing it by descending total_profit
+	 * Every group is finished in its own reduce call, so the class is also the combiner
+	 * */
+	public static class SalesReducer4 extends Reducer<Text, Sales, Text, Sales> {
+		SalesTopN orderedProfits;
+		Sales sale = new Sales();
 		
-		public void reduce(IntWritable key, Iterable<Sales> values, Context context)  throws IOException, InterruptedException {
-			
-			/*
-			 * Adding entries to hashmap if not already present
-			 * */
-			orderedProfitsOfAllYears.putIfAbsent(key.get(), new TreeSet<>());
-			
-			/*
-			 * Creating tree set to put total profits and orderid that are ordered per year
-			 * */
-			TreeSet<Sales> orderedProfits = orderedProfitsOfAllYears.get(key.get());
-			
-			/*
-			 * Iterating over sales object to get top 10 records, remove the one that is added after 10 and terminate the loop
-			 * */
+		public void setup(Context context) {
+			orderedProfits = SalesTopN.newInstance(context.getConfiguration());
+		}
+		
+		public void reduce(Text key, Iterable<Sales> values, Context context)  throws IOException, InterruptedException {
+			orderedProfits.clear();
+			int g = orderedProfits.group(key);
 			for (Sales salesValue: values) {
-				if (orderedProfits.size() >= topN) {
-					orderedProfits.remove(orderedProfits.first());
+				orderedProfits.offer(g, salesValue.orderId, salesValue.totalProfit);
+			}
+			
+			int count = orderedProfits.sort(g);
+			for (int rank = 0; rank < count; rank++) {
+				sale.orderId = orderedProfits.getOrderId(g, rank);
+				sale.totalProfit = orderedProfits.getTotalProfit(g, rank);
+				context.write(key, sale);
+			}
+		}
+	}
+	
+	/*
+	 * Mapper of the secondary sort mode, emitting every order under its (group, totalProfit, orderId) key
+	 * Nothing is kept in memory, the shuffle sort ranks the orders
+	 * */
+	public static class SalesSortMapper4 extends Mapper<Object, Writable, SalesProfitKey, NullWritable> {
+		SalesCsvParser parser;
+		SalesFilter filter; //Only created when --item-type, --country or --year-range is given
+		int[] groupColumns;
+		int scale; //Number of fraction digits kept in fixed point mode, -1 when total_profit is read as a double
+		Text field = new Text();
+		SalesProfitKey profitKey = new SalesProfitKey();
+		
+		public void setup(Context context) {
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+			groupColumns = SalesTopN.groupColumns(context.getConfiguration());
+			scale = SalesDecimal.getScale(context.getConfiguration());
+		}
+		
+		public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+			SalesTopN.groupKey(parser, groupColumns, SalesOrderDate.year(orderDate), field, profitKey.group);
+			profitKey.totalProfit = SalesDecimal.getAmount(parser, SalesCsvParser.TOTAL_PROFIT, scale);
+			profitKey.orderId = parser.getInt(SalesCsvParser.ORDER_ID);
+			context.write(profitKey, NullWritable.get());
+		}
+	}
+	
+	/*
+	 * Combiner of the secondary sort mode, passing on the first N distinct orders of every group of a spill
+	 * It is grouped by SalesProfitKey.GroupComparator, the key moves to the next order with every value
+	 * */
+	public static class SalesSortCombiner4 extends Reducer<SalesProfitKey, NullWritable, SalesProfitKey, NullWritable> {
+		int n;
+		
+		public void setup(Context context) {
+			n = context.getConfiguration().getInt(SalesTopN.N_KEY, SalesTopN.DEFAULT_N);
+		}
+		
+		public void reduce(SalesProfitKey key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+			int count = 0;
+			boolean first = true;
+			int orderId = 0;
+			double totalProfit = 0;
+			for (@SuppressWarnings("unused") NullWritable value : values) {
+				if (!first && key.orderId == orderId && Double.compare(key.totalProfit, totalProfit) == 0) {
+					continue;
+				}
+				context.write(key, NullWritable.get());
+				first = false;
+				orderId = key.orderId;
+				totalProfit = key.totalProfit;
+				if (++count == n) {
+					break;
 				}
-				orderedProfits.add(new Sales(salesValue));
-			}	
+			}
 		}
+	}
+	
+	/*
+	 * Reducer of the secondary sort mode, the orders of a group arrive best first
+	 * so the first N distinct ones are written and the rest of the group is never read
+	 * */
+	public static class SalesSortReducer4 extends Reducer<SalesProfitKey, NullWritable, Text, Sales> {
+		int n;
+		Sales sale = new Sales();
 		
-		public void cleanup(Context context) throws IOException, InterruptedException {
-			/*
-			 * Fetching entries from HashMap and adding to the context of reducer
-			 * */
-			for (Map.Entry<Integer, TreeSet<Sales>> entry : orderedProfitsOfAllYears.entrySet()) {
-				TreeSet<Sales> sales = entry.getValue();
-				int year = entry.getKey();
-				
-				for (Sales sale : sales) {
-					context.write(new IntWritable(year), sale);
+		public void setup(Context context) {
+			n = context.getConfiguration().getInt(SalesTopN.N_KEY, SalesTopN.DEFAULT_N);
+		}
+		
+		public void reduce(SalesProfitKey key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+			int count = 0;
+			for (@SuppressWarnings("unused") NullWritable value : values) {
+				if (count > 0 && key.orderId == sale.orderId && Double.compare(key.totalProfit, sale.totalProfit) == 0) {
+					continue;
+				}
+				sale.orderId = key.orderId;
+				sale.totalProfit = key.totalProfit;
+				context.write(key.group, sale);
+				if (++count == n) {
+					break;
 				}
 			}
 		}
 	}
 	
-	public static void main(String[] args) throws Exception {
-		//Everytime new directory is created for output hence, deleting the existing directory
-		FileUtils.deleteDirectory(new File("/home/hadoop/eclipse/geosales_mapreduce/output-que-4"));
-		Configuration conf =  new Configuration(); //Hadoop job config
+	/*
+	 * Setting up the job from the arguments left after the generic options, so that SalesPerfHarness can run it in process
+	 * */
+	public static Job createJob(Configuration conf, String[] args) throws Exception {
+		args = SalesFilter.parseArguments(conf, args); //Optional --item-type, --country and --year-range filters, for example --item-type Cereal --year-range 2012-2014
+		SalesDecimal.getScale(conf); //Optional -D sales.decimal=true reads money as exact fixed point, failing here on a bad sales.decimal.scale rather than in every task
 		Job job = Job.getInstance(conf, "SalesMapReduce4"); //Hadoop job config instance created
 		job.setJarByClass(org.harsh.hadoop.bigdata.SalesMapReduce4.class); //Name of the main class for creating the JAR file
-		job.setMapperClass(SalesMapper4.class); //Name of the mapper class that executes the mapping logic
-		job.setCombinerClass(SalesReducer4.class); //Data with same keys are combined here and passed to the reducer
-		job.setReducerClass(SalesReducer4.class); //Name of the reducer class that executes the reducer logic
-		job.setOutputKeyClass(IntWritable.class); //DataType of output key emitted. Here Sales class object emitted that consists of orderId, totalProfit, year
+		if (conf.getBoolean(SECONDARY_SORT_KEY, false)) {
+			job.setMapperClass(SalesSortMapper4.class); //Orders are emitted under (group, totalProfit, orderId) keys
+			job.setMapOutputKeyClass(SalesProfitKey.class);
+			job.setMapOutputValueClass(NullWritable.class);
+			job.setPartitionerClass(SalesProfitKey.Partitioner.class); //Every order of a group goes to the same reducer
+			job.setGroupingComparatorClass(SalesProfitKey.GroupComparator.class); //One reduce call per group, orders sorted best first
+			job.setCombinerKeyGroupingComparatorClass(SalesProfitKey.GroupComparator.class);
+			job.setCombinerClass(SalesSortCombiner4.class); //Only the first N orders of every group of a spill are shuffled
+			job.setReducerClass(SalesSortReducer4.class);
+		}
+		else {
+			job.setMapperClass(SalesMapper4.class); //Name of the mapper class that executes the mapping logic
+			job.setCombinerClass(SalesReducer4.class); //Data with same keys are combined here and passed to the reducer
+			job.setReducerClass(SalesReducer4.class); //Name of the reducer class that executes the reducer logic
+		}
+		job.setOutputKeyClass(Text.class); //DataType of output key emitted. Here the group, the year by default, with Sales class object that consists of orderId, totalProfit
 		job.setOutputValueClass(Sales.class); //DataType of output value emitted.
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.ORDER_DATE, SalesCsvParser.ORDER_ID, SalesCsvParser.TOTAL_PROFIT);
+			SalesColumnarInputFormat.configure(job, SalesTopN.groupColumns(conf)); //And the columns of the top N groups
+		}
+		if (conf.getBoolean(SalesTotalOrder.TOTAL_ORDER_KEY, false) && job.getNumReduceTasks() > 1) {
+			SalesTotalOrder.configure(job, new Path(args[0]), new Path(args[1] + "-partitions")); //Part files are cut at sampled keys, so they are sorted end to end
+		}
 		FileInputFormat.addInputPath(job, new Path(args[0])); //First Argument where we pass the csv file
 		FileOutputFormat.setOutputPath(job, new Path(args[1] + "-que-4")); //Second argument where we pass absolute path of the location with folder name. Here -que-4 is output since it is answer of question 4
+		return job;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf =  new Configuration(); //Hadoop job config
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.csv.quoted=true are applied to the job config
+		Job job = createJob(conf, args); //Filters, mappers, reducers, partitioning and the input and output paths
 		System.exit(job.waitForCompletion(true) ? 0 : 1); //Completion of job tracked here
 	}
 }
@@ -0,0 +1,113 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Count, mean and sum of squared deviations from the mean (M2) of a set of values, the sufficient statistics of a t-test
+ *
+ * Values are added with Welford's update and partials are merged with the parallel formula of Chan et al., which
+ * never subtract two large sums of squares, so the variance keeps its precision for large revenues and counts.
+ * Partials can be merged any number of times, so the same class goes through a combiner.
+ *
+ * */
+public class SalesMomentsWritable implements Writable {
+	private long count;
+	private double mean;
+	private double m2;
+
+	public SalesMomentsWritable() {
+	}
+
+	public SalesMomentsWritable(long count, double mean, double m2) {
+		set(count, mean, m2);
+	}
+
+	public void set(long count, double mean, double m2) {
+		this.count = count;
+		this.mean = mean;
+		this.m2 = m2;
+	}
+
+	public void clear() {
+		set(0, 0, 0);
+	}
+
+	/*
+	 * Single value
+	 * */
+	public void setValue(double value) {
+		set(1, value, 0);
+	}
+
+	/*
+	 * Adding one value with Welford's update
+	 * */
+	public void add(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+	}
+
+	/*
+	 * Merging another partial into this one
+	 * */
+	public void add(SalesMomentsWritable other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			set(other.count, other.mean, other.m2);
+			return;
+		}
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / total;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+		count = total;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getM2() {
+		return m2;
+	}
+
+	/*
+	 * Sample variance, NaN below two values
+	 * */
+	public double getVariance() {
+		return count < 2 ? Double.NaN : m2 / (count - 1);
+	}
+
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVLong(out, count);
+		out.writeDouble(mean);
+		out.writeDouble(m2);
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		count = WritableUtils.readVLong(in);
+		mean = in.readDouble();
+		m2 = in.readDouble();
+	}
+
+	/*
+	 * Count, mean and M2, the doubles are written so that they read back to the same values
+	 * */
+	@Override
+	public String toString() {
+		return count + "\t" + mean + "\t" + m2;
+	}
+}
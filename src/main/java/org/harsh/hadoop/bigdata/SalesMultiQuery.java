@@ -0,0 +1,388 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Answers the questions of SalesMapReduce1, 2, 3 and 4 from a single scan of the csv
+ * Every row is parsed once and a tagged record is emitted for each enabled question.
+ * The results are written to the same -que-N directories, in the same format as the single question jobs.
+ *
+ * Usage: SalesMultiQuery [--queries 1,2,3,4] [--item-type T] [--country C] [--year-range yyyy-yyyy] <input> <output>
+ *
+ * */
+public class SalesMultiQuery {
+
+	/*
+	 * Configuration key holding the comma separated questions to answer
+	 * */
+	public static final String QUERIES_KEY = "sales.queries";
+
+	/*
+	 * Reading the enabled questions, index i is set when question i is enabled
+	 * */
+	static boolean[] enabledQueries(Configuration conf) {
+		boolean[] enabled = new boolean[5];
+		for (int query : conf.getInts(QUERIES_KEY)) {
+			if (query < 1 || query > 4) {
+				throw new IllegalArgumentException("Unknown question " + query);
+			}
+			enabled[query] = true;
+		}
+		return enabled;
+	}
+
+	/*
+	 * Moving the optional --queries argument to job configuration, all four questions are answered when it is not given
+	 * Returning the other arguments in their order
+	 * */
+	public static String[] parseQueries(Configuration conf, String[] args) {
+		List<String> remaining = new ArrayList<String>();
+		conf.set(QUERIES_KEY, "1,2,3,4");
+		for (int i = 0; i < args.length; i++) {
+			if ("--queries".equals(args[i]) && i + 1 < args.length) {
+				conf.set(QUERIES_KEY, args[++i]);
+			}
+			else {
+				remaining.add(args[i]);
+			}
+		}
+		enabledQueries(conf); //Failing in the driver on an unknown question rather than in every task
+		return remaining.toArray(new String[remaining.size()]);
+	}
+
+	/*
+	 * Mapper parsing each row once and emitting one record per enabled question
+	 * */
+	public static class SalesQueryMapper extends Mapper<Object, Writable, SalesQueryKey, SalesQueryValue> {
+		SalesCsvParser parser;
+		SalesFilter filter;
+		boolean[] enabled;
+		boolean orderIds; //Set when the order ids of min and max are tracked for question 3
+		int scale; //Number of fraction digits kept in fixed point mode, -1 when money columns are read as doubles
+		SalesQueryKey salesKey = new SalesQueryKey();
+		SalesQueryValue salesValue = new SalesQueryValue();
+
+		/*
+		 * Ordered profits of every group for question 4, kept the same way as SalesMapper4
+		 * */
+		SalesTopN orderedProfits;
+		int[] groupColumns;
+		Text field = new Text();
+		Text group = new Text();
+
+		public void setup(Context context) {
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+			enabled = enabledQueries(context.getConfiguration());
+			orderIds = context.getConfiguration().getBoolean(MinMaxWritable.ORDER_IDS_KEY, false);
+			scale = SalesDecimal.getScale(context.getConfiguration());
+			orderedProfits = SalesTopN.newInstance(context.getConfiguration());
+			groupColumns = SalesTopN.groupColumns(context.getConfiguration());
+		}
+
+		public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+			int orderYear = SalesOrderDate.year(orderDate);
+
+			salesKey.set(parser, orderYear);
+
+			if (enabled[SalesQueryValue.AVERAGE_UNIT_PRICE]) {
+				salesKey.setQuery(SalesQueryValue.AVERAGE_UNIT_PRICE);
+				if (scale < 0) {
+					salesValue.setUnitPrice(parser.getDouble(SalesCsvParser.UNIT_PRICE), 1);
+				}
+				else {
+					salesValue.setUnitPrice(parser.getUnscaled(SalesCsvParser.UNIT_PRICE, scale), scale, 1);
+				}
+				context.write(salesKey, salesValue);
+			}
+			if (enabled[SalesQueryValue.TOTAL_UNITS_SOLD]) {
+				salesKey.setQuery(SalesQueryValue.TOTAL_UNITS_SOLD);
+				salesValue.setUnitsSold(parser.getInt(SalesCsvParser.UNITS_SOLD));
+				context.write(salesKey, salesValue);
+			}
+			if (enabled[SalesQueryValue.MIN_MAX_UNITS_SOLD]) {
+				salesKey.setQuery(SalesQueryValue.MIN_MAX_UNITS_SOLD);
+				if (orderIds) {
+					salesValue.setUnitsRange().setValue(parser.getInt(SalesCsvParser.UNITS_SOLD), parser.getInt(SalesCsvParser.ORDER_ID));
+				}
+				else {
+					salesValue.setUnitsRange().setValue(parser.getInt(SalesCsvParser.UNITS_SOLD));
+				}
+				context.write(salesKey, salesValue);
+			}
+			if (enabled[SalesQueryValue.TOP_PROFITS]) {
+				SalesTopN.groupKey(parser, groupColumns, orderYear, field, group);
+				orderedProfits.offer(orderedProfits.group(group), parser.getInt(SalesCsvParser.ORDER_ID), SalesDecimal.getAmount(parser, SalesCsvParser.TOTAL_PROFIT, scale));
+			}
+		}
+
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			/*
+			 * Emitting the ordered profits of question 4, keyed by the group carried in the country field
+			 * */
+			salesKey.setQuery(SalesQueryValue.TOP_PROFITS);
+			salesKey.item_type.clear();
+			salesKey.year.set(0);
+			for (int g = 0; g < orderedProfits.groupCount(); g++) {
+				orderedProfits.getGroup(g, salesKey.country);
+				int count = orderedProfits.sort(g);
+				for (int rank = 0; rank < count; rank++) {
+					salesValue.setProfit(orderedProfits.getOrderId(g, rank), orderedProfits.getTotalProfit(g, rank));
+					context.write(salesKey, salesValue);
+				}
+			}
+			orderedProfits.clear();
+		}
+	}
+
+	/*
+	 * Combiner merging the unit price partials of question 1, summing units sold for question 2
+	 * and merging the min and max of question 3 and the partial top N of question 4
+	 * */
+	public static class SalesQueryCombiner extends Reducer<SalesQueryKey, SalesQueryValue, SalesQueryKey, SalesQueryValue> {
+		SalesQueryValue result = new SalesQueryValue();
+		SalesTopN orderedProfits;
+
+		public void setup(Context context) {
+			orderedProfits = SalesTopN.newInstance(context.getConfiguration());
+		}
+
+		public void reduce(SalesQueryKey key, Iterable<SalesQueryValue> values, Context context) throws IOException, InterruptedException {
+			switch (key.getQuery()) {
+			case SalesQueryValue.AVERAGE_UNIT_PRICE:
+				result.setUnitPrice(0, 0);
+				for (SalesQueryValue value : values) {
+					result.unitPrice.add(value.unitPrice);
+				}
+				context.write(key, result);
+				break;
+			case SalesQueryValue.TOTAL_UNITS_SOLD:
+				int unitsSold = 0;
+				for (SalesQueryValue value : values) {
+					unitsSold += value.unitsSold;
+				}
+				result.setUnitsSold(unitsSold);
+				context.write(key, result);
+				break;
+			case SalesQueryValue.MIN_MAX_UNITS_SOLD:
+				MinMaxWritable range = result.setUnitsRange();
+				range.clear();
+				for (SalesQueryValue value : values) {
+					range.add(value.unitsRange);
+				}
+				context.write(key, result);
+				break;
+			case SalesQueryValue.TOP_PROFITS:
+				int count = mergeProfits(orderedProfits, key.country, values);
+				for (int rank = 0; rank < count; rank++) {
+					result.setProfit(orderedProfits.getOrderId(0, rank), orderedProfits.getTotalProfit(0, rank));
+					context.write(key, result);
+				}
+				break;
+			default:
+				throw new IOException("Unknown question " + key.getQuery());
+			}
+		}
+	}
+
+	/*
+	 * Reducer finishing every question the same way as its single question reducer
+	 * and writing it to the named output of the question
+	 * */
+	public static class SalesQueryReducer extends Reducer<SalesQueryKey, SalesQueryValue, Writable, Writable> {
+		MultipleOutputs<Writable, Writable> outputs;
+		SalesMapReduce1.Sales sales1 = new SalesMapReduce1.Sales();
+		SalesMapReduce2.Sales sales2 = new SalesMapReduce2.Sales();
+		SalesMapReduce3.Sales sales3 = new SalesMapReduce3.Sales();
+		SumCountWritable total = new SumCountWritable();
+		DoubleWritable averagePrice = new DoubleWritable();
+		IntWritable units = new IntWritable();
+		MinMaxWritable unitsRange = new MinMaxWritable();
+
+		SalesMapReduce4.Sales sales4 = new SalesMapReduce4.Sales();
+		SalesTopN orderedProfits;
+
+		public void setup(Context context) {
+			outputs = new MultipleOutputs<Writable, Writable>(context);
+			orderedProfits = SalesTopN.newInstance(context.getConfiguration());
+		}
+
+		public void reduce(SalesQueryKey key, Iterable<SalesQueryValue> values, Context context) throws IOException, InterruptedException {
+			switch (key.getQuery()) {
+			case SalesQueryValue.AVERAGE_UNIT_PRICE:
+				total.set(0, 0);
+				for (SalesQueryValue value : values) {
+					total.add(value.unitPrice);
+				}
+				copy(key, sales1);
+				averagePrice.set(total.getAverage());
+				write(SalesQueryValue.AVERAGE_UNIT_PRICE, sales1, averagePrice);
+				break;
+			case SalesQueryValue.TOTAL_UNITS_SOLD:
+				int unitsSold = 0;
+				for (SalesQueryValue value : values) {
+					unitsSold += value.unitsSold;
+				}
+				copy(key, sales2);
+				units.set(unitsSold);
+				write(SalesQueryValue.TOTAL_UNITS_SOLD, sales2, units);
+				break;
+			case SalesQueryValue.MIN_MAX_UNITS_SOLD:
+				unitsRange.clear();
+				for (SalesQueryValue value : values) {
+					unitsRange.add(value.unitsRange);
+				}
+				copy(key, sales3);
+				write(SalesQueryValue.MIN_MAX_UNITS_SOLD, sales3, unitsRange);
+				break;
+			case SalesQueryValue.TOP_PROFITS:
+				int count = mergeProfits(orderedProfits, key.country, values);
+				for (int rank = 0; rank < count; rank++) {
+					sales4.orderId = orderedProfits.getOrderId(0, rank);
+					sales4.totalProfit = orderedProfits.getTotalProfit(0, rank);
+					write(SalesQueryValue.TOP_PROFITS, key.country, sales4);
+				}
+				break;
+			default:
+				throw new IOException("Unknown question " + key.getQuery());
+			}
+		}
+
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			outputs.close();
+		}
+
+		private void copy(SalesQueryKey key, SalesKey sales) {
+			sales.country.set(key.country);
+			sales.item_type.set(key.item_type);
+			sales.year.set(key.year.get());
+		}
+
+		private void write(int query, Writable key, Writable value) throws IOException, InterruptedException {
+			outputs.write(namedOutput(query), key, value, queryDirectory(query) + "/part");
+		}
+	}
+
+	/*
+	 * Merging the partial top N of one group of question 4 into the only group of the engine, sorted by descending total_profit
+	 * */
+	static int mergeProfits(SalesTopN orderedProfits, Text group, Iterable<SalesQueryValue> values) {
+		orderedProfits.clear();
+		orderedProfits.group(group);
+		for (SalesQueryValue value : values) {
+			orderedProfits.offer(0, value.orderId, value.totalProfit);
+		}
+		return orderedProfits.sort(0);
+	}
+
+	static String namedOutput(int query) {
+		return "que" + query;
+	}
+
+	static String queryDirectory(int query) {
+		return "que-" + query;
+	}
+
+	/*
+	 * Named outputs of the four questions, SalesQueryReducer writes each under its que-N directory of the job output
+	 * */
+	static void configureOutputs(Job job) {
+		LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class); //Nothing is written to the default output
+		MultipleOutputs.addNamedOutput(job, namedOutput(1), TextOutputFormat.class, SalesMapReduce1.Sales.class, DoubleWritable.class);
+		MultipleOutputs.addNamedOutput(job, namedOutput(2), TextOutputFormat.class, SalesMapReduce2.Sales.class, IntWritable.class);
+		MultipleOutputs.addNamedOutput(job, namedOutput(3), TextOutputFormat.class, SalesMapReduce3.Sales.class, MinMaxWritable.class);
+		MultipleOutputs.addNamedOutput(job, namedOutput(4), TextOutputFormat.class, Text.class, SalesMapReduce4.Sales.class);
+	}
+
+	/*
+	 * Moving every enabled question from the job output to its -que-N directory, with the _SUCCESS marker of the job
+	 * */
+	static void moveOutputs(FileSystem fs, Path workDir, String output, boolean[] enabled) throws IOException {
+		for (int query = 1; query <= 4; query++) {
+			if (!enabled[query]) {
+				continue;
+			}
+			Path source = new Path(workDir, queryDirectory(query));
+			Path target = new Path(output + "-" + queryDirectory(query));
+			if (!fs.exists(source)) {
+				fs.mkdirs(source);
+			}
+			fs.create(new Path(source, FileOutputCommitter.SUCCEEDED_FILE_NAME)).close();
+			fs.rename(source, target);
+		}
+		fs.delete(workDir, true);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs();
+		args = SalesFilter.parseArguments(conf, args);
+		SalesDecimal.getScale(conf); //Optional -D sales.decimal=true reads money as exact fixed point, failing here on a bad sales.decimal.scale rather than in every task
+
+		args = parseQueries(conf, args); //Optional --queries argument, all four questions are answered by default
+		if (args.length != 2) {
+			System.err.println("Usage: SalesMultiQuery [--queries 1,2,3,4] [--item-type T] [--country C] [--year-range yyyy-yyyy] <input> <output>");
+			System.exit(2);
+		}
+		boolean[] enabled = enabledQueries(conf);
+		String output = args[1];
+
+		/*
+		 * The job writes every question under one directory, which is then split into the -que-N directories
+		 * */
+		Path workDir = new Path(output + "-que-all");
+		FileSystem fs = workDir.getFileSystem(conf);
+		for (int query = 1; query <= 4; query++) {
+			Path target = new Path(output + "-" + queryDirectory(query));
+			if (enabled[query] && fs.exists(target)) {
+				throw new IOException("Output directory " + target + " already exists");
+			}
+		}
+
+		Job job = Job.getInstance(conf, "SalesMultiQuery");
+		job.setJarByClass(SalesMultiQuery.class);
+		job.setMapperClass(SalesQueryMapper.class);
+		job.setCombinerClass(SalesQueryCombiner.class);
+		job.setReducerClass(SalesQueryReducer.class);
+		job.setMapOutputKeyClass(SalesQueryKey.class);
+		job.setMapOutputValueClass(SalesQueryValue.class);
+		configureOutputs(job); //One named output per question
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.COUNTRY, SalesCsvParser.ITEM_TYPE, SalesCsvParser.ORDER_DATE, SalesCsvParser.UNIT_PRICE,
+					SalesCsvParser.UNITS_SOLD, SalesCsvParser.ORDER_ID, SalesCsvParser.TOTAL_PROFIT);
+			SalesColumnarInputFormat.configure(job, SalesTopN.groupColumns(conf)); //And the columns of the top N groups of question 4
+		}
+		FileInputFormat.addInputPath(job, new Path(args[0]));
+		FileOutputFormat.setOutputPath(job, workDir);
+		if (!job.waitForCompletion(true)) {
+			System.exit(1);
+		}
+
+		moveOutputs(fs, workDir, output, enabled); //Every question to its -que-N directory
+	}
+}
@@ -0,0 +1,125 @@
+package org.harsh.hadoop.bigdata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/*
+ * Order date handling for the geosales csv
+ *
+ * Dates are returned packed into a single int as yyyyMMdd so that year, month, day and quarter can be read
+ * without creating any object. The canonical "yyyy-MM-dd HH:mm:ss" layout is read straight from the fixed
+ * positions of the bytes, anything else goes through a java.time formatter.
+ *
+ * */
+public final class SalesOrderDate {
+
+	/*
+	 * Returned when the text is not a date
+	 * */
+	public static final int INVALID = -1;
+
+	/*
+	 * Fallback for dates that are not in the canonical layout, for example single digit months or hours
+	 * DateTimeFormatter is immutable, so one instance is shared by every thread of the task
+	 * */
+	private static final DateTimeFormatter FALLBACK_FORMAT = DateTimeFormatter.ofPattern("uuuu-M-d[ H:m[:s]]", Locale.ENGLISH);
+
+	private static final int[] DAYS_IN_MONTH = {0, 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+	private SalesOrderDate() {
+	}
+
+	/*
+	 * Parsing the date held between offset and offset + length
+	 * */
+	public static int parse(byte[] bytes, int offset, int length) {
+		int date = parseCanonical(bytes, offset, length);
+		if (date != INVALID) {
+			return date;
+		}
+		return parseFallback(new String(bytes, offset, length, StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Parsing the date held by the String
+	 * */
+	public static int parse(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		return parse(bytes, 0, bytes.length);
+	}
+
+	/*
+	 * Reading "yyyy-MM-dd" followed by the end of the field or a space, returning INVALID for anything else
+	 * The time of day is not needed by any job so it is not looked at
+	 * */
+	private static int parseCanonical(byte[] b, int offset, int length) {
+		if (length < 10 || (length > 10 && b[offset + 10] != ' ')
+				|| b[offset + 4] != '-' || b[offset + 7] != '-') {
+			return INVALID;
+		}
+
+		int year = digits(b, offset, 4);
+		int month = digits(b, offset + 5, 2);
+		int day = digits(b, offset + 8, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month]
+				|| (month == 2 && day == 29 && !isLeapYear(year))) {
+			return INVALID;
+		}
+		return pack(year, month, day);
+	}
+
+	/*
+	 * Reading count decimal digits as an int, -1 when a byte is not a digit
+	 * */
+	private static int digits(byte[] b, int offset, int count) {
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			int digit = b[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static int parseFallback(String value) {
+		try {
+			LocalDate date = LocalDate.from(FALLBACK_FORMAT.parse(value.trim()));
+			if (date.getYear() < 0 || date.getYear() > 9999) {
+				return INVALID;
+			}
+			return pack(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+		}
+		catch (DateTimeException e) {
+			return INVALID;
+		}
+	}
+
+	private static boolean isLeapYear(int year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	private static int pack(int year, int month, int day) {
+		return year * 10000 + month * 100 + day;
+	}
+
+	public static int year(int date) {
+		return date / 10000;
+	}
+
+	public static int month(int date) {
+		return date / 100 % 100;
+	}
+
+	public static int day(int date) {
+		return date % 100;
+	}
+
+	public static int quarter(int date) {
+		return (month(date) - 1) / 3 + 1;
+	}
+}
@@ -0,0 +1,296 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+/*
+ * Partitioner of the keys of SalesMapReduce1, 2 and 3 on (country, item_type)
+ *
+ * All the years of a (country, item_type) pair go to the same reducer. The pair is hashed from the bytes of its names,
+ * for Sales keys and for the packed keys of the encoded mode alike, so both modes partition the same way.
+ *
+ * With sales.partitioner.sampled=true the driver first reads a sample of the input and counts the records of every pair.
+ * Pairs are then given, heaviest first, to the reducer with the least records so far, and the resulting plan is shipped
+ * to the tasks through the distributed cache. Pairs missing from the sample are hashed.
+ *
+ * The plan file has the number of reducers on its first line, then one "country<tab>item_type<tab>reducer" line per pair.
+ *
+ * */
+public class SalesPartitioner extends Partitioner<WritableComparable<?>, Object> implements Configurable {
+
+	/*
+	 * Configuration keys of the sampled plan
+	 * */
+	public static final String SAMPLED_KEY = "sales.partitioner.sampled";
+	public static final String PATH_KEY = "sales.partitioner.path";
+	public static final String SAMPLE_SPLITS_KEY = "sales.partitioner.sample.splits";
+	public static final String SAMPLE_RECORDS_KEY = "sales.partitioner.sample.records";
+	public static final int DEFAULT_SAMPLE_SPLITS = 10;
+	public static final int DEFAULT_SAMPLE_RECORDS = 10000;
+
+	/*
+	 * Name of the plan in the working directory of the tasks, linked there by the distributed cache
+	 * */
+	public static final String CACHE_NAME = "sales.partitions";
+
+	private static final byte SEPARATOR = '\t';
+
+	private Configuration conf;
+	private SalesDictionary dictionary;
+	private final SalesDictionary.Dimension pairs = new SalesDictionary.Dimension();
+	private int[] plan = new int[0];
+	private int planPartitions;
+
+	private final Text country = new Text();
+	private final Text itemType = new Text();
+	private byte[] pair = new byte[64];
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	/*
+	 * Loading the plan and, in encoded mode, the dictionary naming the packed keys
+	 * */
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+		try {
+			if (conf.getBoolean(SalesDictionary.ENCODED_KEY, false)) {
+				dictionary = SalesDictionary.load(conf);
+			}
+			File cached = new File(CACHE_NAME);
+			if (cached.exists()) {
+				try (InputStream in = new FileInputStream(cached)) {
+					read(in);
+				}
+			}
+			else if (conf.get(PATH_KEY) != null) {
+				Path path = new Path(conf.get(PATH_KEY));
+				try (InputStream in = path.getFileSystem(conf).open(path)) {
+					read(in);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Loading the sales partitioner failed", e);
+		}
+	}
+
+	@Override
+	public int getPartition(WritableComparable<?> key, Object value, int numPartitions) {
+		Text keyCountry;
+		Text keyItemType;
+		if (key instanceof SalesKey) {
+			keyCountry = ((SalesKey) key).country;
+			keyItemType = ((SalesKey) key).item_type;
+		}
+		else if (key instanceof LongWritable && dictionary != null) {
+			long packed = ((LongWritable) key).get();
+			dictionary.countries().name(SalesDictionary.country(packed), country);
+			dictionary.itemTypes().name(SalesDictionary.itemType(packed), itemType);
+			keyCountry = country;
+			keyItemType = itemType;
+		}
+		else {
+			return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+		}
+
+		if (numPartitions == planPartitions) {
+			int length = setPair(keyCountry, keyItemType);
+			int code = pairs.code(pair, 0, length);
+			if (code >= 0) {
+				return plan[code];
+			}
+		}
+		return (hash(keyCountry, keyItemType) & Integer.MAX_VALUE) % numPartitions;
+	}
+
+	/*
+	 * Hash of the pair from the bytes of its names, the year is left out so all years of a pair stay together
+	 * */
+	static int hash(Text country, Text itemType) {
+		int h = 31 * WritableComparator.hashBytes(country.getBytes(), country.getLength())
+				+ WritableComparator.hashBytes(itemType.getBytes(), itemType.getLength());
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * Setting "country<tab>item_type" on the reusable pair buffer, returning its length
+	 * */
+	private int setPair(Text country, Text itemType) {
+		int length = country.getLength() + 1 + itemType.getLength();
+		if (pair.length < length) {
+			pair = new byte[length * 2];
+		}
+		System.arraycopy(country.getBytes(), 0, pair, 0, country.getLength());
+		pair[country.getLength()] = SEPARATOR;
+		System.arraycopy(itemType.getBytes(), 0, pair, country.getLength() + 1, itemType.getLength());
+		return length;
+	}
+
+	/*
+	 * Reading a plan file
+	 * */
+	private void read(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String line = reader.readLine();
+		if (line == null) {
+			return;
+		}
+		int partitions = Integer.parseInt(line.trim());
+		while ((line = reader.readLine()) != null) {
+			int split = line.lastIndexOf(SEPARATOR);
+			if (split < 0) {
+				throw new IOException("Unexpected partition plan line: " + line);
+			}
+			byte[] name = line.substring(0, split).getBytes(StandardCharsets.UTF_8);
+			int code = pairs.add(name, 0, name.length);
+			if (code == plan.length) {
+				plan = Arrays.copyOf(plan, Math.max(16, code * 2));
+			}
+			plan[code] = Integer.parseInt(line.substring(split + 1));
+		}
+		planPartitions = partitions;
+	}
+
+	/*
+	 * Sampling the input for the partitioning asked for in job configuration, only when the job has more than one reducer:
+	 * -D sales.total.order=true cuts the part files at sampled keys so that they are sorted end to end, otherwise
+	 * -D sales.partitioner.sampled=true spreads heavy (country, item_type) pairs over the reducers
+	 * */
+	public static void configureSampling(Job job, Path input, Path workDir) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		if (job.getNumReduceTasks() <= 1) {
+			return;
+		}
+		if (conf.getBoolean(SalesTotalOrder.TOTAL_ORDER_KEY, false)) {
+			SalesTotalOrder.configure(job, input, workDir);
+		}
+		else if (conf.getBoolean(SAMPLED_KEY, false)) {
+			configure(job, input, workDir);
+		}
+	}
+
+	/*
+	 * Balancing the job on (country, item_type) from a sample of its input
+	 * Building the plan under workDir first when no plan file was configured
+	 * */
+	public static void configure(Job job, Path input, Path workDir) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		if (conf.get(PATH_KEY) == null) {
+			conf.set(PATH_KEY, build(conf, input, workDir, job.getNumReduceTasks()).toString());
+		}
+
+		Path path = new Path(conf.get(PATH_KEY));
+		URI uri = path.getFileSystem(conf).makeQualified(path).toUri();
+		job.addCacheFile(URI.create(uri + "#" + CACHE_NAME));
+	}
+
+	/*
+	 * Sampling the input, giving every pair to the least loaded reducer heaviest first and writing the plan file
+	 * */
+	public static Path build(Configuration conf, Path input, Path workDir, int partitions) throws IOException, InterruptedException {
+		final Map<String, Long> counts = sample(conf, input);
+		List<String> heaviestFirst = new ArrayList<String>(counts.keySet());
+		heaviestFirst.sort((a, b) -> {
+			int result = Long.compare(counts.get(b), counts.get(a));
+			return result != 0 ? result : a.compareTo(b);
+		});
+
+		FileSystem fs = workDir.getFileSystem(conf);
+		fs.delete(workDir, true);
+		Path path = new Path(workDir, "partitions");
+		long[] loads = new long[partitions];
+		try (Writer writer = new OutputStreamWriter(fs.create(path), StandardCharsets.UTF_8)) {
+			writer.write(partitions + "\n");
+			for (String pair : heaviestFirst) {
+				int lightest = 0;
+				for (int i = 1; i < partitions; i++) {
+					if (loads[i] < loads[lightest]) {
+						lightest = i;
+					}
+				}
+				loads[lightest] += counts.get(pair);
+				writer.write(pair + "\t" + lightest + "\n");
+			}
+		}
+		return path;
+	}
+
+	/*
+	 * Counting the records of every "country<tab>item_type" pair of the input sample
+	 * */
+	static Map<String, Long> sample(Configuration conf, Path input) throws IOException, InterruptedException {
+		Text country = new Text();
+		Text itemType = new Text();
+		Map<String, Long> counts = new HashMap<String, Long>();
+		sample(conf, input, parser -> {
+			parser.getText(SalesCsvParser.COUNTRY, country);
+			parser.getText(SalesCsvParser.ITEM_TYPE, itemType);
+			counts.merge(country + "\t" + itemType, 1L, Long::sum);
+		});
+		return counts;
+	}
+
+	/*
+	 * Passing every complete record of the first records of evenly spread input splits to the consumer
+	 * Records outside the filters of the job are left out, so the sample looks like what the mappers emit
+	 * The size of the sample is set with sales.partitioner.sample.splits and sales.partitioner.sample.records
+	 * */
+	static void sample(Configuration conf, Path input, Consumer<SalesCsvParser> consumer) throws IOException, InterruptedException {
+		Job sampleJob = Job.getInstance(conf);
+		FileInputFormat.addInputPath(sampleJob, input);
+		FileInputFormat<?, ? extends Writable> format = conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false) ? new SalesColumnarInputFormat() : new TextInputFormat();
+		List<InputSplit> splits = format.getSplits(sampleJob);
+
+		int sampleSplits = Math.min(splits.size(), conf.getInt(SAMPLE_SPLITS_KEY, DEFAULT_SAMPLE_SPLITS));
+		int recordsPerSplit = Math.max(1, conf.getInt(SAMPLE_RECORDS_KEY, DEFAULT_SAMPLE_RECORDS) / Math.max(1, sampleSplits));
+		SalesCsvParser parser = SalesCsvParser.newInstance(conf);
+		SalesFilter filter = SalesFilter.newInstance(conf);
+
+		for (int i = 0; i < sampleSplits; i++) {
+			InputSplit split = splits.get((int) ((long) i * splits.size() / sampleSplits));
+			TaskAttemptContextImpl context = new TaskAttemptContextImpl(sampleJob.getConfiguration(), new TaskAttemptID());
+			try (RecordReader<?, ? extends Writable> reader = format.createRecordReader(split, context)) {
+				reader.initialize(split, context);
+				for (int records = 0; records < recordsPerSplit && reader.nextKeyValue(); records++) {
+					if (parser.parse(reader.getCurrentValue()) >= SalesCsvParser.FIELD_COUNT && (filter == null || filter.matches(parser))) {
+						consumer.accept(parser);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * End to end performance harness of the four questions in the local job runner
+ *
+ * For every dataset size the harness writes a csv with SalesDataGenerator, runs SalesMapReduce1 to 4 on it in this
+ * process, checks every output against a plain single threaded reference computed from the same csv and records
+ * the wall time with the framework counters of the job. Settings, all optional:
+ *     -D sales.harness.rows=100000,1000000     dataset sizes, run from the smallest
+ *     -D sales.harness.baseline=<report.csv>   earlier report, a job slower than it by more than the tolerance fails the run
+ *     -D sales.harness.tolerance=0.25          share of records per second a job may lose against the baseline
+ * Other -D settings, such as sales.generator.seed, sales.decimal or mapreduce.job.reduces, are passed to the generator
+ * and to every job. The reference knows the default output of each question, so settings changing what is written,
+ * such as sales.topn.n or sales.topn.group.by, make the check fail.
+ *
+ * The work directory is cleared for every size and report.json and report.csv are written in it, one entry per
+ * size and job. The exit code is 1 when an output differs from the reference or a job is slower than the baseline.
+ *
+ * Usage: SalesPerfHarness <work directory>
+ *
+ * */
+public class SalesPerfHarness {
+
+	/*
+	 * Configuration keys of the harness
+	 * */
+	public static final String ROWS_KEY = "sales.harness.rows";
+	public static final String BASELINE_KEY = "sales.harness.baseline";
+	public static final String TOLERANCE_KEY = "sales.harness.tolerance";
+	public static final String DEFAULT_ROWS = "100000,1000000";
+	public static final float DEFAULT_TOLERANCE = 0.25f;
+
+	/*
+	 * Relative difference allowed between the averages of question 1 and the reference, which sums in another order
+	 * */
+	private static final double AVERAGE_TOLERANCE = 1e-9;
+
+	/*
+	 * Framework counters written to the report
+	 * */
+	private static final TaskCounter[] COUNTERS = {
+		TaskCounter.MAP_INPUT_RECORDS, TaskCounter.MAP_OUTPUT_RECORDS, TaskCounter.MAP_OUTPUT_BYTES,
+		TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES, TaskCounter.SPILLED_RECORDS, TaskCounter.REDUCE_SHUFFLE_BYTES,
+		TaskCounter.GC_TIME_MILLIS };
+	private static final SalesCounters[] SALES_COUNTERS = { SalesCounters.MALFORMED_RECORDS, SalesCounters.BAD_ORDER_DATES };
+
+	private static final String[] JOBS = { "SalesMapReduce1", "SalesMapReduce2", "SalesMapReduce3", "SalesMapReduce4" };
+
+	/*
+	 * One job run on one dataset
+	 * */
+	static class Run {
+		long rows;
+		String job;
+		double seconds;
+		long[] counters = new long[COUNTERS.length + SALES_COUNTERS.length];
+		String check;
+
+		double getRecordsPerSecond() {
+			return rows / seconds;
+		}
+	}
+
+	/*
+	 * Plain reference of the four questions, reading the csv with String.split and keeping every aggregate in maps
+	 * Rows are skipped the way the jobs skip them, for missing columns or an order_date that is not a date.
+	 * */
+	static class Reference {
+		private final SortedMap<String, double[]> averages = new TreeMap<>();
+		private final SortedMap<String, long[]> units = new TreeMap<>();
+		private final SortedMap<Integer, TreeSet<double[]>> topProfits = new TreeMap<>();
+		long malformedRecords;
+		long badOrderDates;
+
+		/*
+		 * Orders ranked as SalesMapReduce4 ranks them, worst first: lower total_profit, then larger order id
+		 * */
+		private static final Comparator<double[]> PROFIT_ORDER = (a, b) -> {
+			int result = Double.compare(a[0], b[0]);
+			return result != 0 ? result : Double.compare(b[1], a[1]);
+		};
+
+		void add(String line) {
+			String[] fields = line.split(",", -1);
+			if (fields.length < SalesCsvParser.FIELD_COUNT) {
+				malformedRecords++;
+				return;
+			}
+			int orderDate = SalesOrderDate.parse(fields[SalesCsvParser.ORDER_DATE]);
+			if (orderDate == SalesOrderDate.INVALID) {
+				badOrderDates++;
+				return;
+			}
+			int year = orderDate / 10000;
+			String country = fields[SalesCsvParser.COUNTRY];
+			String itemType = fields[SalesCsvParser.ITEM_TYPE];
+
+			double[] average = averages.computeIfAbsent(country + "\t" + itemType + "\t" + year, k -> new double[2]);
+			average[0] += Double.parseDouble(fields[SalesCsvParser.UNIT_PRICE]);
+			average[1]++;
+
+			int unitsSold = Integer.parseInt(fields[SalesCsvParser.UNITS_SOLD]);
+			long[] sumMinMax = units.computeIfAbsent(country + " : " + itemType + " " + year, k -> new long[] { 0, Long.MAX_VALUE, Long.MIN_VALUE });
+			sumMinMax[0] += unitsSold;
+			sumMinMax[1] = Math.min(sumMinMax[1], unitsSold);
+			sumMinMax[2] = Math.max(sumMinMax[2], unitsSold);
+
+			TreeSet<double[]> top = topProfits.computeIfAbsent(year, k -> new TreeSet<>(PROFIT_ORDER));
+			top.add(new double[] { Double.parseDouble(fields[SalesCsvParser.TOTAL_PROFIT]), Integer.parseInt(fields[SalesCsvParser.ORDER_ID]) });
+			if (top.size() > SalesTopN.DEFAULT_N) {
+				top.pollFirst();
+			}
+		}
+
+		/*
+		 * Expected output of a question as key to value, in the layout readOutput gives for the part files
+		 * */
+		SortedMap<String, String> expected(int question) {
+			SortedMap<String, String> expected = new TreeMap<>();
+			switch (question) {
+			case 1:
+				for (Map.Entry<String, double[]> entry : averages.entrySet()) {
+					expected.put(entry.getKey(), Double.toString(entry.getValue()[0] / entry.getValue()[1]));
+				}
+				break;
+			case 2:
+				for (Map.Entry<String, long[]> entry : units.entrySet()) {
+					expected.put(entry.getKey(), Long.toString(entry.getValue()[0]));
+				}
+				break;
+			case 3:
+				for (Map.Entry<String, long[]> entry : units.entrySet()) {
+					expected.put(entry.getKey(), entry.getValue()[1] + "\t" + entry.getValue()[2]);
+				}
+				break;
+			default:
+				for (Map.Entry<Integer, TreeSet<double[]>> entry : topProfits.entrySet()) {
+					for (double[] order : entry.getValue()) {
+						expected.put(entry.getKey() + "\t" + (int) order[1], Double.toString(order[0]));
+					}
+				}
+			}
+			return expected;
+		}
+	}
+
+	/*
+	 * Reading the part files of a question as key to value, from the tab separated fields of every line
+	 * Question 1 keys are country, item_type and year, question 4 keys are the year and the order id
+	 * */
+	static SortedMap<String, String> readOutput(Configuration conf, Path dir, int question) throws IOException {
+		SortedMap<String, String> output = new TreeMap<>();
+		FileSystem fs = dir.getFileSystem(conf);
+		FileStatus[] parts = fs.globStatus(new Path(dir, "part-*"));
+		Arrays.sort(parts);
+		for (FileStatus part : parts) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(part.getPath()), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					List<String> fields = new ArrayList<>();
+					for (String field : line.split("\t")) {
+						if (!field.trim().isEmpty()) {
+							fields.add(field.trim());
+						}
+					}
+					switch (question) {
+					case 1:
+						output.put(fields.get(0) + "\t" + fields.get(1) + "\t" + fields.get(2), fields.get(3));
+						break;
+					case 3:
+						output.put(fields.get(0), fields.get(1) + "\t" + fields.get(2)); //Order ids of the min and max, when written, are not checked
+						break;
+					case 4:
+						output.put(fields.get(0) + "\t" + fields.get(1), fields.get(2));
+						break;
+					default:
+						output.put(fields.get(0), fields.get(1));
+					}
+				}
+			}
+		}
+		return output;
+	}
+
+	/*
+	 * Comparing an output with the reference, returning "passed" or what the first difference is
+	 * */
+	static String check(SortedMap<String, String> expected, SortedMap<String, String> actual, int question) {
+		if (!expected.keySet().equals(actual.keySet())) {
+			TreeSet<String> missing = new TreeSet<>(expected.keySet());
+			missing.removeAll(actual.keySet());
+			TreeSet<String> extra = new TreeSet<>(actual.keySet());
+			extra.removeAll(expected.keySet());
+			return "failed: " + missing.size() + " keys missing, " + extra.size() + " unexpected keys"
+					+ (missing.isEmpty() ? ", first " + extra.first() : ", first missing " + missing.first()).replace('\t', ' ');
+		}
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			String value = actual.get(entry.getKey());
+			boolean same = value.equals(entry.getValue());
+			if (!same && question == 1) {
+				double expectedAverage = Double.parseDouble(entry.getValue());
+				same = Math.abs(Double.parseDouble(value) - expectedAverage) <= AVERAGE_TOLERANCE * Math.abs(expectedAverage);
+			}
+			if (!same) {
+				return "failed: " + entry.getKey().replace('\t', ' ') + " is " + value.replace('\t', ' ') + ", expected " + entry.getValue().replace('\t', ' ');
+			}
+		}
+		return "passed";
+	}
+
+	/*
+	 * Creating one of the four jobs with its own copy of the settings
+	 * */
+	static Job createJob(Configuration conf, int question, String[] args) throws Exception {
+		switch (question) {
+		case 1:
+			return SalesMapReduce1.createJob(conf, args);
+		case 2:
+			return SalesMapReduce2.createJob(conf, args);
+		case 3:
+			return SalesMapReduce3.createJob(conf, args);
+		default:
+			return SalesMapReduce4.createJob(conf, args);
+		}
+	}
+
+	/*
+	 * Generating one dataset, running the four jobs on it and checking them against the reference
+	 * */
+	static List<Run> runSize(Configuration conf, Path workDir, long rows) throws Exception {
+		FileSystem fs = workDir.getFileSystem(conf);
+		Path sizeDir = new Path(workDir, "rows-" + rows);
+		fs.delete(sizeDir, true);
+		Path input = new Path(sizeDir, "input");
+		Configuration generatorConf = new Configuration(conf);
+		generatorConf.setLong(SalesDataGenerator.ROWS_KEY, rows);
+		SalesDataGenerator.generateLocally(generatorConf, input);
+
+		Reference reference = new Reference();
+		for (FileStatus part : fs.globStatus(new Path(input, "part-*"))) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(part.getPath()), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					reference.add(line);
+				}
+			}
+		}
+
+		List<Run> runs = new ArrayList<>();
+		for (int question = 1; question <= JOBS.length; question++) {
+			Run run = new Run();
+			run.rows = rows;
+			run.job = JOBS[question - 1];
+			Job job = createJob(new Configuration(conf), question, new String[] { input.toString(), new Path(sizeDir, "output").toString() });
+			long start = System.nanoTime();
+			boolean succeeded = job.waitForCompletion(false);
+			run.seconds = (System.nanoTime() - start) / 1e9;
+			if (!succeeded) {
+				run.check = "failed: job did not succeed";
+			}
+			else {
+				Counters counters = job.getCounters();
+				for (int c = 0; c < COUNTERS.length; c++) {
+					run.counters[c] = counters.findCounter(COUNTERS[c]).getValue();
+				}
+				for (int c = 0; c < SALES_COUNTERS.length; c++) {
+					run.counters[COUNTERS.length + c] = counters.findCounter(SALES_COUNTERS[c]).getValue();
+				}
+				run.check = check(reference.expected(question), readOutput(conf, new Path(sizeDir, "output-que-" + question), question), question);
+				if (run.check.equals("passed") && (counters.findCounter(SalesCounters.MALFORMED_RECORDS).getValue() != reference.malformedRecords
+						|| counters.findCounter(SalesCounters.BAD_ORDER_DATES).getValue() != reference.badOrderDates)) {
+					run.check = "failed: skipped records differ from the reference, " + reference.malformedRecords + " malformed and "
+							+ reference.badOrderDates + " bad order dates expected";
+				}
+			}
+			System.out.println(String.format(Locale.ROOT, "%d rows\t%s\t%.3f s\t%.0f records/s\t%s", rows, run.job, run.seconds, run.getRecordsPerSecond(), run.check));
+			runs.add(run);
+		}
+		return runs;
+	}
+
+	/*
+	 * Names of the report columns after rows, job, seconds and records_per_second
+	 * */
+	static List<String> counterNames() {
+		List<String> names = new ArrayList<>();
+		for (TaskCounter counter : COUNTERS) {
+			names.add(counter.name().toLowerCase(Locale.ROOT));
+		}
+		for (SalesCounters counter : SALES_COUNTERS) {
+			names.add(counter.name().toLowerCase(Locale.ROOT));
+		}
+		return names;
+	}
+
+	static void writeCsv(Configuration conf, Path file, List<Run> runs) throws IOException {
+		try (OutputStream out = file.getFileSystem(conf).create(file, true); PrintStream print = new PrintStream(out, false, "UTF-8")) {
+			print.println("rows,job,seconds,records_per_second," + String.join(",", counterNames()) + ",check");
+			for (Run run : runs) {
+				print.print(String.format(Locale.ROOT, "%d,%s,%.3f,%.0f", run.rows, run.job, run.seconds, run.getRecordsPerSecond()));
+				for (long counter : run.counters) {
+					print.print("," + counter);
+				}
+				print.println(",\"" + run.check.replace("\"", "\"\"") + "\"");
+			}
+		}
+	}
+
+	static void writeJson(Configuration conf, Path file, List<Run> runs) throws IOException {
+		List<String> names = counterNames();
+		try (OutputStream out = file.getFileSystem(conf).create(file, true); PrintStream print = new PrintStream(out, false, "UTF-8")) {
+			print.println("[");
+			for (int r = 0; r < runs.size(); r++) {
+				Run run = runs.get(r);
+				print.print(String.format(Locale.ROOT, "  {\"rows\": %d, \"job\": \"%s\", \"seconds\": %.3f, \"records_per_second\": %.0f",
+						run.rows, run.job, run.seconds, run.getRecordsPerSecond()));
+				for (int c = 0; c < names.size(); c++) {
+					print.print(", \"" + names.get(c) + "\": " + run.counters[c]);
+				}
+				print.println(", \"check\": \"" + run.check.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}" + (r + 1 < runs.size() ? "," : ""));
+			}
+			print.println("]");
+		}
+	}
+
+	/*
+	 * Records per second of every size and job of an earlier csv report
+	 * */
+	static Map<String, Double> readBaseline(Configuration conf, Path file) throws IOException {
+		Map<String, Double> baseline = new HashMap<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getFileSystem(conf).open(file), StandardCharsets.UTF_8))) {
+			reader.readLine(); //Header
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(",");
+				baseline.put(fields[0] + "," + fields[1], Double.parseDouble(fields[3]));
+			}
+		}
+		return baseline;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Harness, generator and job settings such as -D sales.harness.rows=100000,1000000
+		conf.set("mapreduce.framework.name", "local"); //Every job runs in this process
+		conf.setInt(Job.COMPLETION_POLL_INTERVAL_KEY, 50); //The default of 5 seconds between polls would be most of the wall time of a small job
+		if (args.length != 1) {
+			System.err.println("Usage: SalesPerfHarness [-D sales.harness.rows=100000,1000000] [-D sales.harness.baseline=<report.csv>] <work directory>");
+			System.exit(2);
+		}
+		Path workDir = new Path(args[0]);
+		long[] sizes = Arrays.stream(conf.getTrimmedStrings(ROWS_KEY, DEFAULT_ROWS)).mapToLong(Long::parseLong).sorted().toArray();
+		String baselineFile = conf.get(BASELINE_KEY);
+		Map<String, Double> baseline = baselineFile == null ? null : readBaseline(conf, new Path(baselineFile)); //Read before the work directory, which may hold it, is cleared
+		new SalesDataGenerator(conf); //Failing here on bad generator settings rather than after the first size
+
+		List<Run> runs = new ArrayList<>();
+		for (long rows : sizes) {
+			runs.addAll(runSize(conf, workDir, rows));
+		}
+		writeCsv(conf, new Path(workDir, "report.csv"), runs);
+		writeJson(conf, new Path(workDir, "report.json"), runs);
+
+		/*
+		 * Failing the run on a wrong output or, with a baseline, on a job that lost more than the tolerance
+		 * */
+		boolean failed = false;
+		float tolerance = conf.getFloat(TOLERANCE_KEY, DEFAULT_TOLERANCE);
+		for (Run run : runs) {
+			if (!run.check.equals("passed")) {
+				System.err.println(run.rows + " rows " + run.job + ": output check " + run.check);
+				failed = true;
+			}
+			Double before = baseline == null ? null : baseline.get(run.rows + "," + run.job);
+			if (before != null && run.getRecordsPerSecond() < before * (1 - tolerance)) {
+				System.err.println(String.format(Locale.ROOT, "%d rows %s: %.0f records/s, baseline %.0f records/s", run.rows, run.job, run.getRecordsPerSecond(), before));
+				failed = true;
+			}
+		}
+		System.exit(failed ? 1 : 0);
+	}
+}
@@ -0,0 +1,167 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Composite key of the secondary sort mode of SalesMapReduce4: (group, totalProfit descending, orderId)
+ *
+ * The group is the year, or the year with the other grouping columns, as built by SalesTopN.groupKey.
+ * Keys sort by group and then in the rank order of SalesTopN, so the values of a group reach the reducer best first.
+ * GroupComparator and Partitioner only look at the group, every group is reduced in one call on one reducer.
+ *
+ * */
+public class SalesProfitKey implements WritableComparable<SalesProfitKey> {
+	Text group = new Text();
+	double totalProfit;
+	int orderId;
+
+	static {
+		WritableComparator.define(SalesProfitKey.class, new Comparator());
+	}
+
+	public void set(Text group, double totalProfit, int orderId) {
+		this.group.set(group);
+		this.totalProfit = totalProfit;
+		this.orderId = orderId;
+	}
+
+	public Text getGroup() {
+		return group;
+	}
+
+	public double getTotalProfit() {
+		return totalProfit;
+	}
+
+	public int getOrderId() {
+		return orderId;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		group.write(out);
+		out.writeDouble(totalProfit);
+		out.writeInt(orderId);
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		group.readFields(in);
+		totalProfit = in.readDouble();
+		orderId = in.readInt();
+	}
+
+	/*
+	 * Group ascending, then total_profit descending, then order id ascending
+	 * */
+	public int compareTo(SalesProfitKey other) {
+		int result = group.compareTo(other.group);
+		if (result == 0) {
+			result = Double.compare(other.totalProfit, totalProfit);
+		}
+		if (result == 0) {
+			result = Integer.compare(orderId, other.orderId);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SalesProfitKey)) {
+			return false;
+		}
+		return compareTo((SalesProfitKey) obj) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return group.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return group + "\t" + orderId + "\t" + totalProfit;
+	}
+
+	/*
+	 * Raw comparator sorting serialized keys in the same order as compareTo
+	 * */
+	public static class Comparator extends WritableComparator {
+
+		public Comparator() {
+			super(SalesProfitKey.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			try {
+				int prefix1 = WritableUtils.decodeVIntSize(b1[s1]);
+				int prefix2 = WritableUtils.decodeVIntSize(b2[s2]);
+				int length1 = readVInt(b1, s1);
+				int length2 = readVInt(b2, s2);
+				int result = compareBytes(b1, s1 + prefix1, length1, b2, s2 + prefix2, length2);
+				if (result != 0) {
+					return result;
+				}
+				s1 += prefix1 + length1;
+				s2 += prefix2 + length2;
+
+				/*
+				 * Comparing total_profit descending and then order id
+				 * */
+				result = Double.compare(readDouble(b2, s2), readDouble(b1, s1));
+				if (result != 0) {
+					return result;
+				}
+				return Integer.compare(readInt(b1, s1 + 8), readInt(b2, s2 + 8));
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+	}
+
+	/*
+	 * Grouping comparator looking at the group bytes only, so one reduce call sees the whole group in rank order
+	 * */
+	public static class GroupComparator extends WritableComparator {
+
+		public GroupComparator() {
+			super(SalesProfitKey.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			try {
+				int prefix1 = WritableUtils.decodeVIntSize(b1[s1]);
+				int prefix2 = WritableUtils.decodeVIntSize(b2[s2]);
+				return compareBytes(b1, s1 + prefix1, readVInt(b1, s1), b2, s2 + prefix2, readVInt(b2, s2));
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public int compare(WritableComparable a, WritableComparable b) {
+			return ((SalesProfitKey) a).group.compareTo(((SalesProfitKey) b).group);
+		}
+	}
+
+	/*
+	 * Partitioning on the group only, so that every order of a group goes to the same reducer
+	 * */
+	public static class Partitioner<V> extends org.apache.hadoop.mapreduce.Partitioner<SalesProfitKey, V> {
+
+		@Override
+		public int getPartition(SalesProfitKey key, V value, int numPartitions) {
+			return (key.group.hashCode() & Integer.MAX_VALUE) % numPartitions;
+		}
+	}
+}
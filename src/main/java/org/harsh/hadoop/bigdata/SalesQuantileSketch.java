@@ -0,0 +1,252 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Approximate quantiles of a stream of doubles in bounded memory, a KLL sketch
+ *
+ * Values are kept in levels, a value of level h standing for 2^h values. When the levels hold more than their capacity,
+ * the lowest full level is sorted and every other value of it moves one level up, the values in between are dropped.
+ * Capacities shrink by 2/3 from the top level, which holds k values, so a sketch never holds much more than 3k values
+ * whatever the number of values added, and the rank of a returned quantile is off by about 1.7 / k of the count.
+ * Sketches merge level by level, so partial sketches go through a combiner. Below k values the sketch is exact.
+ *
+ * The half kept by a compaction alternates instead of being drawn at random, so the same values added in the same
+ * order give the same sketch.
+ *
+ * */
+public class SalesQuantileSketch implements Writable {
+	public static final int DEFAULT_K = 100;
+	private static final double CAPACITY_RATIO = 2.0 / 3;
+	private static final int MIN_CAPACITY = 2;
+
+	private int k;
+	private long count;
+	private double[][] levels = new double[1][MIN_CAPACITY];
+	private int[] sizes = new int[1];
+	private int[] capacities = new int[1]; //Capacity of every level, they change only when a level is added
+	private int levelCount = 1;
+	private int retained; //Values held over all levels
+	private int capacity; //Sum of the capacities of the levels
+	private boolean oddHalf;
+
+	public SalesQuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	public SalesQuantileSketch(int k) {
+		if (k < MIN_CAPACITY) {
+			throw new IllegalArgumentException("Quantile sketch needs k of at least " + MIN_CAPACITY + ", got " + k);
+		}
+		this.k = k;
+		setCapacities();
+	}
+
+	/*
+	 * Empty sketch, the level arrays are kept
+	 * */
+	public void clear() {
+		Arrays.fill(sizes, 0, levelCount, 0);
+		levelCount = 1;
+		retained = 0;
+		count = 0;
+		oddHalf = false;
+		setCapacities();
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void add(double value) {
+		append(0, value);
+		count++;
+		if (retained > capacity) {
+			compress();
+		}
+	}
+
+	/*
+	 * Merging another sketch into this one
+	 * */
+	public void add(SalesQuantileSketch other) {
+		for (int level = 0; level < other.levelCount; level++) {
+			for (int i = 0; i < other.sizes[level]; i++) {
+				append(level, other.levels[level][i]);
+			}
+		}
+		count += other.count;
+		compress();
+	}
+
+	/*
+	 * Value at the given rank, 0.5 for the median: the smallest value with at least q of the weight at or below it
+	 * NaN when the sketch is empty
+	 * */
+	public double getQuantile(double q) {
+		if (q < 0 || q > 1) {
+			throw new IllegalArgumentException("Quantile has to be between 0 and 1, got " + q);
+		}
+		int size = 0;
+		for (int level = 0; level < levelCount; level++) {
+			size += sizes[level];
+		}
+		if (size == 0) {
+			return Double.NaN;
+		}
+
+		/*
+		 * Values with their weights, sorted by value through one array of indexes
+		 * */
+		double[] values = new double[size];
+		long[] weights = new long[size];
+		long total = 0;
+		int n = 0;
+		for (int level = 0; level < levelCount; level++) {
+			for (int i = 0; i < sizes[level]; i++) {
+				values[n] = levels[level][i];
+				weights[n++] = 1L << level;
+			}
+			total += (long) sizes[level] << level;
+		}
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+		double target = q * total;
+		long weight = 0;
+		for (int i = 0; i < size; i++) {
+			weight += weights[order[i]];
+			if (weight >= target) {
+				return values[order[i]];
+			}
+		}
+		return values[order[size - 1]];
+	}
+
+	/*
+	 * Capacities of the levels for the current number of levels, k for the top one
+	 * */
+	private void setCapacities() {
+		if (capacities.length < levels.length) {
+			capacities = new int[levels.length];
+		}
+		capacity = 0;
+		for (int level = 0; level < levelCount; level++) {
+			capacities[level] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, levelCount - 1 - level)));
+			capacity += capacities[level];
+		}
+	}
+
+	private void append(int level, double value) {
+		while (level >= levelCount) {
+			addLevel();
+		}
+		if (sizes[level] == levels[level].length) {
+			levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+		}
+		levels[level][sizes[level]++] = value;
+		retained++;
+	}
+
+	private void addLevel() {
+		if (levelCount == levels.length) {
+			levels = Arrays.copyOf(levels, levelCount * 2);
+			sizes = Arrays.copyOf(sizes, levelCount * 2);
+		}
+		if (levels[levelCount] == null) {
+			levels[levelCount] = new double[MIN_CAPACITY];
+		}
+		sizes[levelCount] = 0;
+		levelCount++;
+		setCapacities();
+	}
+
+	/*
+	 * Compacting the lowest full level until the levels fit their capacities
+	 * */
+	private void compress() {
+		while (retained > capacity) {
+			for (int level = 0; level < levelCount; level++) {
+				if (sizes[level] >= capacities[level]) {
+					compact(level);
+					break;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Sorting the level and moving every other value one level up, an odd value out stays in the level
+	 * */
+	private void compact(int level) {
+		if (level + 1 == levelCount) {
+			addLevel();
+		}
+		double[] values = levels[level];
+		int size = sizes[level];
+		Arrays.sort(values, 0, size);
+		int pairs = size / 2;
+		int start = oddHalf ? 1 : 0;
+		oddHalf = !oddHalf;
+		for (int i = 0; i < pairs; i++) {
+			append(level + 1, values[2 * i + start]);
+		}
+		if (size % 2 == 1) {
+			values[0] = values[size - 1];
+			sizes[level] = 1;
+		}
+		else {
+			sizes[level] = 0;
+		}
+		retained -= 2 * pairs; //Both values of every pair leave the level, the kept ones were counted again above
+	}
+
+	/*
+	 * Writing k, the count, the number of levels with the half the next compaction keeps in its low bit,
+	 * and every level as its size followed by its values, so a sketch read back goes on like the one written
+	 * */
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, k);
+		WritableUtils.writeVLong(out, count);
+		WritableUtils.writeVInt(out, levelCount << 1 | (oddHalf ? 1 : 0));
+		for (int level = 0; level < levelCount; level++) {
+			WritableUtils.writeVInt(out, sizes[level]);
+			for (int i = 0; i < sizes[level]; i++) {
+				out.writeDouble(levels[level][i]);
+			}
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		clear();
+		k = WritableUtils.readVInt(in);
+		count = WritableUtils.readVLong(in);
+		int tagged = WritableUtils.readVInt(in);
+		int readLevels = tagged >>> 1;
+		oddHalf = (tagged & 1) != 0;
+		for (int level = 0; level < readLevels; level++) {
+			if (level >= levelCount) {
+				addLevel();
+			}
+			int size = WritableUtils.readVInt(in);
+			if (levels[level].length < size) {
+				levels[level] = new double[size];
+			}
+			for (int i = 0; i < size; i++) {
+				levels[level][i] = in.readDouble();
+			}
+			sizes[level] = size;
+			retained += size;
+		}
+		setCapacities();
+	}
+}
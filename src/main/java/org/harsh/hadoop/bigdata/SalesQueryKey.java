@@ -0,0 +1,92 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparator;
+
+/*
+ * Sales key tagged with the question it belongs to, used by SalesMultiQuery
+ * Keys sort by question first and then like SalesKey. Question 4 carries its top N group in country, with an empty
+ * item_type and year 0
+ *
+ * */
+public class SalesQueryKey extends SalesKey {
+	byte query;
+
+	/*
+	 * Registering the raw comparator so that sort and merge compare the serialized keys
+	 * */
+	static {
+		WritableComparator.define(SalesQueryKey.class, new Comparator());
+	}
+
+	public byte getQuery() {
+		return query;
+	}
+
+	public void setQuery(int query) {
+		this.query = (byte) query;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + query;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return super.equals(obj) && query == ((SalesQueryKey) obj).query;
+	}
+
+	/*
+	 * Writing the question ahead of the Sales key fields
+	 * */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(query);
+		super.write(out);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		query = in.readByte();
+		super.readFields(in);
+	}
+
+	@Override
+	public int compareTo(SalesKey other) {
+		if (other instanceof SalesQueryKey) {
+			int result = Byte.compare(query, ((SalesQueryKey) other).query);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return super.compareTo(other);
+	}
+
+	@Override
+	public String toString() {
+		return query + " " + country + " " + item_type + " " + year;
+	}
+
+	/*
+	 * Raw comparator comparing the question byte and then the serialized Sales key fields
+	 * */
+	public static class Comparator extends SalesKey.Comparator {
+
+		public Comparator() {
+			super(SalesQueryKey.class);
+		}
+
+		@Override
+		public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+			int result = Byte.compare(b1[s1], b2[s2]);
+			if (result != 0) {
+				return result;
+			}
+			return super.compare(b1, s1 + 1, l1 - 1, b2, s2 + 1, l2 - 1);
+		}
+	}
+}
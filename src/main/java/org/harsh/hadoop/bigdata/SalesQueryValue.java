@@ -0,0 +1,105 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Tagged union of the values of the four questions, used by SalesMultiQuery
+ * The tag is the question number and only the fields of that question are serialized
+ *
+ * */
+public class SalesQueryValue implements Writable {
+	public static final byte AVERAGE_UNIT_PRICE = 1;
+	public static final byte TOTAL_UNITS_SOLD = 2;
+	public static final byte MIN_MAX_UNITS_SOLD = 3;
+	public static final byte TOP_PROFITS = 4;
+
+	byte query;
+	SumCountWritable unitPrice = new SumCountWritable();
+	int unitsSold;
+	MinMaxWritable unitsRange = new MinMaxWritable();
+	int orderId;
+	double totalProfit;
+
+	public byte getQuery() {
+		return query;
+	}
+
+	public void setUnitPrice(double sum, long count) {
+		this.query = AVERAGE_UNIT_PRICE;
+		this.unitPrice.set(sum, count);
+	}
+
+	/*
+	 * Question 1 value in fixed point mode, an exact sum of unscaledSum / 10^scale
+	 * */
+	public void setUnitPrice(long unscaledSum, int scale, long count) {
+		this.query = AVERAGE_UNIT_PRICE;
+		this.unitPrice.setUnscaled(unscaledSum, scale, count);
+	}
+
+	public void setUnitsSold(int unitsSold) {
+		this.query = TOTAL_UNITS_SOLD;
+		this.unitsSold = unitsSold;
+	}
+
+	/*
+	 * Question 3 value, the min and max are set on the returned MinMaxWritable
+	 * */
+	public MinMaxWritable setUnitsRange() {
+		this.query = MIN_MAX_UNITS_SOLD;
+		return unitsRange;
+	}
+
+	public void setProfit(int orderId, double totalProfit) {
+		this.query = TOP_PROFITS;
+		this.orderId = orderId;
+		this.totalProfit = totalProfit;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(query);
+		switch (query) {
+		case AVERAGE_UNIT_PRICE:
+			unitPrice.write(out);
+			break;
+		case TOTAL_UNITS_SOLD:
+			WritableUtils.writeVInt(out, unitsSold);
+			break;
+		case MIN_MAX_UNITS_SOLD:
+			unitsRange.write(out);
+			break;
+		case TOP_PROFITS:
+			out.writeInt(orderId);
+			out.writeDouble(totalProfit);
+			break;
+		default:
+			throw new IOException("Unknown question " + query);
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		query = in.readByte();
+		switch (query) {
+		case AVERAGE_UNIT_PRICE:
+			unitPrice.readFields(in);
+			break;
+		case TOTAL_UNITS_SOLD:
+			unitsSold = WritableUtils.readVInt(in);
+			break;
+		case MIN_MAX_UNITS_SOLD:
+			unitsRange.readFields(in);
+			break;
+		case TOP_PROFITS:
+			orderId = in.readInt();
+			totalProfit = in.readDouble();
+			break;
+		default:
+			throw new IOException("Unknown question " + query);
+		}
+	}
+}
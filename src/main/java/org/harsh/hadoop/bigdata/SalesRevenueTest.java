@@ -0,0 +1,263 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Question: In every region, is the mean total_revenue of an order of one item type different from that of another
+ *
+ * One job writes the count, mean and M2 of total_revenue of every (region, item_type) pair to <output>-moments, merging
+ * partials in the combiner like the sums of question 2, so the shuffle holds a few doubles per pair and task. Welch's
+ * t-test of every --pair A,B is then run on those moments in the driver and written to <output>-ttest, one line per region
+ * and one for all regions: region, item type A with count, mean and standard deviation, the same of B, t, the
+ * Welch-Satterthwaite degrees of freedom and the two-sided p-value. Other pairs are tested later from the stored moments
+ * by giving the moments directory alone, the results are then printed.
+ *
+ * */
+public class SalesRevenueTest {
+
+	/*
+	 * Region of the row of every region together
+	 * */
+	public static final String ALL_REGIONS = "All regions";
+
+	private static final byte[] SEPARATOR = { '\t' };
+
+	/*
+	 * Mapper writing the total_revenue of every record as the moments of one value under region and item_type
+	 * */
+	public static class MomentsMapper extends Mapper<Object, Writable, Text, SalesMomentsWritable> {
+		SalesCsvParser parser;
+		SalesFilter filter;
+		int scale; //Number of fraction digits kept in fixed point mode, -1 when total_revenue is read as a double
+		Text key = new Text(); //Region and item_type separated by a tab, set in place
+		Text itemType = new Text();
+		SalesMomentsWritable revenue = new SalesMomentsWritable();
+
+		public void setup(Context context) {
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+			scale = SalesDecimal.getScale(context.getConfiguration());
+		}
+
+		public void map(Object offset, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+
+			parser.getText(SalesCsvParser.REGION, key);
+			parser.getText(SalesCsvParser.ITEM_TYPE, itemType);
+			key.append(SEPARATOR, 0, 1);
+			key.append(itemType.getBytes(), 0, itemType.getLength());
+			revenue.setValue(SalesDecimal.getAmount(parser, SalesCsvParser.TOTAL_REVENUE, scale));
+			context.write(key, revenue);
+		}
+	}
+
+	/*
+	 * Merging the moments of a key, the same class runs as combiner and as reducer
+	 * */
+	public static class MomentsReducer extends Reducer<Text, SalesMomentsWritable, Text, SalesMomentsWritable> {
+		private SalesMomentsWritable result = new SalesMomentsWritable();
+
+		public void reduce(Text key, Iterable<SalesMomentsWritable> values, Context context) throws IOException, InterruptedException {
+			result.clear();
+			for (SalesMomentsWritable value : values) {
+				result.add(value);
+			}
+			context.write(key, result);
+		}
+	}
+
+	/*
+	 * Setting up the moments job from the arguments left after the generic options
+	 * */
+	public static Job createJob(Configuration conf, String[] args) throws Exception {
+		args = SalesFilter.parseArguments(conf, args); //Optional --item-type, --country and --year-range filters, for example --year-range 2012-2014
+		return createJob(conf, args[0], args[1]);
+	}
+
+	/*
+	 * Setting up the moments job once the filters are in job configuration
+	 * */
+	private static Job createJob(Configuration conf, String input, String output) throws Exception {
+		SalesDecimal.getScale(conf); //Optional -D sales.decimal=true reads total_revenue as exact fixed point
+		Job job = Job.getInstance(conf, "SalesRevenueTest");
+		job.setJarByClass(SalesRevenueTest.class);
+		job.setMapperClass(MomentsMapper.class);
+		job.setCombinerClass(MomentsReducer.class); //Moments with same keys are merged here and passed to the reducer
+		job.setReducerClass(MomentsReducer.class);
+		job.setOutputKeyClass(Text.class); //Region and item_type
+		job.setOutputValueClass(SalesMomentsWritable.class);
+		job.setOutputFormatClass(SequenceFileOutputFormat.class); //Binary moments, read back exactly by the t-tests
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.REGION, SalesCsvParser.ITEM_TYPE, SalesCsvParser.ORDER_DATE, SalesCsvParser.TOTAL_REVENUE);
+		}
+		FileInputFormat.addInputPath(job, new Path(input));
+		FileOutputFormat.setOutputPath(job, new Path(output + "-moments")); //Second argument, the moments go to its -moments directory
+		return job;
+	}
+
+	/*
+	 * Reading the moments of every region and item_type of the part files, keyed by region then item_type
+	 * */
+	public static Map<String, Map<String, SalesMomentsWritable>> readMoments(Configuration conf, Path dir) throws IOException {
+		FileSystem fs = dir.getFileSystem(conf);
+		FileStatus[] parts = fs.globStatus(new Path(dir, "part-*"));
+		if (parts == null || parts.length == 0) {
+			throw new IOException("No moments part files under " + dir);
+		}
+		Arrays.sort(parts);
+		Map<String, Map<String, SalesMomentsWritable>> moments = new TreeMap<>();
+		for (FileStatus part : parts) {
+			try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(part.getPath()))) {
+				Text key = new Text();
+				SalesMomentsWritable value = new SalesMomentsWritable();
+				while (reader.next(key, value)) {
+					String[] names = key.toString().split("\t", 2);
+					moments.computeIfAbsent(names[0], region -> new TreeMap<>()).put(names[1], value);
+					value = new SalesMomentsWritable();
+				}
+			}
+		}
+		return moments;
+	}
+
+	/*
+	 * Moments of every item_type over all regions, merged in region order
+	 * */
+	public static Map<String, SalesMomentsWritable> allRegions(Map<String, Map<String, SalesMomentsWritable>> moments) {
+		Map<String, SalesMomentsWritable> all = new TreeMap<>();
+		for (Map<String, SalesMomentsWritable> region : moments.values()) {
+			for (Map.Entry<String, SalesMomentsWritable> entry : region.entrySet()) {
+				all.computeIfAbsent(entry.getKey(), itemType -> new SalesMomentsWritable()).add(entry.getValue());
+			}
+		}
+		return all;
+	}
+
+	/*
+	 * Welch's t statistic, Welch-Satterthwaite degrees of freedom and two-sided p-value of the means of a and b
+	 * Null when either side has fewer than two values or both have no variance
+	 * */
+	public static double[] welch(SalesMomentsWritable a, SalesMomentsWritable b) {
+		if (a.getCount() < 2 || b.getCount() < 2) {
+			return null;
+		}
+		double errorA = a.getVariance() / a.getCount();
+		double errorB = b.getVariance() / b.getCount();
+		double error = errorA + errorB;
+		if (!(error > 0)) {
+			return null;
+		}
+		double t = (a.getMean() - b.getMean()) / Math.sqrt(error);
+		double df = error * error / (errorA * errorA / (a.getCount() - 1) + errorB * errorB / (b.getCount() - 1));
+		double p = 2 * new TDistribution(df).cumulativeProbability(-Math.abs(t)); //Lower tail, so small p-values keep their precision
+		return new double[] { t, df, Math.min(1, p) };
+	}
+
+	/*
+	 * Writing one line per region holding both item types, then the line of all regions
+	 * */
+	public static void writeTests(Map<String, Map<String, SalesMomentsWritable>> moments, List<String[]> pairs, PrintStream out) {
+		Map<String, SalesMomentsWritable> all = allRegions(moments);
+		for (String[] pair : pairs) {
+			for (Map.Entry<String, Map<String, SalesMomentsWritable>> region : moments.entrySet()) {
+				writeTest(region.getKey(), pair, region.getValue(), out);
+			}
+			writeTest(ALL_REGIONS, pair, all, out);
+		}
+	}
+
+	private static void writeTest(String region, String[] pair, Map<String, SalesMomentsWritable> itemTypes, PrintStream out) {
+		SalesMomentsWritable a = itemTypes.get(pair[0]);
+		SalesMomentsWritable b = itemTypes.get(pair[1]);
+		if (a == null || b == null) {
+			return;
+		}
+		double[] test = welch(a, b);
+		out.println(region + "\t" + pair[0] + "\t" + a.getCount() + "\t" + a.getMean() + "\t" + Math.sqrt(a.getVariance()) + "\t" + pair[1] + "\t" + b.getCount() + "\t"
+				+ b.getMean() + "\t" + Math.sqrt(b.getVariance()) + "\t" + (test == null ? "NaN\tNaN\tNaN" : test[0] + "\t" + test[1] + "\t" + test[2]));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.decimal=true are applied to the job config
+		args = SalesFilter.parseArguments(conf, args); //Filters go to job configuration here, so that only --pair and the paths are left
+		List<String[]> pairs = new ArrayList<String[]>();
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("--pair".equals(args[i]) && i + 1 < args.length) {
+				String[] pair = args[++i].split(",");
+				if (pair.length != 2) {
+					throw new IllegalArgumentException("--pair takes two item types separated by a comma, got " + args[i]);
+				}
+				pairs.add(pair);
+			}
+			else {
+				paths.add(args[i]);
+			}
+		}
+		if (paths.isEmpty() || paths.size() > 2) {
+			System.err.println("Usage: SalesRevenueTest [--item-type T] [--country C] [--year-range yyyy-yyyy] [--pair A,B]... <input> <output>");
+			System.err.println("       SalesRevenueTest --pair A,B [--pair C,D]... <moments directory>");
+			System.exit(2);
+		}
+
+		/*
+		 * Moments directory alone, the tests are printed
+		 * */
+		if (paths.size() == 1) {
+			writeTests(readMoments(conf, new Path(paths.get(0))), pairs, System.out);
+			System.exit(0);
+		}
+
+		/*
+		 * The -ttest directory is checked before the job runs, the way FileOutputFormat checks -moments
+		 * */
+		Path dir = new Path(paths.get(1) + "-ttest");
+		FileSystem fs = dir.getFileSystem(conf);
+		if (!pairs.isEmpty() && fs.exists(dir)) {
+			throw new FileAlreadyExistsException("Output directory " + dir + " already exists");
+		}
+		Job job = createJob(conf, paths.get(0), paths.get(1)); //Filters are already in job configuration
+		if (!job.waitForCompletion(true)) {
+			System.exit(1);
+		}
+		if (pairs.isEmpty()) {
+			System.exit(0);
+		}
+		try (OutputStream stream = fs.create(new Path(dir, "part-r-00000"), false); PrintStream out = new PrintStream(stream, false, StandardCharsets.UTF_8.name())) {
+			writeTests(readMoments(conf, FileOutputFormat.getOutputPath(job)), pairs, out);
+		}
+		fs.create(new Path(dir, FileOutputCommitter.SUCCEEDED_FILE_NAME)).close();
+		System.exit(0);
+	}
+}
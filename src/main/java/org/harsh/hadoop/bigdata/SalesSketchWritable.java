@@ -0,0 +1,100 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+
+/*
+ * Sketches of one (country, item_type, year) key: quantiles of unit_price and of units_sold and the distinct order ids
+ * Sketches merge any number of times, so the same class is the map output, the combiner output and the reducer output.
+ *
+ * */
+public class SalesSketchWritable implements Writable {
+
+	/*
+	 * Configuration keys of the sketch sizes, k of the quantile sketches and precision of the distinct counter
+	 * */
+	public static final String K_KEY = "sales.sketch.k";
+	public static final String PRECISION_KEY = "sales.sketch.hll.precision";
+
+	private final SalesQuantileSketch unitPrice;
+	private final SalesQuantileSketch unitsSold;
+	private final SalesHyperLogLog orderIds;
+
+	public SalesSketchWritable() {
+		this(SalesQuantileSketch.DEFAULT_K, SalesHyperLogLog.DEFAULT_PRECISION);
+	}
+
+	public SalesSketchWritable(int k, int precision) {
+		unitPrice = new SalesQuantileSketch(k);
+		unitsSold = new SalesQuantileSketch(k);
+		orderIds = new SalesHyperLogLog(precision);
+	}
+
+	/*
+	 * Creating empty sketches of the sizes set in job configuration
+	 * */
+	public static SalesSketchWritable newInstance(Configuration conf) {
+		return new SalesSketchWritable(conf.getInt(K_KEY, SalesQuantileSketch.DEFAULT_K), conf.getInt(PRECISION_KEY, SalesHyperLogLog.DEFAULT_PRECISION));
+	}
+
+	public void clear() {
+		unitPrice.clear();
+		unitsSold.clear();
+		orderIds.clear();
+	}
+
+	/*
+	 * Adding one order
+	 * */
+	public void add(double price, int units, int orderId) {
+		unitPrice.add(price);
+		unitsSold.add(units);
+		orderIds.add(orderId);
+	}
+
+	/*
+	 * Merging the sketches of another partial into these ones
+	 * */
+	public void add(SalesSketchWritable other) {
+		unitPrice.add(other.unitPrice);
+		unitsSold.add(other.unitsSold);
+		orderIds.add(other.orderIds);
+	}
+
+	public SalesQuantileSketch getUnitPrice() {
+		return unitPrice;
+	}
+
+	public SalesQuantileSketch getUnitsSold() {
+		return unitsSold;
+	}
+
+	public SalesHyperLogLog getOrderIds() {
+		return orderIds;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		unitPrice.write(out);
+		unitsSold.write(out);
+		orderIds.write(out);
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		unitPrice.readFields(in);
+		unitsSold.readFields(in);
+		orderIds.readFields(in);
+	}
+
+	/*
+	 * Median and 95th percentile of unit_price, the same of units_sold, then the distinct order count
+	 * */
+	@Override
+	public String toString() {
+		return unitPrice.getQuantile(0.5) + "\t" + unitPrice.getQuantile(0.95) + "\t" + (long) unitsSold.getQuantile(0.5) + "\t"
+				+ (long) unitsSold.getQuantile(0.95) + "\t" + orderIds.getEstimate();
+	}
+}
@@ -0,0 +1,142 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/*
+ *
+ * Question: Median and 95th percentile of unit_price and of units_sold, and the number of distinct orders,
+ * by country, item_type and year
+ *
+ * Exact quantiles would shuffle every value. Each map task instead keeps one SalesSketchWritable per key of job 3,
+ * a KLL quantile sketch of unit_price and of units_sold and a HyperLogLog of the order ids, and writes it once; the
+ * combiner and the reducer merge sketches. What is shuffled per key stays at a few KB whatever the number of rows.
+ * Sizes are set with -D sales.sketch.k=100 and -D sales.sketch.hll.precision=10. Output lines are the key followed by
+ * median and p95 of unit_price, median and p95 of units_sold and the distinct order count.
+ *
+ * */
+public class SalesSketches {
+
+	/*
+	 * Configuration key of the number of keys a map task keeps sketches for before it writes them out
+	 * */
+	public static final String MAX_KEYS_KEY = "sales.sketch.max.keys";
+	public static final int DEFAULT_MAX_KEYS = 16384;
+
+	/*
+	 * Mapper adding every record to the sketches of its key, written out in cleanup or when too many keys are held
+	 * */
+	public static class SketchMapper extends Mapper<Object, Writable, SalesMapReduce3.Sales, SalesSketchWritable> {
+		SalesCsvParser parser;
+		SalesFilter filter;
+		int scale; //Number of fraction digits kept in fixed point mode, -1 when unit_price is read as a double
+		int maxKeys;
+		Map<SalesMapReduce3.Sales, SalesSketchWritable> sketches = new HashMap<>();
+		SalesMapReduce3.Sales sales = new SalesMapReduce3.Sales(); //Looking a key up without creating it, copied only for a new key
+
+		public void setup(Context context) {
+			parser = SalesCsvParser.newInstance(context.getConfiguration());
+			filter = SalesFilter.newInstance(context.getConfiguration());
+			scale = SalesDecimal.getScale(context.getConfiguration());
+			maxKeys = context.getConfiguration().getInt(MAX_KEYS_KEY, DEFAULT_MAX_KEYS);
+		}
+
+		public void map(Object key, Writable value, Context context) throws IOException, InterruptedException {
+			int orderDate = SalesFilter.accept(filter, parser, value, context);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+
+			sales.set(parser, SalesOrderDate.year(orderDate));
+			SalesSketchWritable sketch = sketches.get(sales);
+			if (sketch == null) {
+				if (sketches.size() == maxKeys) {
+					flush(context);
+				}
+				SalesMapReduce3.Sales copy = new SalesMapReduce3.Sales();
+				copy.country.set(sales.country);
+				copy.item_type.set(sales.item_type);
+				copy.year.set(sales.year.get());
+				sketch = SalesSketchWritable.newInstance(context.getConfiguration());
+				sketches.put(copy, sketch);
+			}
+			sketch.add(SalesDecimal.getAmount(parser, SalesCsvParser.UNIT_PRICE, scale), parser.getInt(SalesCsvParser.UNITS_SOLD), parser.getInt(SalesCsvParser.ORDER_ID));
+		}
+
+		public void cleanup(Context context) throws IOException, InterruptedException {
+			flush(context);
+		}
+
+		/*
+		 * Writing the sketches of every key held and dropping them
+		 * */
+		private void flush(Context context) throws IOException, InterruptedException {
+			for (Map.Entry<SalesMapReduce3.Sales, SalesSketchWritable> entry : sketches.entrySet()) {
+				context.write(entry.getKey(), entry.getValue());
+			}
+			sketches.clear();
+		}
+	}
+
+	/*
+	 * Merging the sketches of a key, the same class runs as combiner and as reducer
+	 * */
+	public static class SketchReducer extends Reducer<SalesMapReduce3.Sales, SalesSketchWritable, SalesMapReduce3.Sales, SalesSketchWritable> {
+		SalesSketchWritable result;
+
+		public void setup(Context context) {
+			result = SalesSketchWritable.newInstance(context.getConfiguration());
+		}
+
+		public void reduce(SalesMapReduce3.Sales key, Iterable<SalesSketchWritable> values, Context context) throws IOException, InterruptedException {
+			result.clear();
+			for (SalesSketchWritable value : values) {
+				result.add(value);
+			}
+			context.write(key, result); //Written as the quantiles and the distinct count by toString
+		}
+	}
+
+	/*
+	 * Setting up the job from the arguments left after the generic options
+	 * */
+	public static Job createJob(Configuration conf, String[] args) throws Exception {
+		args = SalesFilter.parseArguments(conf, args);
+		SalesDecimal.getScale(conf); //Optional -D sales.decimal=true reads unit_price as exact fixed point
+		SalesSketchWritable.newInstance(conf); //Failing here on bad sketch sizes rather than in every task
+		Job job = Job.getInstance(conf, "SalesSketches");
+		job.setJarByClass(SalesSketches.class);
+		job.setMapperClass(SketchMapper.class); //Sketches of every key held by the task
+		job.setCombinerClass(SketchReducer.class); //Sketches with same keys are merged here and passed to the reducer
+		job.setReducerClass(SketchReducer.class);
+		job.setOutputKeyClass(SalesMapReduce3.Sales.class); //Key of job 3, country, item_type and year
+		job.setOutputValueClass(SalesSketchWritable.class);
+		job.setPartitionerClass(SalesPartitioner.class); //Invoking custom partitioner class, on country and item_type
+		if (conf.getBoolean(SalesColumnarInputFormat.COLUMNAR_KEY, false)) {
+			SalesColumnarInputFormat.configure(job, SalesCsvParser.COUNTRY, SalesCsvParser.ITEM_TYPE, SalesCsvParser.ORDER_DATE, SalesCsvParser.ORDER_ID,
+					SalesCsvParser.UNITS_SOLD, SalesCsvParser.UNIT_PRICE);
+		}
+		SalesPartitioner.configureSampling(job, new Path(args[0]), new Path(args[1] + "-partitions"));
+		FileInputFormat.addInputPath(job, new Path(args[0]));
+		FileOutputFormat.setOutputPath(job, new Path(args[1] + "-sketches")); //Second argument, the output goes to its -sketches directory
+		return job;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Configuration conf = new Configuration();
+		args = new GenericOptionsParser(conf, args).getRemainingArgs(); //Generic options such as -D sales.sketch.k=200 are applied to the job config
+		Job job = createJob(conf, args);
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+	}
+}
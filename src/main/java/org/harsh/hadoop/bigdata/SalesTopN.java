@@ -0,0 +1,274 @@
+package org.harsh.hadoop.bigdata;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+/*
+ * Top N orders by total_profit for every group of records, a group being the year or the year with other columns
+ *
+ * Every group keeps a min-heap of at most N entries in parallel int and double arrays, the weakest entry at the root.
+ * Once a heap is full a record that does not rank above the root is skipped with one compare.
+ * Entries rank by total_profit and then by the smaller order id, which is a total order, so merging partial results
+ * gives the same top N whatever order they arrive in. The same (orderId, totalProfit) pair is only kept once.
+ *
+ * Groups are interned to codes:
+ *     int group = topN.group(groupKey);
+ *     topN.offer(group, orderId, totalProfit);
+ *     ...
+ *     for (int rank = 0, count = topN.sort(group); rank < count; rank++) { ... }
+ *
+ * */
+public class SalesTopN {
+
+	/*
+	 * Configuration keys of the number of orders kept and the comma separated columns grouping them
+	 * */
+	public static final String N_KEY = "sales.topn.n";
+	public static final String GROUP_BY_KEY = "sales.topn.group.by";
+	public static final int DEFAULT_N = 10;
+	public static final String DEFAULT_GROUP_BY = "year";
+
+	/*
+	 * Grouping column standing for the year of the order date
+	 * */
+	public static final int YEAR = -1;
+
+	private static final byte[] SEPARATOR = { '\t' };
+	private static final byte[] DIGITS = { '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' };
+
+	private final int n;
+	private final SalesDictionary.Dimension groups = new SalesDictionary.Dimension();
+	private int[] sizes = new int[16];
+	private int[] orderIds;
+	private double[] profits;
+
+	public SalesTopN(int n) {
+		if (n < 1) {
+			throw new IllegalArgumentException("Top N needs N above 0, got " + n);
+		}
+		this.n = n;
+		this.orderIds = new int[n * sizes.length];
+		this.profits = new double[n * sizes.length];
+	}
+
+	/*
+	 * Creating the engine with the N set in job configuration
+	 * */
+	public static SalesTopN newInstance(Configuration conf) {
+		return new SalesTopN(conf.getInt(N_KEY, DEFAULT_N));
+	}
+
+	/*
+	 * Reading the grouping columns from job configuration, YEAR for the year of the order date
+	 * */
+	public static int[] groupColumns(Configuration conf) {
+		String[] names = conf.getTrimmedStrings(GROUP_BY_KEY, DEFAULT_GROUP_BY);
+		int[] columns = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			switch (names[i].toLowerCase()) {
+			case "year":
+				columns[i] = YEAR;
+				break;
+			case "region":
+				columns[i] = SalesCsvParser.REGION;
+				break;
+			case "country":
+				columns[i] = SalesCsvParser.COUNTRY;
+				break;
+			case "item_type":
+				columns[i] = SalesCsvParser.ITEM_TYPE;
+				break;
+			case "sales_channel":
+				columns[i] = SalesCsvParser.SALES_CHANNEL;
+				break;
+			case "order_priority":
+				columns[i] = SalesCsvParser.ORDER_PRIORITY;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown top N grouping column " + names[i]);
+			}
+		}
+		return columns;
+	}
+
+	/*
+	 * Setting the tab separated grouping columns of the parsed record on the given Text
+	 * field is a scratch Text, so that building the key does not allocate
+	 * */
+	public static void groupKey(SalesCsvParser parser, int[] columns, int year, Text field, Text out) {
+		out.clear();
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				out.append(SEPARATOR, 0, 1);
+			}
+			if (columns[i] == YEAR) {
+				appendInt(year, out);
+			}
+			else {
+				parser.getText(columns[i], field);
+				out.append(field.getBytes(), 0, field.getLength());
+			}
+		}
+	}
+
+	/*
+	 * Appending the decimal digits of the value one at a time
+	 * */
+	private static void appendInt(int value, Text out) {
+		long remaining = value;
+		if (remaining < 0) {
+			out.append(DIGITS, 0, 1);
+			remaining = -remaining;
+		}
+		long divisor = 1;
+		while (divisor * 10 <= remaining) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			out.append(DIGITS, 1 + (int) (remaining / divisor % 10), 1);
+		}
+	}
+
+	public int getN() {
+		return n;
+	}
+
+	/*
+	 * Code of the group, adding an empty heap when the group is new
+	 * */
+	public int group(Text key) {
+		int group = groups.add(key.getBytes(), 0, key.getLength());
+		if (group == sizes.length) {
+			sizes = Arrays.copyOf(sizes, group * 2);
+			orderIds = Arrays.copyOf(orderIds, n * sizes.length);
+			profits = Arrays.copyOf(profits, n * sizes.length);
+		}
+		return group;
+	}
+
+	public int groupCount() {
+		return groups.size();
+	}
+
+	/*
+	 * Setting the key of the group on the given Text
+	 * */
+	public void getGroup(int group, Text out) {
+		groups.name(group, out);
+	}
+
+	/*
+	 * Number of orders kept for the group, before sort they are read in heap order
+	 * */
+	public int size(int group) {
+		return sizes[group];
+	}
+
+	/*
+	 * Offering an order to the group, returning true when it is kept
+	 * */
+	public boolean offer(int group, int orderId, double totalProfit) {
+		int base = group * n;
+		int size = sizes[group];
+		if (size == n && !ranksAbove(orderId, totalProfit, orderIds[base], profits[base])) {
+			return false;
+		}
+		for (int i = base; i < base + size; i++) {
+			if (orderIds[i] == orderId && Double.compare(profits[i], totalProfit) == 0) {
+				return false;
+			}
+		}
+
+		if (size < n) {
+			orderIds[base + size] = orderId;
+			profits[base + size] = totalProfit;
+			siftUp(base, size);
+			sizes[group] = size + 1;
+		}
+		else {
+			orderIds[base] = orderId;
+			profits[base] = totalProfit;
+			siftDown(base, 0, size);
+		}
+		return true;
+	}
+
+	/*
+	 * Sorting the group by descending total_profit and returning its number of orders
+	 * The group stops being a heap, it can only be read until the engine is cleared
+	 * */
+	public int sort(int group) {
+		int base = group * n;
+		int size = sizes[group];
+		for (int end = size - 1; end > 0; end--) {
+			swap(base, base + end);
+			siftDown(base, 0, end);
+		}
+		return size;
+	}
+
+	public int getOrderId(int group, int rank) {
+		return orderIds[group * n + rank];
+	}
+
+	public double getTotalProfit(int group, int rank) {
+		return profits[group * n + rank];
+	}
+
+	/*
+	 * Removing every group, the arrays are kept for the next round
+	 * */
+	public void clear() {
+		Arrays.fill(sizes, 0, groups.size(), 0);
+		groups.clear();
+	}
+
+	/*
+	 * True when the first order ranks above the second one: higher total_profit, then smaller order id
+	 * */
+	static boolean ranksAbove(int orderId, double totalProfit, int otherOrderId, double otherTotalProfit) {
+		int result = Double.compare(totalProfit, otherTotalProfit);
+		return result > 0 || (result == 0 && orderId < otherOrderId);
+	}
+
+	private void siftUp(int base, int index) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!ranksAbove(orderIds[base + parent], profits[base + parent], orderIds[base + index], profits[base + index])) {
+				return;
+			}
+			swap(base + parent, base + index);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int base, int index, int size) {
+		while (true) {
+			int weakest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < size && ranksAbove(orderIds[base + weakest], profits[base + weakest], orderIds[base + left], profits[base + left])) {
+				weakest = left;
+			}
+			if (right < size && ranksAbove(orderIds[base + weakest], profits[base + weakest], orderIds[base + right], profits[base + right])) {
+				weakest = right;
+			}
+			if (weakest == index) {
+				return;
+			}
+			swap(base + index, base + weakest);
+			index = weakest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int orderId = orderIds[i];
+		orderIds[i] = orderIds[j];
+		orderIds[j] = orderId;
+		double profit = profits[i];
+		profits[i] = profits[j];
+		profits[j] = profit;
+	}
+}
@@ -0,0 +1,179 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.partition.TotalOrderPartitioner;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/*
+ * Total order partitioning of the sales jobs, so that the part files of many reducers are sorted end to end
+ *
+ * The driver reads the same input sample as SalesPartitioner and builds the map output key of every sampled record:
+ * a Sales key, the packed key of the encoded mode, or the group key of SalesMapReduce4. The sorted sample is cut into
+ * as many ranges as there are reducers and the cut points are written to the partition file of TotalOrderPartitioner.
+ *
+ * In SalesMapReduce4 a group has to be reduced in one call, so cut points are moved to the first key of their group.
+ * When there are fewer distinct keys than reducers, the last reducers are left empty.
+ *
+ * */
+public class SalesTotalOrder {
+
+	/*
+	 * Configuration key turning on total order partitioning
+	 * */
+	public static final String TOTAL_ORDER_KEY = "sales.total.order";
+
+	/*
+	 * Sampling the input, writing the cut points under workDir and switching the job to TotalOrderPartitioner
+	 * Has to be called once the map output key class of the job is final
+	 * */
+	public static void configure(Job job, Path input, Path workDir) throws IOException, InterruptedException {
+		Configuration conf = job.getConfiguration();
+		@SuppressWarnings("unchecked")
+		Class<? extends WritableComparable<?>> keyClass = (Class<? extends WritableComparable<?>>) job.getMapOutputKeyClass();
+		List<WritableComparable<?>> keys = sample(conf, input, keyClass);
+
+		@SuppressWarnings("unchecked")
+		RawComparator<WritableComparable<?>> comparator = (RawComparator<WritableComparable<?>>) job.getSortComparator();
+		keys.sort(comparator);
+
+		FileSystem fs = workDir.getFileSystem(conf);
+		fs.delete(workDir, true);
+		Path path = new Path(workDir, "total-order");
+		int partitions = job.getNumReduceTasks();
+		try (SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(path),
+				SequenceFile.Writer.keyClass(keyClass), SequenceFile.Writer.valueClass(NullWritable.class))) {
+			/*
+			 * Cut points have to be strictly increasing, a cut equal to the previous one moves to the next larger key
+			 * and, once the sample runs out, to keys past every real key
+			 * */
+			WritableComparable<?> previous = null;
+			int index = 0;
+			int padding = 0;
+			for (int i = 1; i < partitions; i++) {
+				index = Math.max(index, (int) ((long) i * keys.size() / partitions));
+				WritableComparable<?> cut = null;
+				for (; index < keys.size(); index++) {
+					WritableComparable<?> candidate = groupStart(keys.get(index));
+					if (previous == null || comparator.compare(previous, candidate) < 0) {
+						cut = candidate;
+						break;
+					}
+				}
+				if (cut == null) {
+					cut = pastLastKey(keyClass, conf, ++padding, partitions);
+				}
+				writer.append(cut, NullWritable.get());
+				previous = cut;
+			}
+		}
+
+		TotalOrderPartitioner.setPartitionFile(conf, path);
+		job.setPartitionerClass(TotalOrderPartitioner.class);
+	}
+
+	/*
+	 * First possible key of the group of the key for SalesProfitKey, so that a cut never splits a group
+	 * The key itself for the other key classes
+	 * */
+	static WritableComparable<?> groupStart(WritableComparable<?> key) {
+		if (!(key instanceof SalesProfitKey)) {
+			return key;
+		}
+		SalesProfitKey start = new SalesProfitKey();
+		start.set(((SalesProfitKey) key).group, Double.NaN, Integer.MIN_VALUE); //NaN sorts first in descending order
+		return start;
+	}
+
+	/*
+	 * Key sorting after every key of the job, larger for every increment of the padding
+	 * Names made of 0xFF bytes sort after any UTF-8 name and packed keys never reach the top of the long range
+	 * */
+	static WritableComparable<?> pastLastKey(Class<? extends WritableComparable<?>> keyClass, Configuration conf, int padding, int partitions) {
+		WritableComparable<?> key = ReflectionUtils.newInstance(keyClass, conf);
+		byte[] last = new byte[padding];
+		Arrays.fill(last, (byte) 0xFF);
+		if (key instanceof SalesKey) {
+			((SalesKey) key).country.set(last);
+		}
+		else if (key instanceof LongWritable) {
+			((LongWritable) key).set(Long.MAX_VALUE - partitions + padding);
+		}
+		else if (key instanceof SalesProfitKey) {
+			((SalesProfitKey) key).group.set(last);
+		}
+		else if (key instanceof Text) {
+			((Text) key).set(last);
+		}
+		return key;
+	}
+
+	/*
+	 * Map output keys of the sampled records
+	 * */
+	static List<WritableComparable<?>> sample(Configuration conf, Path input, Class<? extends WritableComparable<?>> keyClass) throws IOException, InterruptedException {
+		List<WritableComparable<?>> keys = new ArrayList<WritableComparable<?>>();
+		SalesDictionary dictionary = null;
+		if (keyClass == LongWritable.class) {
+			Path path = new Path(conf.get(SalesDictionary.PATH_KEY));
+			try (InputStream in = path.getFileSystem(conf).open(path)) {
+				dictionary = SalesDictionary.read(in);
+			}
+		}
+		final SalesDictionary encoding = dictionary;
+		int[] groupColumns = SalesTopN.groupColumns(conf);
+		Text country = new Text();
+		Text itemType = new Text();
+		Text field = new Text();
+
+		SalesPartitioner.sample(conf, input, parser -> {
+			int orderDate = parser.getDate(SalesCsvParser.ORDER_DATE);
+			if (orderDate == SalesOrderDate.INVALID) {
+				return;
+			}
+			int year = SalesOrderDate.year(orderDate);
+			WritableComparable<?> key = ReflectionUtils.newInstance(keyClass, conf);
+
+			if (key instanceof SalesKey) {
+				((SalesKey) key).set(parser, year);
+			}
+			else if (key instanceof LongWritable) {
+				parser.getText(SalesCsvParser.COUNTRY, country);
+				parser.getText(SalesCsvParser.ITEM_TYPE, itemType);
+				long packed = encoding.encode(country, itemType, year);
+				if (packed < 0) {
+					return;
+				}
+				((LongWritable) key).set(packed);
+			}
+			else if (key instanceof SalesProfitKey) {
+				SalesProfitKey profitKey = (SalesProfitKey) key;
+				SalesTopN.groupKey(parser, groupColumns, year, field, profitKey.group);
+				profitKey.totalProfit = parser.getDouble(SalesCsvParser.TOTAL_PROFIT);
+				profitKey.orderId = parser.getInt(SalesCsvParser.ORDER_ID);
+			}
+			else if (key instanceof Text) {
+				SalesTopN.groupKey(parser, groupColumns, year, field, (Text) key);
+			}
+			else {
+				throw new IllegalArgumentException("No total order sampling for map output key " + keyClass.getName());
+			}
+			keys.add(key);
+		});
+		return keys;
+	}
+}
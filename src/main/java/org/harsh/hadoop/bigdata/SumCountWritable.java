@@ -0,0 +1,129 @@
+package org.harsh.hadoop.bigdata;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Partial aggregate of an average: the sum of the values and how many values were summed
+ * Partials can be merged any number of times, so it can go through a combiner, the average is only taken at the end
+ *
+ * The sum is either a double or, in the fixed point mode of SalesDecimal, an exact long of minor units with its scale.
+ * An empty partial takes the kind of the first partial added to it.
+ *
+ * */
+public class SumCountWritable implements Writable {
+	private static final int DOUBLE_SUM = -1;
+
+	private double sum;
+	private long unscaledSum;
+	private int scale = DOUBLE_SUM;
+	private long count;
+
+	public SumCountWritable() {
+	}
+
+	public SumCountWritable(double sum, long count) {
+		set(sum, count);
+	}
+
+	public void set(double sum, long count) {
+		this.sum = sum;
+		this.scale = DOUBLE_SUM;
+		this.count = count;
+	}
+
+	/*
+	 * Setting an exact sum of unscaledSum / 10^scale
+	 * */
+	public void setUnscaled(long unscaledSum, int scale, long count) {
+		this.unscaledSum = unscaledSum;
+		this.scale = scale;
+		this.count = count;
+	}
+
+	/*
+	 * Merging another partial into this one
+	 * Exact sums are added with overflow checks, an overflow or a mix of kinds or scales fails the task
+	 * */
+	public void add(SumCountWritable other) {
+		if (count == 0) {
+			this.sum = other.sum;
+			this.unscaledSum = other.unscaledSum;
+			this.scale = other.scale;
+			this.count = other.count;
+			return;
+		}
+		if (scale != other.scale) {
+			throw new IllegalArgumentException("Cannot add a sum of scale " + other.scale + " to a sum of scale " + scale);
+		}
+		if (scale == DOUBLE_SUM) {
+			this.sum += other.sum;
+		}
+		else {
+			this.unscaledSum = Math.addExact(unscaledSum, other.unscaledSum);
+		}
+		this.count += other.count;
+	}
+
+	public boolean isUnscaled() {
+		return scale != DOUBLE_SUM;
+	}
+
+	public long getUnscaledSum() {
+		return unscaledSum;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	public double getSum() {
+		return scale == DOUBLE_SUM ? sum : SalesDecimal.toDouble(unscaledSum, scale);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getAverage() {
+		return scale == DOUBLE_SUM ? sum / count : SalesDecimal.average(unscaledSum, scale, count);
+	}
+
+	/*
+	 * Writing the count as a vlong, which is one byte for small partials, with the low bit telling the kind of sum
+	 * A double sum follows as a double, an exact sum as the scale and the unscaled sum in vlongs, a few bytes for cents
+	 * */
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVLong(out, count << 1 | (scale == DOUBLE_SUM ? 0 : 1));
+		if (scale == DOUBLE_SUM) {
+			out.writeDouble(sum);
+		}
+		else {
+			WritableUtils.writeVInt(out, scale);
+			WritableUtils.writeVLong(out, unscaledSum);
+		}
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		long tagged = WritableUtils.readVLong(in);
+		count = tagged >>> 1;
+		if ((tagged & 1) == 0) {
+			scale = DOUBLE_SUM;
+			sum = in.readDouble();
+		}
+		else {
+			scale = WritableUtils.readVInt(in);
+			unscaledSum = WritableUtils.readVLong(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return (scale == DOUBLE_SUM ? Double.toString(sum) : BigDecimal.valueOf(unscaledSum, scale).toPlainString()) + "\t" + count;
+	}
+}
@@ -0,0 +1,171 @@
+package org.harsh.hadoop.bigdata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Columnar files against the csv they are written from
+ *
+ * Random records, with number fields that do not parse, decimals that are not plain and dates that are not dates,
+ * go through SalesColumnarWriter into small blocks and are read back by the record reader in two splits. Every
+ * field the parser reads from a row has to be what it reads from the csv line, and so has every row serialized.
+ *
+ * */
+public class SalesColumnarFileTest {
+	private static final String[] REGIONS = { "Europe", "Asia", "Sub-Saharan Africa", "" };
+	private static final String[] COUNTRIES = { "Albania", "C\u00f4te d'Ivoire", "S\u00e3o Tom\u00e9 and Pr\u00edncipe", "Japan" };
+	private static final String[] ITEM_TYPES = { "Baby Food", "Cereal", "Fruits" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Random random = new Random(3);
+
+	private String pick(String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	private String date() {
+		if (random.nextInt(50) == 0) {
+			return "not a date";
+		}
+		return String.format("%04d-%02d-%02d 00:00:00", 1990 + random.nextInt(40), 1 + random.nextInt(12), 1 + random.nextInt(28));
+	}
+
+	private String integer() {
+		return random.nextInt(100) == 0 ? "n/a" : Integer.toString(random.nextInt(1000000) - 1000);
+	}
+
+	private String decimal() {
+		switch (random.nextInt(200)) {
+		case 0:
+			return "x";
+		case 1:
+			return "1.5e3";
+		case 2:
+			return "-0.0";
+		default:
+			long unscaled = random.nextInt(100000000) - 1000000;
+			return java.math.BigDecimal.valueOf(unscaled, random.nextInt(4)).toPlainString();
+		}
+	}
+
+	private List<String> lines(int count) {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			lines.add(i + "," + pick(REGIONS) + "," + pick(COUNTRIES) + "," + pick(ITEM_TYPES) + "," + (random.nextBoolean() ? "Online" : "Offline") + ","
+					+ "LMHC".charAt(random.nextInt(4)) + "," + date() + "," + integer() + "," + date() + "," + integer() + "," + decimal() + "," + decimal() + ","
+					+ decimal() + "," + decimal() + "," + decimal());
+		}
+		return lines;
+	}
+
+	/*
+	 * Field as the jobs read it: text, packed date, long or double bits, "null" when the number does not parse
+	 * */
+	private static String field(SalesCsvParser parser, int column) {
+		try {
+			switch (SalesColumnarFormat.SCHEMA[column]) {
+			case SalesColumnarFormat.DICTIONARY:
+				return parser.getString(column);
+			case SalesColumnarFormat.DATE:
+				return Integer.toString(parser.getDate(column));
+			case SalesColumnarFormat.LONG:
+				return Long.toString(parser.getLong(column));
+			default:
+				return Long.toString(Double.doubleToLongBits(parser.getDouble(column)));
+			}
+		}
+		catch (NumberFormatException e) {
+			return "null";
+		}
+	}
+
+	private Path write(TaskAttemptContext context, List<String> lines, CompressionCodec codec) throws IOException {
+		Path path = new Path(folder.newFolder().getPath(), "part-m-00000");
+		FileSystem fs = FileSystem.getLocal(context.getConfiguration());
+		SalesColumnarOutputFormat.SalesColumnarWriter writer = new SalesColumnarOutputFormat.SalesColumnarWriter(fs.create(path, false), codec, context);
+		for (String line : lines) {
+			writer.write(null, new Text(line));
+		}
+		writer.close(context);
+		return path;
+	}
+
+	/*
+	 * Reading the file in two splits, checking the projected fields of every row and of its serialized copy
+	 * */
+	private void checkRead(TaskAttemptContext context, Path path, List<String> lines, boolean[] projected) throws IOException {
+		long length = FileSystem.getLocal(context.getConfiguration()).getFileStatus(path).getLen();
+		SalesCsvParser csv = new SalesCsvParser();
+		SalesCsvParser columnar = new SalesCsvParser();
+		SalesColumnarRow copy = new SalesColumnarRow();
+		int n = 0;
+		for (long[] split : new long[][] { { 0, length / 2 }, { length / 2, length - length / 2 } }) {
+			SalesColumnarInputFormat.SalesColumnarRecordReader reader = new SalesColumnarInputFormat.SalesColumnarRecordReader();
+			reader.initialize(new FileSplit(path, split[0], split[1], new String[0]), context);
+			while (reader.nextKeyValue()) {
+				assertEquals(n, reader.getCurrentKey().get());
+				csv.parse(new Text(lines.get(n)));
+				SalesWritableTest.roundTrip(reader.getCurrentValue(), copy);
+				for (SalesColumnarRow row : new SalesColumnarRow[] { reader.getCurrentValue(), copy }) {
+					assertEquals(SalesCsvParser.FIELD_COUNT, columnar.parse(row));
+					for (int column = 0; column < SalesCsvParser.FIELD_COUNT; column++) {
+						String expected = projected[column] ? field(csv, column) : "";
+						String actual = projected[column] ? field(columnar, column) : columnar.getString(column);
+						assertEquals("row " + n + " column " + column + ": " + lines.get(n), expected, actual);
+					}
+				}
+				n++;
+			}
+			reader.close();
+		}
+		assertEquals(lines.size(), n);
+	}
+
+	private TaskAttemptContext context(String columns) {
+		Configuration conf = new Configuration(false);
+		conf.setInt(SalesColumnarOutputFormat.BLOCK_ROWS_KEY, 97);
+		if (columns != null) {
+			conf.set(SalesColumnarInputFormat.COLUMNS_KEY, columns);
+		}
+		return new TaskAttemptContextImpl(conf, new TaskAttemptID());
+	}
+
+	@Test
+	public void everyColumnReadsLikeTheCsv() throws IOException {
+		List<String> lines = lines(1000);
+		boolean[] all = new boolean[SalesCsvParser.FIELD_COUNT];
+		java.util.Arrays.fill(all, true);
+		TaskAttemptContext context = context(null);
+		checkRead(context, write(context, lines, null), lines, all);
+		checkRead(context, write(context, lines, ReflectionUtils.newInstance(DefaultCodec.class, context.getConfiguration())), lines, all);
+	}
+
+	@Test
+	public void projectedColumnsReadLikeTheCsv() throws IOException {
+		List<String> lines = lines(500);
+		TaskAttemptContext context = context(SalesCsvParser.COUNTRY + "," + SalesCsvParser.ORDER_DATE + "," + SalesCsvParser.UNITS_SOLD + "," + SalesCsvParser.TOTAL_PROFIT);
+		boolean[] projected = SalesColumnarInputFormat.getColumns(context.getConfiguration());
+		checkRead(context, write(context, lines, null), lines, projected);
+	}
+}
@@ -0,0 +1,171 @@
+package org.harsh.hadoop.bigdata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+/*
+ * Raw comparators of the shuffle keys against compareTo
+ *
+ * Keys are drawn from small alphabets so that many of them share fields, with text lengths past 127 bytes so that
+ * the vint length prefixes take more than one byte, and multi-byte UTF-8 characters. Every key is serialized behind
+ * a few bytes of padding, so a comparator reading from the start of the buffer instead of its offset fails.
+ *
+ * */
+public class SalesRawComparatorTest {
+	private static final int KEYS = 300;
+	private static final String[] ALPHABET = { "a", "b", "z", "\u00e9", "\u20ac", " " };
+
+	private final Random random = new Random(42);
+
+	/*
+	 * Text of 0 to 3 characters most of the time, so that fields tie, and up to 200 characters otherwise
+	 * */
+	private String text() {
+		int length = random.nextInt(4) == 0 ? random.nextInt(200) : random.nextInt(4);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+		}
+		return text.toString();
+	}
+
+	private int year() {
+		switch (random.nextInt(4)) {
+		case 0:
+			return random.nextInt();
+		case 1:
+			return -random.nextInt(3);
+		default:
+			return 2010 + random.nextInt(3);
+		}
+	}
+
+	private void setSalesKey(SalesKey key) {
+		key.country.set(text());
+		key.item_type.set(text());
+		key.year.set(year());
+	}
+
+	/*
+	 * Serialized bytes of the key, behind padding bytes
+	 * */
+	private static byte[] serialize(WritableComparable<?> key, int padding) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (int i = 0; i < padding; i++) {
+			out.writeByte(0x7F);
+		}
+		key.write(out);
+		byte[] bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	/*
+	 * Checking that the raw comparator of every pair of keys has the sign of compareTo
+	 * */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void checkPairs(WritableComparator comparator, List<? extends WritableComparable> keys) throws IOException {
+		byte[][] bytes = new byte[keys.size()][];
+		int[] paddings = new int[keys.size()];
+		for (int i = 0; i < keys.size(); i++) {
+			paddings[i] = i % 3;
+			bytes[i] = serialize(keys.get(i), paddings[i]);
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			for (int j = 0; j < keys.size(); j++) {
+				int expected = Integer.signum(keys.get(i).compareTo(keys.get(j)));
+				int raw = Integer.signum(comparator.compare(bytes[i], paddings[i], bytes[i].length - paddings[i], bytes[j], paddings[j], bytes[j].length - paddings[j]));
+				assertEquals(keys.get(i) + " against " + keys.get(j), expected, raw);
+			}
+		}
+	}
+
+	@Test
+	public void salesKeyComparatorOrdersLikeCompareTo() throws IOException {
+		List<SalesMapReduce1.Sales> keys = new ArrayList<>();
+		for (int i = 0; i < KEYS; i++) {
+			SalesMapReduce1.Sales key = new SalesMapReduce1.Sales();
+			setSalesKey(key);
+			keys.add(key);
+		}
+		checkPairs(WritableComparator.get(SalesMapReduce1.Sales.class), keys);
+	}
+
+	@Test
+	public void cubeKeyComparatorOrdersLikeCompareTo() throws IOException {
+		List<SalesCubeKey> keys = new ArrayList<>();
+		for (int i = 0; i < KEYS; i++) {
+			SalesCubeKey key = new SalesCubeKey();
+			setSalesKey(key);
+			key.sales_channel.set(text());
+			key.region.set(text());
+			keys.add(key);
+		}
+		checkPairs(WritableComparator.get(SalesCubeKey.class), keys);
+	}
+
+	@Test
+	public void queryKeyComparatorOrdersLikeCompareTo() throws IOException {
+		List<SalesQueryKey> keys = new ArrayList<>();
+		for (int i = 0; i < KEYS; i++) {
+			SalesQueryKey key = new SalesQueryKey();
+			setSalesKey(key);
+			key.setQuery(1 + random.nextInt(4));
+			keys.add(key);
+		}
+		checkPairs(WritableComparator.get(SalesQueryKey.class), keys);
+	}
+
+	@Test
+	public void profitKeyComparatorsOrderLikeCompareTo() throws IOException {
+		double[] profits = { 0.0, -0.0, 1.5, -1.5, 1e300, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		List<SalesProfitKey> keys = new ArrayList<>();
+		for (int i = 0; i < KEYS; i++) {
+			SalesProfitKey key = new SalesProfitKey();
+			double profit = random.nextBoolean() ? profits[random.nextInt(profits.length)] : random.nextGaussian() * 1e6;
+			key.set(new Text(text()), profit, random.nextInt(3) == 0 ? random.nextInt() : random.nextInt(3));
+			keys.add(key);
+		}
+		checkPairs(WritableComparator.get(SalesProfitKey.class), keys);
+
+		/*
+		 * The grouping comparator only looks at the group
+		 * */
+		SalesProfitKey.GroupComparator group = new SalesProfitKey.GroupComparator();
+		for (int i = 0; i < keys.size(); i++) {
+			byte[] a = serialize(keys.get(i), 1);
+			for (int j = 0; j < keys.size(); j++) {
+				byte[] b = serialize(keys.get(j), 2);
+				assertEquals(Integer.signum(keys.get(i).getGroup().compareTo(keys.get(j).getGroup())), Integer.signum(group.compare(a, 1, a.length - 1, b, 2, b.length - 2)));
+			}
+		}
+	}
+
+	@Test
+	public void minMaxComparatorOrdersLikeCompareTo() throws IOException {
+		List<MinMaxWritable> keys = new ArrayList<>();
+		for (int i = 0; i < KEYS; i++) {
+			MinMaxWritable key = new MinMaxWritable();
+			int min = random.nextBoolean() ? random.nextInt() : random.nextInt(3) - 1;
+			int max = random.nextBoolean() ? random.nextInt() : random.nextInt(3) - 1;
+			if (random.nextBoolean()) {
+				key.setRange(min, random.nextInt(), max, random.nextInt());
+			}
+			else if (random.nextInt(10) > 0) {
+				key.setRange(min, max);
+			}
+			keys.add(key);
+		}
+		checkPairs(WritableComparator.get(MinMaxWritable.class), keys);
+	}
+}
@@ -0,0 +1,166 @@
+package org.harsh.hadoop.bigdata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * Sketches merged from partial sketches, the way the combiner and the reducer build them, against one sketch of
+ * every value and against the exact answer
+ *
+ * */
+public class SalesSketchTest {
+	private static final double[] QUANTILES = { 0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99 };
+
+	/*
+	 * Share of the values strictly below the value, the rank a quantile estimate stands at
+	 * */
+	private static double rank(double[] sorted, double value) {
+		int below = 0;
+		while (below < sorted.length && sorted[below] < value) {
+			below++;
+		}
+		return below / (double) sorted.length;
+	}
+
+	private static double[] values(Random random, int count) {
+		double[] values = new double[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = random.nextInt(4) == 0 ? Math.exp(random.nextGaussian() * 3) : random.nextInt(1000); //Skewed, with ties
+		}
+		return values;
+	}
+
+	@Test
+	public void quantilesOfMergedSketchesStayWithinTheRankError() throws IOException {
+		int k = 200;
+		double[] values = values(new Random(11), 200000);
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		SalesQuantileSketch single = new SalesQuantileSketch(k);
+		for (double value : values) {
+			single.add(value);
+		}
+
+		/*
+		 * Parts of uneven sizes, merged through their serialized bytes into one sketch
+		 * */
+		SalesQuantileSketch merged = new SalesQuantileSketch(k);
+		SalesQuantileSketch part = new SalesQuantileSketch(k);
+		SalesQuantileSketch read = new SalesQuantileSketch(k);
+		int start = 0;
+		for (int size = 1; start < values.length; size = size * 3 + 7) {
+			int end = Math.min(values.length, start + size);
+			part.clear();
+			for (int i = start; i < end; i++) {
+				part.add(values[i]);
+			}
+			merged.add(SalesWritableTest.roundTrip(part, read));
+			start = end;
+		}
+
+		assertEquals(values.length, single.getCount());
+		assertEquals(values.length, merged.getCount());
+		double bound = 3.0 / k; //About twice the 1.7 / k of the class comment
+		for (double q : QUANTILES) {
+			double exact = sorted[(int) Math.ceil(q * sorted.length) - 1];
+			for (SalesQuantileSketch sketch : new SalesQuantileSketch[] { single, merged }) {
+				double estimate = sketch.getQuantile(q);
+				assertTrue("quantile " + q + " estimate " + estimate + " exact " + exact,
+						rank(sorted, estimate) <= q + bound && rank(sorted, Math.nextUp(estimate)) >= q - bound);
+			}
+		}
+	}
+
+	@Test
+	public void sketchesBelowKAreExact() {
+		double[] values = values(new Random(5), 90);
+		SalesQuantileSketch merged = new SalesQuantileSketch(100);
+		for (int i = 0; i < values.length; i += 10) {
+			SalesQuantileSketch part = new SalesQuantileSketch(100);
+			for (int j = i; j < i + 10; j++) {
+				part.add(values[j]);
+			}
+			merged.add(part);
+		}
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (double q : QUANTILES) {
+			assertEquals(sorted[(int) Math.ceil(q * sorted.length) - 1], merged.getQuantile(q), 0);
+		}
+		assertEquals(sorted[0], merged.getQuantile(0), 0);
+		assertEquals(sorted[sorted.length - 1], merged.getQuantile(1), 0);
+	}
+
+	@Test
+	public void mergedHyperLogLogsEqualOneOfEveryValue() throws IOException {
+		Random random = new Random(13);
+		long[] values = new long[300000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(100000); //Repeated values
+		}
+		SalesHyperLogLog single = new SalesHyperLogLog();
+		for (long value : values) {
+			single.add(value);
+		}
+
+		SalesHyperLogLog forward = new SalesHyperLogLog();
+		SalesHyperLogLog backward = new SalesHyperLogLog();
+		SalesHyperLogLog part = new SalesHyperLogLog();
+		SalesHyperLogLog read = new SalesHyperLogLog();
+		int parts = 7;
+		for (int p = 0; p < parts; p++) {
+			part.clear();
+			for (int i = p; i < values.length; i += parts) {
+				part.add(values[i]);
+			}
+			forward.add(SalesWritableTest.roundTrip(part, read));
+		}
+		for (int p = parts - 1; p >= 0; p--) {
+			part.clear();
+			for (int i = p; i < values.length; i += parts) {
+				part.add(values[i]);
+			}
+			backward.add(part);
+		}
+		assertArrayEquals(SalesWritableTest.serialize(single), SalesWritableTest.serialize(forward));
+		assertArrayEquals(SalesWritableTest.serialize(single), SalesWritableTest.serialize(backward));
+
+		/*
+		 * Within four standard errors, 1.04 / sqrt(2^precision), of the exact distinct count
+		 * */
+		long distinct = Arrays.stream(values).distinct().count();
+		double error = 1.04 / Math.sqrt(1 << SalesHyperLogLog.DEFAULT_PRECISION);
+		assertEquals(distinct, single.getEstimate(), 4 * error * distinct);
+	}
+
+	@Test
+	public void sketchWritablesMergeInAnyOrder() throws IOException {
+		Random random = new Random(17);
+		SalesSketchWritable[] parts = new SalesSketchWritable[5];
+		for (int p = 0; p < parts.length; p++) {
+			parts[p] = new SalesSketchWritable(100, 8);
+			for (int i = 0; i < 15; i++) {
+				parts[p].add(random.nextDouble() * 700, random.nextInt(10000), random.nextInt(3000));
+			}
+		}
+		SalesSketchWritable forward = new SalesSketchWritable(100, 8);
+		SalesSketchWritable backward = new SalesSketchWritable(100, 8);
+		for (int p = 0; p < parts.length; p++) {
+			forward.add(parts[p]);
+			backward.add(parts[parts.length - 1 - p]);
+		}
+		assertEquals(75, forward.getUnitPrice().getCount());
+		assertEquals(forward.getOrderIds().getEstimate(), backward.getOrderIds().getEstimate());
+		for (double q : QUANTILES) {
+			assertEquals(forward.getUnitsSold().getQuantile(q), backward.getUnitsSold().getQuantile(q), 0); //Below k values nothing is dropped
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package org.harsh.hadoop.bigdata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+/*
+ * Serialization of the Writables of the jobs: every value read back writes the same bytes and gives the same results
+ * Values are read into instances that held something else before, as Hadoop reuses them
+ *
+ * */
+public class SalesWritableTest {
+	private final Random random = new Random(7);
+
+	static byte[] serialize(Writable value) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		value.write(out);
+		byte[] bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	/*
+	 * Reading the bytes of value into copy, checking that all of them are read and that copy writes them back
+	 * */
+	static <T extends Writable> T roundTrip(Writable value, T copy) throws IOException {
+		byte[] bytes = serialize(value);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		copy.readFields(in);
+		assertEquals("bytes left after readFields", bytes.length, in.getPosition());
+		assertArrayEquals(bytes, serialize(copy));
+		return copy;
+	}
+
+	@Test
+	public void sumCountKeepsTheKindOfSumAndLargeCounts() throws IOException {
+		long[] counts = { 0, 1, 63, 64, 1L << 40, (1L << 62) - 1 };
+		SumCountWritable copy = new SumCountWritable(3.5, 2);
+		for (long count : counts) {
+			SumCountWritable doubles = new SumCountWritable(random.nextGaussian() * 1e9, count);
+			roundTrip(doubles, copy);
+			assertFalse(copy.isUnscaled());
+			assertEquals(count, copy.getCount());
+			assertEquals(Double.doubleToLongBits(doubles.getSum()), Double.doubleToLongBits(copy.getSum()));
+
+			SumCountWritable exact = new SumCountWritable();
+			exact.setUnscaled(random.nextLong() >> 2, random.nextInt(19), count);
+			roundTrip(exact, copy);
+			assertTrue(copy.isUnscaled());
+			assertEquals(count, copy.getCount());
+			assertEquals(exact.getUnscaledSum(), copy.getUnscaledSum());
+			assertEquals(exact.getScale(), copy.getScale());
+		}
+	}
+
+	@Test
+	public void minMaxDropsTheOrderIdsOfAValueWithout() throws IOException {
+		MinMaxWritable withIds = new MinMaxWritable();
+		withIds.setRange(-5, 11, 9, 12);
+		MinMaxWritable copy = roundTrip(withIds, new MinMaxWritable());
+		assertEquals(withIds, copy);
+
+		MinMaxWritable withoutIds = new MinMaxWritable();
+		withoutIds.setRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		roundTrip(withoutIds, copy);
+		assertEquals(withoutIds, copy);
+		assertFalse(copy.hasOrderIds());
+
+		roundTrip(new MinMaxWritable(), copy);
+		assertTrue(copy.isEmpty());
+	}
+
+	@Test
+	public void queryValuesOfEveryQuestion() throws IOException {
+		SalesQueryValue copy = new SalesQueryValue();
+		SalesQueryValue value = new SalesQueryValue();
+		value.setUnitPrice(1234.5, 3);
+		roundTrip(value, copy);
+		value.setUnitPrice(123450, 2, 3);
+		roundTrip(value, copy);
+		value.setUnitsSold(-7);
+		roundTrip(value, copy);
+		value.setUnitsRange().setRange(1, 2, 3, 4);
+		roundTrip(value, copy);
+		value.setProfit(42, -0.5);
+		roundTrip(value, copy);
+		assertEquals(SalesQueryValue.TOP_PROFITS, copy.getQuery());
+	}
+
+	@Test
+	public void momentsReadBackExactly() throws IOException {
+		SalesMomentsWritable moments = new SalesMomentsWritable();
+		for (int i = 0; i < 1000; i++) {
+			moments.add(random.nextGaussian() * 1e5);
+		}
+		SalesMomentsWritable copy = roundTrip(moments, new SalesMomentsWritable(1, 2, 3));
+		assertEquals(moments.toString(), copy.toString());
+	}
+
+	@Test
+	public void hyperLogLogSparseAndDense() throws IOException {
+		SalesHyperLogLog copy = new SalesHyperLogLog(SalesHyperLogLog.MIN_PRECISION);
+		for (int distinct : new int[] { 0, 1, 50, 5000 }) {
+			SalesHyperLogLog counter = new SalesHyperLogLog();
+			for (int i = 0; i < distinct; i++) {
+				counter.add(random.nextInt());
+			}
+			roundTrip(counter, copy);
+			assertEquals(counter.getEstimate(), copy.getEstimate());
+		}
+
+		/*
+		 * A sparse counter read into a dense one of the same precision leaves no register behind
+		 * */
+		SalesHyperLogLog sparse = new SalesHyperLogLog();
+		sparse.add(1);
+		roundTrip(sparse, copy);
+		assertEquals(1, copy.getEstimate());
+	}
+
+	@Test
+	public void quantileSketchKeepsItsLevels() throws IOException {
+		SalesQuantileSketch copy = new SalesQuantileSketch(8);
+		for (int values : new int[] { 0, 5, 1000, 100000 }) {
+			SalesQuantileSketch sketch = new SalesQuantileSketch();
+			for (int i = 0; i < values; i++) {
+				sketch.add(random.nextGaussian());
+			}
+			roundTrip(sketch, copy);
+			assertEquals(sketch.getCount(), copy.getCount());
+			for (double q = 0; q <= 1; q += 0.1) {
+				assertEquals(Double.doubleToLongBits(sketch.getQuantile(q)), Double.doubleToLongBits(copy.getQuantile(q)));
+			}
+		}
+
+		/*
+		 * The copy goes on taking values like the sketch it was read from
+		 * */
+		SalesQuantileSketch sketch = new SalesQuantileSketch();
+		for (int i = 0; i < 10000; i++) {
+			sketch.add(i);
+		}
+		roundTrip(sketch, copy);
+		for (int i = 0; i < 10000; i++) {
+			sketch.add(i);
+			copy.add(i);
+		}
+		assertArrayEquals(serialize(sketch), serialize(copy));
+	}
+
+	@Test
+	public void sketchWritableOfAKey() throws IOException {
+		SalesSketchWritable sketches = new SalesSketchWritable();
+		for (int i = 0; i < 3000; i++) {
+			sketches.add(random.nextDouble() * 700, random.nextInt(10000), random.nextInt(2000));
+		}
+		SalesSketchWritable copy = roundTrip(sketches, new SalesSketchWritable());
+		assertEquals(sketches.toString(), copy.toString());
+	}
+}